@@ -0,0 +1,65 @@
+package projects;
+
+import java.io.IOException;
+
+import projects.config.DbConfig;
+import projects.dao.DbConnection;
+import projects.dao.ProjectArchiver;
+import projects.dao.ProjectPurger;
+import projects.event.OutboxRelay;
+import projects.event.OutboxTrimmer;
+import projects.event.StreamEventSink;
+import projects.migration.MigrationRunner;
+
+/*
+ * Startup shared by the long-running entry points, ProjectsApp's interactive menu and
+ * ProjectServer, so both run the same background work. Command mode only migrates.
+ */
+public class Bootstrap {
+    private Bootstrap() {
+    }
+
+    /*
+     * migrates every shard when migrate.onStartup, then starts the purger, the archiver when
+     * archive.enabled, and the outbox relay and trimmer
+     */
+    public static void start() throws IOException {
+        migrate();
+
+        DbConfig config = DbConnection.getConfig();
+        new ProjectPurger().start();
+
+        if(config.getBoolean("archive.enabled")) {
+            new ProjectArchiver().start();
+        }
+
+        startOutbox(config);
+    }
+
+    /*
+     * applies pending migrations to every shard when migrate.onStartup
+     */
+    public static void migrate() {
+        if(DbConnection.getConfig().getBoolean("migrate.onStartup")) {
+            MigrationRunner.forAllShards().forEach(MigrationRunner::migrate);
+        }
+    }
+
+    /*
+     * relays outbox events to outbox.sink when one is set and trims the outbox when
+     * outbox.trimEnabled
+     */
+    private static void startOutbox(DbConfig config) throws IOException {
+        OutboxRelay relay = null;
+
+        if(!config.getString("outbox.sink").isBlank()) {
+            relay = new OutboxRelay(false);
+            relay.subscribe(StreamEventSink.open(config.getString("outbox.sink")));
+            relay.start();
+        }
+
+        if(config.getBoolean("outbox.trimEnabled")) {
+            new OutboxTrimmer(relay).start();
+        }
+    }
+}
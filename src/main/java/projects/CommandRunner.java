@@ -0,0 +1,339 @@
+package projects;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import projects.dao.BulkProgress;
+import projects.dao.ProjectFilter;
+import projects.dao.ProjectUpdate;
+import projects.entity.Project;
+import projects.service.ProjectService;
+import projects.util.Json;
+import projects.util.ProjectJson;
+
+/*
+ * Runs project commands without prompts, reusing one ProjectService and connection pool for the
+ * whole run. Each command prints one line of JSON with its result and how long it took, so the
+ * output can be piped into other tools.
+ *
+ * Commands (values with spaces go in double quotes):
+ *   add name=<text> [estimated=<hours>] [actual=<hours>] difficulty=<1-5> [notes=<text>]
+ *   list
+ *   get <id>
+ *   update <id> [name=<text>] [estimated=<hours>] [actual=<hours>] [difficulty=<n>] [notes=<text>]
+ *   delete <id>
+ *   undelete <id>
+ *   bulk-delete <filter> [dryRun=false]
+ *   bulk-update <filter> [set.difficulty=<n>] [set.estimatedFactor=<factor>] [dryRun=false]
+ *
+ * A bulk filter is one or more of difficulty=<n>, category=<name> and completed=true|false. Bulk
+ * commands work through the projects in chunks and report each chunk on standard error. They are
+ * dry runs by default, only counting the projects they would change, and change data only with
+ * dryRun=false.
+ *
+ * Usage:
+ *   ProjectsApp --file commands.txt     one command per line, "-" reads standard input
+ *   ProjectsApp list ";" get 3          commands on the command line, separated by ";"
+ */
+public class CommandRunner {
+    private final ProjectService projectService = new ProjectService();
+    private final PrintStream out;
+    private boolean failed;
+
+    public CommandRunner(PrintStream out) {
+        this.out = out;
+    }
+
+    /*
+     * runs the commands given on the command line and returns the process exit status
+     */
+    public int run(String[] args) throws IOException {
+        if(args.length >= 2 && args[0].equals("--file")) {
+            BufferedReader reader = args[1].equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8);
+
+            try(reader) {
+                String line;
+                int lineNumber = 0;
+
+                while(Objects.nonNull(line = reader.readLine())) {
+                    lineNumber++;
+
+                    if(!line.isBlank() && !line.trim().startsWith("#")) {
+                        execute(lineNumber, tokenize(line));
+                    }
+                }
+            }
+        }
+        else {
+            List<String> command = new LinkedList<>();
+            int number = 0;
+
+            for(String arg : args) {
+                if(arg.equals(";")) {
+                    execute(++number, command);
+                    command = new LinkedList<>();
+                }
+                else {
+                    command.add(arg);
+                }
+            }
+
+            if(!command.isEmpty()) {
+                execute(++number, command);
+            }
+        }
+
+        return failed ? 1 : 0;
+    }
+
+    private void execute(int number, List<String> tokens) {
+        long start = System.nanoTime();
+        String name = tokens.isEmpty() ? "" : tokens.get(0);
+        String result;
+        boolean ok = true;
+
+        try {
+            result = dispatch(name, tokens.subList(Math.min(1, tokens.size()), tokens.size()));
+        }
+        catch(RuntimeException e) {
+            ok = false;
+            failed = true;
+            result = Json.quote(String.valueOf(e.getMessage()));
+        }
+
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+
+        out.println("{\"line\":" + number + ",\"command\":" + Json.quote(name) + ",\"ok\":" + ok
+                + String.format(Locale.ROOT, ",\"millis\":%.3f", millis) + (ok ? ",\"result\":" : ",\"error\":") + result
+                + "}");
+    }
+
+    private String dispatch(String name, List<String> args) {
+        switch(name) {
+            case "add": {
+                Project project = new Project();
+                applyFields(project, options(args));
+                return ProjectJson.summary(projectService.addProject(project));
+            }
+            case "list":
+                return ProjectJson.summaries(projectService.fetchAllProjects());
+            case "get":
+                return ProjectJson.full(projectService.fetchProjectByID(id(args)));
+            case "update": {
+                Integer projectID = id(args);
+                Project project = projectService.fetchProjectByID(projectID);
+                Project changes = new Project();
+                changes.setProjectId(projectID);
+                changes.setProjectName(project.getProjectName());
+                changes.setEstimatedHours(project.getEstimatedHours());
+                changes.setActualHours(project.getActualHours());
+                changes.setDifficulty(project.getDifficulty());
+                changes.setNotes(project.getNotes());
+                applyFields(changes, options(args.subList(1, args.size())));
+                projectService.modifyProjectDetails(changes);
+                return ProjectJson.summary(changes);
+            }
+            case "delete":
+                projectService.deleteProject(id(args));
+                return "true";
+            case "undelete":
+                projectService.undeleteProject(id(args));
+                return "true";
+            case "bulk-delete":
+            case "bulk-update": {
+                Map<String, String> options = options(args);
+                boolean dryRun = dryRun(options.remove("dryRun"));
+                ProjectUpdate update = name.equals("bulk-update") ? update(options) : null;
+                ProjectFilter filter = filter(options);
+                long rows = Objects.isNull(update)
+                    ? projectService.bulkDeleteProjects(filter, dryRun, CommandRunner::reportProgress)
+                    : projectService.bulkModifyProjects(filter, update, dryRun, CommandRunner::reportProgress);
+                return "{\"rows\":" + rows + ",\"dryRun\":" + dryRun + "}";
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command: " + name);
+        }
+    }
+
+    private static Integer id(List<String> args) {
+        if(args.isEmpty()) {
+            throw new IllegalArgumentException("A project ID is required");
+        }
+
+        try {
+            return Integer.valueOf(args.get(0));
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException(args.get(0) + " is not a valid project ID");
+        }
+    }
+
+    /*
+     * bulk commands only change data when told dryRun=false
+     */
+    private static boolean dryRun(String value) {
+        if(Objects.isNull(value) || value.equals("true")) {
+            return true;
+        }
+
+        if(value.equals("false")) {
+            return false;
+        }
+
+        throw new IllegalArgumentException("dryRun must be true or false but got " + value);
+    }
+
+    private static Map<String, String> options(List<String> args) {
+        Map<String, String> options = new HashMap<>();
+
+        for(String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+
+            if(keyValue.length != 2) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+
+            options.put(keyValue[0], keyValue[1]);
+        }
+
+        return options;
+    }
+
+    /*
+     * takes the set.* options out of options
+     */
+    private static ProjectUpdate update(Map<String, String> options) {
+        ProjectUpdate update = ProjectUpdate.create();
+
+        for(String key : List.copyOf(options.keySet())) {
+            if(!key.startsWith("set.")) {
+                continue;
+            }
+
+            String value = options.remove(key);
+
+            try {
+                switch(key) {
+                    case "set.difficulty":
+                        update = update.withDifficulty(Integer.parseInt(value));
+                        break;
+                    case "set.estimatedFactor":
+                        update = update.withEstimatedHoursScaledBy(new BigDecimal(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown change: " + key);
+                }
+            }
+            catch(NumberFormatException e) {
+                throw new IllegalArgumentException(value + " is not a valid value for " + key);
+            }
+        }
+
+        return update;
+    }
+
+    private static ProjectFilter filter(Map<String, String> options) {
+        ProjectFilter filter = ProjectFilter.all();
+
+        for(Map.Entry<String, String> option : options.entrySet()) {
+            String value = option.getValue();
+
+            try {
+                switch(option.getKey()) {
+                    case "difficulty":
+                        filter = filter.withDifficulty(Integer.parseInt(value));
+                        break;
+                    case "category":
+                        filter = filter.withCategory(value);
+                        break;
+                    case "completed":
+                        filter = filter.withCompleted(Boolean.parseBoolean(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown condition: " + option.getKey());
+                }
+            }
+            catch(NumberFormatException e) {
+                throw new IllegalArgumentException(value + " is not a valid value for " + option.getKey());
+            }
+        }
+
+        return filter;
+    }
+
+    private static void reportProgress(BulkProgress progress) {
+        if(progress.getChunkRows() > 0) {
+            System.err.println(progress);
+        }
+    }
+
+    private static void applyFields(Project project, Map<String, String> options) {
+        for(Map.Entry<String, String> option : options.entrySet()) {
+            String value = option.getValue();
+
+            try {
+                switch(option.getKey()) {
+                    case "name":
+                        project.setProjectName(value);
+                        break;
+                    case "estimated":
+                        project.setEstimatedHours(new BigDecimal(value).setScale(2));
+                        break;
+                    case "actual":
+                        project.setActualHours(new BigDecimal(value).setScale(2));
+                        break;
+                    case "difficulty":
+                        project.setDifficulty(Integer.valueOf(value));
+                        break;
+                    case "notes":
+                        project.setNotes(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown field: " + option.getKey());
+                }
+            }
+            catch(NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException(value + " is not a valid value for " + option.getKey());
+            }
+        }
+    }
+
+    /*
+     * splits a command line on spaces, keeping double-quoted text together
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new LinkedList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+
+        for(char ch : line.toCharArray()) {
+            if(ch == '"') {
+                quoted = !quoted;
+                inToken = true;
+            }
+            else if(Character.isWhitespace(ch) && !quoted) {
+                if(inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            }
+            else {
+                current.append(ch);
+                inToken = true;
+            }
+        }
+
+        if(inToken) {
+            tokens.add(current.toString());
+        }
+
+        return tokens;
+    }
+}
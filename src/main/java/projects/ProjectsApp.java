@@ -1,5 +1,6 @@
 package projects;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.*;
 
@@ -25,7 +26,17 @@ public class ProjectsApp {
     );
     // @formatter: on
     
-    public static void main(String[] args) {
+    /*
+     * With no arguments this runs the interactive menu. With arguments it runs them as commands
+     * (see CommandRunner) and exits with status 1 if any command failed.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0) {
+            Bootstrap.migrate();
+            System.exit(new CommandRunner(System.out).run(args));
+        }
+        
+        Bootstrap.start();
         new ProjectsApp().processUserSelection();
 
     }
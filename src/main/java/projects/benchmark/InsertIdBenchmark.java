@@ -0,0 +1,106 @@
+package projects.benchmark;
+
+import java.sql.*;
+import java.util.*;
+
+import projects.dao.DbConnection;
+
+/*
+ * Compares the latency of an insert followed by the old "SELECT LAST_INSERT_ID() FROM <table>"
+ * lookup with an insert that reads the key through RETURN_GENERATED_KEYS. The old query returns a
+ * row per table row, so the gap grows with the table. Uses a scratch table that is dropped at the
+ * end.
+ *
+ * Usage: InsertIdBenchmark [seedRows] [iterations]
+ */
+public class InsertIdBenchmark {
+    private static final String TABLE = "bench_insert_id";
+
+    public static void main(String[] args) throws SQLException {
+        int seedRows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        try(Connection conn = DbConnection.getConnection()) {
+            createTable(conn, seedRows);
+
+            try {
+                /* warm up both paths so the prepared statement caches are primed */
+                run(conn, Math.min(50, iterations), true);
+                run(conn, Math.min(50, iterations), false);
+
+                report("LAST_INSERT_ID() FROM table", run(conn, iterations, true));
+                report("RETURN_GENERATED_KEYS", run(conn, iterations, false));
+            }
+            finally {
+                try(Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP TABLE IF EXISTS " + TABLE);
+                }
+            }
+        }
+    }
+
+    private static void createTable(Connection conn, int seedRows) throws SQLException {
+        try(Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + TABLE);
+            stmt.execute("CREATE TABLE " + TABLE + " (id INT AUTO_INCREMENT NOT NULL, name VARCHAR(64) NOT NULL, PRIMARY KEY (id))");
+        }
+
+        conn.setAutoCommit(false);
+
+        try(PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + TABLE + " (name) VALUES (?)")) {
+            for(int i = 1; i <= seedRows; i++) {
+                stmt.setString(1, "seed " + i);
+                stmt.addBatch();
+
+                if(i % 5000 == 0 || i == seedRows) {
+                    stmt.executeBatch();
+                }
+            }
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+        System.out.println("Seeded " + seedRows + " rows into " + TABLE);
+    }
+
+    private static long[] run(Connection conn, int iterations, boolean legacy) throws SQLException {
+        String sql = "INSERT INTO " + TABLE + " (name) VALUES (?)";
+        long[] nanos = new long[iterations];
+
+        try(PreparedStatement stmt = legacy ? conn.prepareStatement(sql)
+                : conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for(int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                stmt.setString(1, "bench " + i);
+                stmt.executeUpdate();
+
+                if(legacy) {
+                    try(Statement query = conn.createStatement();
+                            ResultSet rs = query.executeQuery("SELECT LAST_INSERT_ID() FROM " + TABLE)) {
+                        rs.next();
+                        rs.getInt(1);
+                    }
+                }
+                else {
+                    try(ResultSet rs = stmt.getGeneratedKeys()) {
+                        rs.next();
+                        rs.getInt(1);
+                    }
+                }
+
+                nanos[i] = System.nanoTime() - start;
+            }
+        }
+
+        return nanos;
+    }
+
+    private static void report(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        double avg = Arrays.stream(sorted).average().orElse(0) / 1000.0;
+
+        System.out.printf("%-30s n=%d avg=%.1fus p50=%.1fus p99=%.1fus%n", label, sorted.length, avg,
+                sorted[sorted.length / 2] / 1000.0, sorted[(int)(sorted.length * 0.99)] / 1000.0);
+    }
+}
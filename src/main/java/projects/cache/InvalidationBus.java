@@ -0,0 +1,216 @@
+package projects.cache;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.config.DbConfig;
+import projects.dao.DbConnection;
+import projects.dao.OutboxDao;
+import projects.event.ChangeEvent;
+import projects.event.OutboxCursor;
+
+/*
+ * Keeps the near caches of several JVMs consistent. A write sends a small UDP datagram to every
+ * peer in cache.peers so they drop the entry right away. Datagrams can be lost, so each instance
+ * also polls the project_outbox change sequence every cache.pollMillis and invalidates every
+ * project it sees, reading every shard's outbox with a cursor per shard. The poll only moves past
+ * the contiguous part of each sequence (see OutboxCursor), so an event committed after a higher ID
+ * is still seen. A successful poll of every shard tells the cache it is still within its staleness
+ * bound.
+ *
+ * To run several instances on one machine give each its own cache.port and list the others in
+ * cache.peers, e.g. -Dprojects.cache.port=9701 -Dprojects.cache.peers=localhost:9702
+ */
+public class InvalidationBus {
+    private static final String MESSAGE_PREFIX = "projects-invalidate ";
+    private static final String ALL = "*";
+    private static final int POLL_BATCH = 500;
+
+    private final ProjectNearCache cache;
+    private final OutboxDao outboxDao = new OutboxDao();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<InetSocketAddress> peers = new LinkedList<>();
+    private DatagramSocket socket;
+    private ScheduledExecutorService scheduler;
+    private volatile List<OutboxCursor> cursors = List.of();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder polledInvalidations = new LongAdder();
+    private final LongAdder pollFailures = new LongAdder();
+
+    public InvalidationBus(ProjectNearCache cache) {
+        this.cache = cache;
+    }
+
+    public synchronized void start() throws IOException {
+        if(Objects.nonNull(scheduler)) {
+            return;
+        }
+
+        DbConfig config = DbConnection.getConfig();
+
+        for(String peer : config.getString("cache.peers").split(",")) {
+            if(!peer.isBlank()) {
+                String[] hostPort = peer.trim().split(":");
+                peers.add(new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1])));
+            }
+        }
+
+        socket = new DatagramSocket(config.getInt("cache.port"));
+        List<OutboxCursor> started = new ArrayList<>();
+
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            started.add(new OutboxCursor(outboxDao.fetchLatestEventId(shard)));
+        }
+
+        cursors = started;
+        cache.confirmFresh(System.currentTimeMillis());
+
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "cache-invalidation");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.execute(this::receiveLoop);
+
+        long pollMillis = config.getLong("cache.pollMillis");
+        scheduler.scheduleWithFixedDelay(this::pollOnce, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if(Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+            socket.close();
+            scheduler = null;
+        }
+    }
+
+    /*
+     * invalidates locally and tells every peer to do the same. A null ID clears the whole cache.
+     */
+    public void publish(Integer projectID) {
+        if(Objects.isNull(projectID)) {
+            cache.invalidateAll();
+            send(ALL);
+        }
+        else {
+            cache.invalidate(projectID);
+            send(projectID.toString());
+        }
+    }
+
+    private void send(String key) {
+        DatagramSocket current = socket;
+
+        if(Objects.isNull(current)) {
+            return;
+        }
+
+        byte[] data = (MESSAGE_PREFIX + nodeId + " " + key).getBytes(StandardCharsets.UTF_8);
+
+        for(InetSocketAddress peer : peers) {
+            try {
+                current.send(new DatagramPacket(data, data.length, peer));
+                sent.increment();
+            }
+            catch(IOException e) {
+                /* the polling fallback covers lost or unsendable messages */
+            }
+        }
+    }
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[256];
+
+        while(!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+            try {
+                socket.receive(packet);
+            }
+            catch(IOException e) {
+                continue;
+            }
+
+            String[] parts = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8).split(" ");
+
+            if(parts.length != 3 || !MESSAGE_PREFIX.equals(parts[0] + " ") || nodeId.equals(parts[1])) {
+                continue;
+            }
+
+            received.increment();
+
+            if(ALL.equals(parts[2])) {
+                cache.invalidateAll();
+            }
+            else {
+                try {
+                    cache.invalidate(Integer.valueOf(parts[2]));
+                }
+                catch(NumberFormatException e) {
+                    /* ignore malformed messages */
+                }
+            }
+        }
+    }
+
+    /*
+     * invalidates every project changed since the last poll. Events past a hole are invalidated
+     * too, but are read again on the next poll until the hole fills or times out. Runs every
+     * cache.pollMillis once the bus is started.
+     */
+    public void pollOnce() {
+        long startedAt = System.currentTimeMillis();
+        long gapTimeoutMillis = DbConnection.getConfig().getLong("outbox.gapTimeoutMillis");
+
+        try {
+            for(int shard = 0; shard < cursors.size(); shard++) {
+                pollShard(shard, gapTimeoutMillis);
+            }
+
+            cache.confirmFresh(startedAt);
+        }
+        catch(RuntimeException e) {
+            pollFailures.increment();
+        }
+    }
+
+    private void pollShard(int shard, long gapTimeoutMillis) {
+        OutboxCursor cursor = cursors.get(shard);
+        List<ChangeEvent> events;
+        List<ChangeEvent> contiguous;
+
+        do {
+            events = outboxDao.fetchEventsAfter(shard, cursor.getLastEventId(), POLL_BATCH);
+            contiguous = cursor.contiguousPrefix(events, gapTimeoutMillis);
+
+            for(ChangeEvent event : events) {
+                cache.invalidate(event.getProjectId());
+                polledInvalidations.increment();
+            }
+
+            if(!contiguous.isEmpty()) {
+                cursor.advanceTo(contiguous.get(contiguous.size() - 1).getEventId());
+            }
+        } while(contiguous.size() == POLL_BATCH);
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>(cache.getMetrics());
+        metrics.put("messagesSent", sent.sum());
+        metrics.put("messagesReceived", received.sum());
+        metrics.put("polledInvalidations", polledInvalidations.sum());
+        metrics.put("pollFailures", pollFailures.sum());
+
+        for(int shard = 0; shard < cursors.size(); shard++) {
+            metrics.put(shard == 0 ? "lastEventId" : "lastEventId.shard" + shard, cursors.get(shard).getLastEventId());
+        }
+
+        return metrics;
+    }
+}
@@ -0,0 +1,142 @@
+package projects.cache;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.entity.Project;
+
+/*
+ * An in-process LRU cache of hydrated Project aggregates. Every entry expires after
+ * cache.maxStalenessMillis, and the whole cache is bypassed when the InvalidationBus has not
+ * heard from the database for that long, so a reader never sees data older than the bound even if
+ * an invalidation message is lost. The cache keeps its own copy of each project and hands out
+ * copies, so a caller changing a project it was given cannot change what other readers see.
+ */
+public class ProjectNearCache {
+    private final int maxEntries;
+    private final long maxStalenessMillis;
+    private final Map<Integer, CacheEntry> entries;
+    private volatile long freshUntilMillis = Long.MAX_VALUE;
+    private long invalidatedAllAtMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ProjectNearCache(int maxEntries, long maxStalenessMillis) {
+        this.maxEntries = maxEntries;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CacheEntry> eldest) {
+                return size() > ProjectNearCache.this.maxEntries;
+            }
+        };
+    }
+
+    /*
+     * returns the cached project, or empty on a miss, an expired entry, or while the cache is
+     * suspended
+     */
+    public synchronized Optional<Project> get(Integer projectID) {
+        long now = System.currentTimeMillis();
+
+        if(now > freshUntilMillis) {
+            bypassed.increment();
+            return Optional.empty();
+        }
+
+        CacheEntry entry = entries.get(projectID);
+
+        if(Objects.isNull(entry) || Objects.isNull(entry.project)) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        if(now - entry.loadedAtMillis > maxStalenessMillis) {
+            entries.remove(projectID);
+            expired.increment();
+            return Optional.empty();
+        }
+
+        hits.increment();
+        return Optional.of(entry.project.copy());
+    }
+
+    /*
+     * caches a project loaded at loadedAtMillis. The load time must be taken before the query so
+     * that an invalidation arriving during the load is not lost.
+     */
+    public synchronized void put(Project project, long loadedAtMillis) {
+        if(invalidatedAllAtMillis >= loadedAtMillis) {
+            return;
+        }
+
+        CacheEntry current = entries.get(project.getProjectId());
+
+        if(Objects.nonNull(current) && current.invalidatedAtMillis >= loadedAtMillis) {
+            return;
+        }
+
+        entries.put(project.getProjectId(), new CacheEntry(project.copy(), loadedAtMillis));
+    }
+
+    public synchronized void invalidate(Integer projectID) {
+        invalidations.increment();
+        CacheEntry tombstone = new CacheEntry(null, 0);
+        tombstone.invalidatedAtMillis = System.currentTimeMillis();
+        entries.put(projectID, tombstone);
+    }
+
+    /*
+     * drops every entry. Clearing also drops the tombstones, so the time is kept to refuse puts of
+     * projects loaded before it.
+     */
+    public synchronized void invalidateAll() {
+        invalidations.increment();
+        invalidatedAllAtMillis = System.currentTimeMillis();
+        entries.clear();
+    }
+
+    /*
+     * called by the bus after each successful poll; the cache may serve entries until then
+     * plus the staleness bound
+     */
+    public void confirmFresh(long confirmedAtMillis) {
+        freshUntilMillis = confirmedAtMillis + maxStalenessMillis;
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        long h = hits.sum();
+        long m = misses.sum() + expired.sum();
+
+        metrics.put("hits", h);
+        metrics.put("misses", misses.sum());
+        metrics.put("expired", expired.sum());
+        metrics.put("bypassed", bypassed.sum());
+        metrics.put("invalidations", invalidations.sum());
+        metrics.put("hitRatioPercent", h + m == 0 ? 0 : h * 100 / (h + m));
+
+        synchronized(this) {
+            metrics.put("size", (long)entries.size());
+        }
+
+        return metrics;
+    }
+
+    private static class CacheEntry {
+        private final Project project;
+        private final long loadedAtMillis;
+        private long invalidatedAtMillis;
+
+        CacheEntry(Project project, long loadedAtMillis) {
+            this.project = project;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+    }
+}
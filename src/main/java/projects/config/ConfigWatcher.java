@@ -0,0 +1,98 @@
+package projects.config;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/*
+ * Polls the configuration file and hands a freshly loaded DbConfig to the listeners whenever the
+ * effective values change. An invalid file is reported and ignored, so the running configuration
+ * stays in place until the file is fixed.
+ */
+public class ConfigWatcher {
+    private final List<Consumer<DbConfig>> listeners = new CopyOnWriteArrayList<>();
+    private volatile DbConfig current;
+    private long lastModified;
+    private ScheduledExecutorService scheduler;
+
+    public ConfigWatcher(DbConfig initial) {
+        this.current = initial;
+        this.lastModified = modifiedTime(DbConfig.configFile());
+    }
+
+    public DbConfig getCurrent() {
+        return current;
+    }
+
+    public void addListener(Consumer<DbConfig> listener) {
+        listeners.add(listener);
+    }
+
+    /*
+     * starts polling on a daemon thread. A reload interval of zero disables polling.
+     */
+    public synchronized void start() {
+        long millis = current.getLong("config.reloadMillis");
+
+        if(Objects.nonNull(scheduler) || millis == 0) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "config-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkForChanges, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * reloads the configuration if the file has been touched since the last check
+     */
+    public void checkForChanges() {
+        long modified = modifiedTime(DbConfig.configFile());
+
+        if(modified == lastModified) {
+            return;
+        }
+
+        lastModified = modified;
+        reload();
+    }
+
+    /*
+     * reloads unconditionally and notifies listeners if anything changed
+     */
+    public synchronized void reload() {
+        DbConfig loaded;
+
+        try {
+            loaded = DbConfig.load();
+        }
+        catch(RuntimeException e) {
+            System.err.println("Configuration reload rejected: " + e.getMessage());
+            return;
+        }
+
+        if(loaded.equals(current)) {
+            return;
+        }
+
+        current = loaded;
+        System.err.println("Configuration reloaded.\n" + loaded);
+
+        for(Consumer<DbConfig> listener : listeners) {
+            listener.accept(loaded);
+        }
+    }
+
+    private static long modifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        }
+        catch(Exception e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package projects.config;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import projects.exception.DbException;
+
+/*
+ * An immutable snapshot of the database settings. Values are layered, with later sources
+ * overriding earlier ones:
+ *   1. built-in defaults
+ *   2. projects-db.properties on the classpath
+ *   3. the file named by -Dprojects.config (default ./projects-db.properties)
+ *   4. environment variables, e.g. PROJECTS_DB_HOST for db.host
+ *   5. system properties, e.g. -Dprojects.db.host
+ */
+public class DbConfig {
+    public static final String FILE_PROPERTY = "projects.config";
+    public static final String DEFAULT_FILE = "projects-db.properties";
+    private static final String PREFIX = "projects.";
+    private static final String DRIVER_PREFIX = "driver.";
+    private static final String BULKHEAD_PREFIX = "bulkhead.op.";
+    private static final String MASK = "********";
+    /* user[:password]@ after the // of a URL, and password=... in a query string or H2 settings */
+    private static final Pattern USER_INFO = Pattern.compile("//[^/?#@,]*@");
+    private static final Pattern PASSWORD_PARAMETER = Pattern.compile("(?i)\\b(password|pwd)=[^&;,)]*");
+
+    //@formatter:off
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+        Map.entry("db.url", ""),
+        Map.entry("db.host", "localhost"),
+        Map.entry("db.port", "3306"),
+        Map.entry("db.schema", "projects"),
+        Map.entry("db.user", "projects"),
+        Map.entry("db.password", "projects1"),
+        Map.entry("db.replicas", ""),
+        Map.entry("db.readYourWritesMillis", "2000"),
+        Map.entry("db.replicaDownMillis", "10000"),
+        Map.entry("db.healthCheckMillis", "5000"),
+        Map.entry("db.queryTimeoutSeconds", "0"),
+        Map.entry("shard.urls", ""),
+        Map.entry("shard.strategy", "hash"),
+        Map.entry("shard.rangeSize", "1000000"),
+        Map.entry("shard.idBlockSize", "100"),
+        Map.entry("id.clientSide", "false"),
+        Map.entry("pool.maxSize", "10"),
+        Map.entry("pool.timeoutMillis", "5000"),
+        Map.entry("pool.validateAfterIdleMillis", "30000"),
+        Map.entry("config.reloadMillis", "10000"),
+        Map.entry("breaker.enabled", "true"),
+        Map.entry("breaker.windowSize", "20"),
+        Map.entry("breaker.minimumCalls", "10"),
+        Map.entry("breaker.failureRatePercent", "50"),
+        Map.entry("breaker.openMillis", "5000"),
+        Map.entry("breaker.halfOpenProbes", "3"),
+        Map.entry("bulkhead.maxConcurrent", "0"),
+        Map.entry("fetch.bufferMaxBytes", "1048576"),
+        Map.entry("fetch.batchBytes", "262144"),
+        Map.entry("fetch.minFetchSize", "100"),
+        Map.entry("fetch.maxFetchSize", "10000"),
+        Map.entry("bulkhead.waitMillis", "100"),
+        Map.entry("tx.maxRetries", "3"),
+        Map.entry("tx.backoffMillis", "50"),
+        Map.entry("tx.maxBackoffMillis", "2000"),
+        Map.entry("project.softDelete", "true"),
+        Map.entry("purge.intervalMillis", "60000"),
+        Map.entry("purge.graceSeconds", "3600"),
+        Map.entry("purge.batchSize", "500"),
+        Map.entry("purge.pauseMillis", "50"),
+        Map.entry("bulk.chunkSize", "1000"),
+        Map.entry("bulk.pauseMillis", "20"),
+        Map.entry("archive.enabled", "false"),
+        Map.entry("archive.intervalMillis", "60000"),
+        Map.entry("archive.batchSize", "50"),
+        Map.entry("archive.pauseMillis", "100"),
+        Map.entry("outbox.pollMillis", "200"),
+        Map.entry("outbox.batchSize", "100"),
+        Map.entry("outbox.gapTimeoutMillis", "5000"),
+        Map.entry("outbox.retentionSeconds", "86400"),
+        Map.entry("outbox.sink", ""),
+        Map.entry("outbox.trimEnabled", "true"),
+        Map.entry("outbox.trimMillis", "60000"),
+        Map.entry("migrate.onStartup", "false"),
+        Map.entry("cache.enabled", "false"),
+        Map.entry("cache.maxEntries", "1000"),
+        Map.entry("cache.maxStalenessMillis", "5000"),
+        Map.entry("cache.pollMillis", "1000"),
+        Map.entry("cache.port", "0"),
+        Map.entry("cache.peers", ""),
+        Map.entry("queryCache.enabled", "false"),
+        Map.entry("queryCache.maxEntries", "256"),
+        Map.entry("queryCache.maxBytes", "16777216"),
+        Map.entry("queryCache.ttlMillis", "5000"),
+        Map.entry("http.port", "8080"),
+        Map.entry("http.threads", "32"),
+        Map.entry("http.gzipMinBytes", "1024"),
+        Map.entry("http.bindAddress", "127.0.0.1"),
+        Map.entry("http.profiling", "false"),
+        Map.entry("jfr.onStartup", "false"),
+        Map.entry("jfr.settings", "default"),
+        Map.entry("jfr.thresholdMillis", "0"),
+        Map.entry("jfr.maxAgeSeconds", "600"),
+        Map.entry("jfr.maxSizeBytes", "67108864"),
+        Map.entry("jfr.dir", "."),
+        Map.entry("driver.cachePrepStmts", "true"),
+        Map.entry("driver.useServerPrepStmts", "true"),
+        Map.entry("driver.prepStmtCacheSize", "250"),
+        Map.entry("driver.prepStmtCacheSqlLimit", "2048"),
+        Map.entry("driver.rewriteBatchedStatements", "true"),
+        Map.entry("driver.useCursorFetch", "true"),
+        Map.entry("driver.tcpRcvBuf", "65536"),
+        Map.entry("driver.tcpSndBuf", "65536")
+    );
+    //@formatter:on
+
+    private final Map<String, String> values;
+
+    private DbConfig(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(new TreeMap<>(values));
+    }
+
+    /*
+     * loads and validates the configuration from every source
+     */
+    public static DbConfig load() {
+        Map<String, String> values = new HashMap<>(DEFAULTS);
+
+        try(InputStream in = DbConfig.class.getResourceAsStream("/" + DEFAULT_FILE)) {
+            if(Objects.nonNull(in)) {
+                putAll(values, in);
+            }
+        }
+        catch(IOException e) {
+            throw new DbException("Unable to read classpath " + DEFAULT_FILE, e);
+        }
+
+        Path file = configFile();
+
+        if(Files.isReadable(file)) {
+            try(InputStream in = Files.newInputStream(file)) {
+                putAll(values, in);
+            }
+            catch(IOException e) {
+                throw new DbException("Unable to read " + file, e);
+            }
+        }
+
+        for(String key : new ArrayList<>(values.keySet())) {
+            String env = System.getenv(toEnvName(key));
+            if(Objects.nonNull(env)) {
+                values.put(key, env);
+            }
+        }
+
+        for(String name : System.getProperties().stringPropertyNames()) {
+            if(name.startsWith(PREFIX) && !name.equals(FILE_PROPERTY)) {
+                values.put(name.substring(PREFIX.length()), System.getProperty(name));
+            }
+        }
+
+        DbConfig config = new DbConfig(values);
+        config.validate();
+        return config;
+    }
+
+    /*
+     * creates a configuration from explicit values on top of the defaults, mainly for tools
+     */
+    public static DbConfig of(Map<String, String> overrides) {
+        Map<String, String> values = new HashMap<>(DEFAULTS);
+        values.putAll(overrides);
+
+        DbConfig config = new DbConfig(values);
+        config.validate();
+        return config;
+    }
+
+    public static Path configFile() {
+        return Paths.get(System.getProperty(FILE_PROPERTY, DEFAULT_FILE));
+    }
+
+    private static void putAll(Map<String, String> values, InputStream in) throws IOException {
+        Properties props = new Properties();
+        props.load(in);
+
+        for(String name : props.stringPropertyNames()) {
+            values.put(name, props.getProperty(name).trim());
+        }
+    }
+
+    private static String toEnvName(String key) {
+        return (PREFIX + key).replace('.', '_').toUpperCase(Locale.ROOT);
+    }
+
+    /*
+     * rejects missing or out of range values so that a bad reload is never applied
+     */
+    private void validate() {
+        List<String> errors = new LinkedList<>();
+
+        for(String key : List.of("db.host", "db.schema", "db.user", "http.bindAddress", "jfr.settings", "jfr.dir")) {
+            if(getString(key).isBlank()) {
+                errors.add(key + " must not be blank");
+            }
+        }
+
+        checkRange(errors, "db.port", 1, 65535);
+        checkRange(errors, "db.readYourWritesMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "db.replicaDownMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "db.healthCheckMillis", 100, Integer.MAX_VALUE);
+        checkRange(errors, "pool.maxSize", 1, 1000);
+        checkRange(errors, "pool.timeoutMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "pool.validateAfterIdleMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "db.queryTimeoutSeconds", 0, Integer.MAX_VALUE);
+        checkRange(errors, "config.reloadMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "shard.rangeSize", 1, Integer.MAX_VALUE);
+        checkRange(errors, "shard.idBlockSize", 1, 1000000);
+        checkRange(errors, "breaker.windowSize", 1, 10000);
+        checkRange(errors, "breaker.minimumCalls", 1, 10000);
+        checkRange(errors, "breaker.failureRatePercent", 1, 100);
+        checkRange(errors, "breaker.openMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "breaker.halfOpenProbes", 1, 1000);
+        checkRange(errors, "bulkhead.maxConcurrent", 0, 10000);
+        checkRange(errors, "bulkhead.waitMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "fetch.bufferMaxBytes", 0, Long.MAX_VALUE);
+        checkRange(errors, "fetch.batchBytes", 1, Long.MAX_VALUE);
+        checkRange(errors, "fetch.minFetchSize", 1, Integer.MAX_VALUE);
+        checkRange(errors, "fetch.maxFetchSize", 1, Integer.MAX_VALUE);
+        checkRange(errors, "tx.maxRetries", 0, 100);
+        checkRange(errors, "tx.backoffMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "tx.maxBackoffMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "purge.intervalMillis", 100, Integer.MAX_VALUE);
+        checkRange(errors, "purge.graceSeconds", 0, Integer.MAX_VALUE);
+        checkRange(errors, "purge.batchSize", 1, 100000);
+        checkRange(errors, "purge.pauseMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "bulk.chunkSize", 1, 1000000);
+        checkRange(errors, "bulk.pauseMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "archive.intervalMillis", 100, Integer.MAX_VALUE);
+        checkRange(errors, "archive.batchSize", 1, 100000);
+        checkRange(errors, "archive.pauseMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "outbox.pollMillis", 10, Integer.MAX_VALUE);
+        checkRange(errors, "outbox.batchSize", 1, 10000);
+        checkRange(errors, "outbox.gapTimeoutMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "outbox.retentionSeconds", 0, Integer.MAX_VALUE);
+        checkRange(errors, "outbox.trimMillis", 100, Integer.MAX_VALUE);
+        checkRange(errors, "cache.maxEntries", 1, Integer.MAX_VALUE);
+        checkRange(errors, "cache.maxStalenessMillis", 1, Integer.MAX_VALUE);
+        checkRange(errors, "cache.pollMillis", 10, Integer.MAX_VALUE);
+        checkRange(errors, "cache.port", 0, 65535);
+        checkRange(errors, "queryCache.maxEntries", 1, Integer.MAX_VALUE);
+        checkRange(errors, "queryCache.maxBytes", 0, Long.MAX_VALUE);
+        checkRange(errors, "queryCache.ttlMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "http.port", 0, 65535);
+        checkRange(errors, "http.threads", 1, 10000);
+        checkRange(errors, "http.gzipMinBytes", 0, Integer.MAX_VALUE);
+        checkRange(errors, "jfr.thresholdMillis", 0, Integer.MAX_VALUE);
+        checkRange(errors, "jfr.maxAgeSeconds", 1, Integer.MAX_VALUE);
+        checkRange(errors, "jfr.maxSizeBytes", 0, Long.MAX_VALUE);
+
+        try {
+            if(getLong("cache.pollMillis") >= getLong("cache.maxStalenessMillis")) {
+                errors.add("cache.pollMillis must be less than cache.maxStalenessMillis");
+            }
+        }
+        catch(NumberFormatException e) {
+            /* already reported by checkRange */
+        }
+
+        try {
+            if(getInt("fetch.minFetchSize") > getInt("fetch.maxFetchSize")) {
+                errors.add("fetch.minFetchSize must not be greater than fetch.maxFetchSize");
+            }
+        }
+        catch(NumberFormatException e) {
+            /* already reported by checkRange */
+        }
+
+        /* per-operation limits, e.g. bulkhead.op.fetchAllProjects=4 */
+        for(String key : values.keySet()) {
+            if(key.startsWith(BULKHEAD_PREFIX)) {
+                checkRange(errors, key, 0, 10000);
+            }
+        }
+
+        for(String replica : getReplicas()) {
+            String[] hostPort = replica.split(":");
+            if(hostPort.length > 2 || hostPort[0].isBlank() || (hostPort.length == 2 && !hostPort[1].matches("\\d+"))) {
+                errors.add("db.replicas entry '" + replica + "' is not host[:port]");
+            }
+        }
+
+        String sink = getString("outbox.sink");
+        if(!sink.isBlank() && !sink.matches("file:.+") && !sink.matches("tcp:[^:]+:\\d+")) {
+            errors.add("outbox.sink=" + sink + " must be file:<path> or tcp:<host>:<port>");
+        }
+
+        if(!List.of("hash", "range").contains(getString("shard.strategy"))) {
+            errors.add("shard.strategy=" + getString("shard.strategy") + " must be hash or range");
+        }
+
+        for(String shard : getShards()) {
+            if(!shard.startsWith("jdbc:") && !shard.matches("[^:/]+(:\\d+)?/\\w+")) {
+                errors.add("shard.urls entry '" + shard + "' is neither a JDBC URL nor host[:port]/schema");
+            }
+        }
+
+        if(!errors.isEmpty()) {
+            throw new DbException("Invalid database configuration: " + String.join("; ", errors));
+        }
+    }
+
+    private void checkRange(List<String> errors, String key, long min, long max) {
+        try {
+            long value = Long.parseLong(getString(key));
+            if(value < min || value > max) {
+                errors.add(key + "=" + value + " must be between " + min + " and " + max);
+            }
+        }
+        catch(NumberFormatException e) {
+            errors.add(key + "=" + getString(key) + " is not a number");
+        }
+    }
+
+    public String getString(String key) {
+        return values.getOrDefault(key, "");
+    }
+
+    public boolean getBoolean(String key) {
+        return Boolean.parseBoolean(getString(key));
+    }
+
+    public int getInt(String key) {
+        return Integer.parseInt(getString(key));
+    }
+
+    public long getLong(String key) {
+        return Long.parseLong(getString(key));
+    }
+
+    /*
+     * the concurrency limit for transactions with this name: bulkhead.op.<name> if set, otherwise
+     * bulkhead.maxConcurrent. 0 means no limit.
+     */
+    public int getBulkheadLimit(String operation) {
+        String limit = getString(BULKHEAD_PREFIX + operation);
+        return limit.isBlank() ? getInt("bulkhead.maxConcurrent") : Integer.parseInt(limit);
+    }
+
+    public String getHost() {
+        return getString("db.host");
+    }
+
+    public int getPort() {
+        return getInt("db.port");
+    }
+
+    public String getSchema() {
+        return getString("db.schema");
+    }
+
+    public String getUser() {
+        return getString("db.user");
+    }
+
+    public String getPassword() {
+        return getString("db.password");
+    }
+
+    public List<String> getReplicas() {
+        List<String> replicas = new LinkedList<>();
+
+        for(String entry : getString("db.replicas").split(",")) {
+            if(!entry.isBlank()) {
+                replicas.add(entry.trim());
+            }
+        }
+
+        return replicas;
+    }
+
+    /*
+     * the shards after the first, as listed in shard.urls. The primary is always shard 0, so an
+     * empty list means the data is not sharded.
+     */
+    public List<String> getShards() {
+        List<String> shards = new LinkedList<>();
+
+        for(String entry : getString("shard.urls").split(",")) {
+            if(!entry.isBlank()) {
+                shards.add(entry.trim());
+            }
+        }
+
+        return shards;
+    }
+
+    /*
+     * the JDBC URL of a shard after the first. A host[:port]/schema entry gets the driver
+     * properties like the primary; a full JDBC URL is used as-is.
+     */
+    public String getShardUrl(String shard) {
+        if(shard.startsWith("jdbc:")) {
+            return shard;
+        }
+
+        String[] hostSchema = shard.split("/");
+        String[] hostPort = hostSchema[0].split(":");
+        int port = hostPort.length > 1 ? Integer.parseInt(hostPort[1]) : getPort();
+        return buildUrl(hostPort[0], port, hostSchema[1]);
+    }
+
+    /*
+     * the Connector/J properties, without the "driver." prefix
+     */
+    public Map<String, String> getDriverProperties() {
+        Map<String, String> driver = new TreeMap<>();
+
+        for(Map.Entry<String, String> entry : values.entrySet()) {
+            if(entry.getKey().startsWith(DRIVER_PREFIX)) {
+                driver.put(entry.getKey().substring(DRIVER_PREFIX.length()), entry.getValue());
+            }
+        }
+
+        return driver;
+    }
+
+    /*
+     * the JDBC URL of the primary. db.url, when set, is used as-is so that another driver (for
+     * example an embedded stand-in database) can be plugged in; otherwise it is built from
+     * db.host and db.port.
+     */
+    public String getPrimaryUrl() {
+        String url = getString("db.url");
+        return url.isBlank() ? buildUrl(getHost(), getPort()) : url;
+    }
+
+    /*
+     * builds the JDBC URL for the given host, including the driver tuning properties. Credentials
+     * are passed separately so that the URL is safe to log.
+     */
+    public String buildUrl(String host, int port) {
+        return buildUrl(host, port, getSchema());
+    }
+
+    public String buildUrl(String host, int port, String schema) {
+        StringBuilder url = new StringBuilder();
+        url.append("jdbc:mysql://").append(host).append(':').append(port).append('/').append(schema);
+
+        char separator = '?';
+        for(Map.Entry<String, String> entry : getDriverProperties().entrySet()) {
+            url.append(separator).append(entry.getKey()).append('=').append(entry.getValue());
+            separator = '&';
+        }
+
+        return url.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof DbConfig && values.equals(((DbConfig)obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    /*
+     * the effective configuration with the credentials masked: password settings entirely, and in
+     * URL settings such as db.url and shard.urls the user:password@ part and any password parameter
+     */
+    @Override
+    public String toString() {
+        String result = "Effective database configuration:";
+
+        for(Map.Entry<String, String> entry : values.entrySet()) {
+            result += "\n   " + entry.getKey() + "=" + mask(entry.getKey(), entry.getValue());
+        }
+
+        return result;
+    }
+
+    private static String mask(String key, String value) {
+        String name = key.toLowerCase(Locale.ROOT);
+
+        if(name.contains("password")) {
+            return MASK;
+        }
+
+        if(name.endsWith("url") || name.endsWith("urls")) {
+            return PASSWORD_PARAMETER.matcher(USER_INFO.matcher(value).replaceAll("//" + MASK + "@"))
+                    .replaceAll("$1=" + MASK);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package projects.dao;
+
+/*
+ * Where a bulk change has got to, handed to its progress callback after every chunk. Chunks cover
+ * project IDs in ascending ranges of bulk.chunkSize, one shard after another.
+ */
+public class BulkProgress {
+    private final int shard;
+    private final int shardCount;
+    private final int throughProjectId;
+    private final int maxProjectId;
+    private final int chunkRows;
+    private final long totalRows;
+
+    BulkProgress(int shard, int shardCount, int throughProjectId, int maxProjectId, int chunkRows, long totalRows) {
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.throughProjectId = throughProjectId;
+        this.maxProjectId = maxProjectId;
+        this.chunkRows = chunkRows;
+        this.totalRows = totalRows;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /*
+     * the last project ID of the chunk just done on this shard
+     */
+    public int getThroughProjectId() {
+        return throughProjectId;
+    }
+
+    /*
+     * the highest project ID on this shard when the change started
+     */
+    public int getMaxProjectId() {
+        return maxProjectId;
+    }
+
+    /*
+     * projects changed by the chunk just done
+     */
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    /*
+     * projects changed so far on all shards
+     */
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    @Override
+    public String toString() {
+        return "shard " + shard + " through ID " + throughProjectId + " of " + maxProjectId + ": "
+            + chunkRows + " in chunk, " + totalRows + " in total";
+    }
+}
@@ -0,0 +1,65 @@
+package projects.dao;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.exception.DbException;
+import projects.exception.DbUnavailableException;
+
+/*
+ * Caps how many transactions of one kind run at once, so that a slow operation cannot take every
+ * pooled connection and starve the others. A limit of 0 only counts.
+ */
+class Bulkhead {
+    private final String name;
+    private final int limit;
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    Bulkhead(String name, int limit) {
+        this.name = name;
+        this.limit = limit;
+        this.permits = new Semaphore(limit);
+    }
+
+    /*
+     * waits up to waitMillis for a slot, then throws DbUnavailableException
+     */
+    void enter(long waitMillis) {
+        if(limit > 0) {
+            try {
+                if(!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                    rejected.increment();
+                    throw new DbUnavailableException(
+                            "Too many concurrent " + name + " transactions (limit " + limit + ")");
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DbException("Interrupted waiting to start " + name, e);
+            }
+        }
+
+        active.incrementAndGet();
+    }
+
+    void exit() {
+        active.decrementAndGet();
+
+        if(limit > 0) {
+            permits.release();
+        }
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("limit=%d, active=%d, rejected=%d", limit, active.get(), rejected.sum());
+    }
+}
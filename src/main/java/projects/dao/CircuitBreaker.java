@@ -0,0 +1,210 @@
+package projects.dao;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.config.DbConfig;
+import projects.exception.DbUnavailableException;
+
+/*
+ * Fails fast while the database is unreachable instead of letting every caller wait for the
+ * driver or pool to time out.
+ *
+ * Closed: calls go through and the outcome of the last breaker.windowSize calls is kept. Once at
+ * least breaker.minimumCalls have been seen and breaker.failureRatePercent of them failed, the
+ * breaker opens. Open: calls are rejected for breaker.openMillis. Half-open: up to
+ * breaker.halfOpenProbes calls are let through; if they all succeed the breaker closes, and any
+ * failure opens it again.
+ *
+ * Only failures that say the database is unreachable or too slow count (see isUnavailable).
+ * Constraint violations and deadlocks mean the database answered, so they count as successes.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openMillis;
+    private final int halfOpenProbes;
+
+    /* true marks a failure */
+    private final boolean[] outcomes;
+    private int next;
+    private int calls;
+    private int failures;
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timesOpened = new LongAdder();
+
+    public CircuitBreaker(String name, DbConfig config) {
+        this.name = name;
+        this.enabled = config.getBoolean("breaker.enabled");
+        this.outcomes = new boolean[config.getInt("breaker.windowSize")];
+        this.minimumCalls = config.getInt("breaker.minimumCalls");
+        this.failureRatePercent = config.getInt("breaker.failureRatePercent");
+        this.openMillis = config.getLong("breaker.openMillis");
+        this.halfOpenProbes = config.getInt("breaker.halfOpenProbes");
+    }
+
+    /*
+     * throws DbUnavailableException if the call may not go ahead. Returns true when the call is
+     * a half-open probe, which the caller must report with the probe flag set.
+     */
+    public boolean acquirePermission() {
+        if(!enabled || state == State.CLOSED) {
+            return false;
+        }
+
+        synchronized(this) {
+            long now = System.currentTimeMillis();
+
+            if(state == State.OPEN) {
+                if(now - openedAt < openMillis) {
+                    rejected.increment();
+                    throw new DbUnavailableException("Circuit for " + name + " is open; failing fast for another "
+                            + (openMillis - (now - openedAt)) + "ms");
+                }
+
+                state = State.HALF_OPEN;
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+
+            if(state == State.HALF_OPEN) {
+                if(probesStarted >= halfOpenProbes) {
+                    rejected.increment();
+                    throw new DbUnavailableException("Circuit for " + name + " is half-open and its probes are in flight");
+                }
+
+                probesStarted++;
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    public synchronized void onSuccess(boolean probe) {
+        if(!enabled) {
+            return;
+        }
+
+        if(state == State.HALF_OPEN) {
+            if(probe && ++probesSucceeded >= halfOpenProbes) {
+                close();
+            }
+        }
+        else if(state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure(boolean probe) {
+        if(!enabled) {
+            return;
+        }
+
+        if(state == State.HALF_OPEN) {
+            open("a half-open probe failed");
+        }
+        else if(state == State.CLOSED) {
+            record(true);
+
+            if(calls >= minimumCalls && failures * 100L >= (long)failureRatePercent * calls) {
+                open(failures + " of the last " + calls + " calls failed");
+            }
+        }
+    }
+
+    /*
+     * for a call that ended without learning anything about the database, such as a wait for a
+     * busy pool. It counts neither way, and a half-open probe gives its slot back.
+     */
+    public synchronized void onSkipped(boolean probe) {
+        if(enabled && probe && state == State.HALF_OPEN && probesStarted > 0) {
+            probesStarted--;
+        }
+    }
+
+    /*
+     * true for errors meaning the database could not be reached or did not answer in time
+     */
+    public static boolean isUnavailable(Throwable e) {
+        for(Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+            if(cause instanceof DbUnavailableException) {
+                return false;
+            }
+
+            if(cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException
+                    || cause instanceof SQLRecoverableException || cause instanceof SQLTimeoutException) {
+                return true;
+            }
+
+            if(cause instanceof SQLException) {
+                String sqlState = ((SQLException)cause).getSQLState();
+                if(Objects.nonNull(sqlState) && sqlState.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("windowCalls", (long)calls);
+        metrics.put("windowFailures", (long)failures);
+        metrics.put("rejected", rejected.sum());
+        metrics.put("timesOpened", timesOpened.sum());
+        return metrics;
+    }
+
+    private void record(boolean failed) {
+        if(calls == outcomes.length) {
+            if(outcomes[next]) {
+                failures--;
+            }
+        }
+        else {
+            calls++;
+        }
+
+        outcomes[next] = failed;
+        next = (next + 1) % outcomes.length;
+
+        if(failed) {
+            failures++;
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        timesOpened.increment();
+        System.err.println("Circuit for " + name + " opened: " + reason);
+    }
+
+    private void close() {
+        Arrays.fill(outcomes, false);
+        next = 0;
+        calls = 0;
+        failures = 0;
+        state = State.CLOSED;
+        System.err.println("Circuit for " + name + " closed");
+    }
+}
@@ -0,0 +1,293 @@
+package projects.dao;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import jdk.jfr.EventType;
+import projects.jfr.ConnectionAcquireEvent;
+import projects.jfr.StatementEvent;
+
+/*
+ * A small fixed-size JDBC connection pool. Borrowed connections are proxies whose close() returns
+ * the physical connection to the pool. Once the pool is shut down (for example after a
+ * configuration reload) returned connections are closed instead of reused. A returned connection
+ * gets back the isolation level it was opened with. When a query timeout is set, every statement
+ * created through a borrowed connection gets it.
+ *
+ * Borrowing is recorded as a ConnectionAcquireEvent. While a flight recording has StatementEvent
+ * enabled, statements created through a borrowed connection are wrapped to record each execution.
+ */
+public class ConnectionPool {
+    private static final EventType STATEMENT_EVENT = EventType.getEventType(StatementEvent.class);
+
+    private final String url;
+    private final Properties credentials;
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final long validateAfterIdleMillis;
+    private final int queryTimeoutSeconds;
+    private final Semaphore permits;
+    private final BlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+    private volatile boolean shutdown;
+
+    public ConnectionPool(String url, String user, String password, int maxSize, long timeoutMillis,
+            long validateAfterIdleMillis, int queryTimeoutSeconds) {
+        this.url = url;
+        this.credentials = new Properties();
+        this.credentials.setProperty("user", user);
+        this.credentials.setProperty("password", password);
+        this.maxSize = maxSize;
+        this.timeoutMillis = timeoutMillis;
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /*
+     * borrows a connection, waiting up to the pool timeout for one to become free
+     */
+    public Connection borrow() throws SQLException {
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        event.begin();
+
+        try {
+            Connection conn = acquire(event);
+            event.succeeded = true;
+            return conn;
+        }
+        finally {
+            event.end();
+
+            if(event.shouldCommit()) {
+                event.transaction = TransactionExecutor.currentName();
+                event.url = url;
+                event.commit();
+            }
+        }
+    }
+
+    private Connection acquire(ConnectionAcquireEvent event) throws SQLException {
+        if(shutdown) {
+            throw new SQLException("Connection pool for " + url + " is shut down");
+        }
+
+        try {
+            if(!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new PoolTimeoutException(
+                        "Timed out after " + timeoutMillis + "ms waiting for a connection to " + url);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", e);
+        }
+
+        try {
+            return wrap(physicalConnection(event));
+        }
+        catch(SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Idle physicalConnection(ConnectionAcquireEvent event) throws SQLException {
+        Idle candidate;
+
+        while(Objects.nonNull(candidate = idle.pollFirst())) {
+            boolean stale = System.currentTimeMillis() - candidate.since > validateAfterIdleMillis;
+
+            if(!stale || candidate.conn.isValid(2)) {
+                event.reused = true;
+                return candidate;
+            }
+
+            closeQuietly(candidate.conn);
+        }
+
+        Connection conn = DriverManager.getConnection(url, credentials);
+
+        try {
+            return new Idle(conn, conn.getTransactionIsolation());
+        }
+        catch(SQLException e) {
+            closeQuietly(conn);
+            throw e;
+        }
+    }
+
+    private Connection wrap(Idle pooled) {
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                new PooledConnection(pooled));
+    }
+
+    /*
+     * true if the connection was borrowed from this pool, whether or not it has been returned
+     */
+    public boolean owns(Connection conn) {
+        if(Objects.isNull(conn) || !Proxy.isProxyClass(conn.getClass())) {
+            return false;
+        }
+
+        InvocationHandler handler = Proxy.getInvocationHandler(conn);
+        return handler instanceof PooledConnection && ((PooledConnection)handler).owner() == this;
+    }
+
+    /*
+     * resets transaction state and puts the connection back, or closes it if the pool is retired
+     */
+    private void release(Idle pooled, boolean isolationChanged) {
+        Connection physical = pooled.conn;
+
+        try {
+            if(shutdown || physical.isClosed()) {
+                closeQuietly(physical);
+                return;
+            }
+
+            if(!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+
+            if(physical.isReadOnly()) {
+                physical.setReadOnly(false);
+            }
+
+            if(isolationChanged) {
+                physical.setTransactionIsolation(pooled.isolation);
+            }
+
+            idle.offerFirst(new Idle(physical, pooled.isolation));
+        }
+        catch(SQLException e) {
+            closeQuietly(physical);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /*
+     * stops handing out connections and closes the idle ones. Borrowed connections are closed
+     * when they are returned.
+     */
+    public void shutdown() {
+        shutdown = true;
+        Idle candidate;
+
+        while(Objects.nonNull(candidate = idle.pollFirst())) {
+            closeQuietly(candidate.conn);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        }
+        catch(SQLException e) {
+            /* nothing more can be done with a broken connection */
+        }
+    }
+
+    /*
+     * the proxy behind a borrowed connection
+     */
+    private class PooledConnection implements InvocationHandler {
+        private final Idle pooled;
+        private final Connection physical;
+        private boolean closed;
+        private boolean isolationChanged;
+
+        PooledConnection(Idle pooled) {
+            this.pooled = pooled;
+            this.physical = pooled.conn;
+        }
+
+        ConnectionPool owner() {
+            return ConnectionPool.this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch(method.getName()) {
+                case "close":
+                    if(!closed) {
+                        closed = true;
+                        release(pooled, isolationChanged);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "unwrap":
+                    if(((Class<?>)args[0]).isInstance(physical)) {
+                        return physical;
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            if(closed) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+
+            if(method.getName().equals("setTransactionIsolation")) {
+                isolationChanged = true;
+            }
+
+            Object result;
+
+            try {
+                result = method.invoke(physical, args);
+            }
+            catch(InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            /* statements get the pool's query timeout so a stalled server cannot hold a caller forever */
+            if(queryTimeoutSeconds > 0 && result instanceof Statement) {
+                ((Statement)result).setQueryTimeout(queryTimeoutSeconds);
+            }
+
+            if(result instanceof Statement && STATEMENT_EVENT.isEnabled()) {
+                String sql = method.getName().equals("createStatement") ? null : (String)args[0];
+                result = RecordedStatement.wrap((Statement)result, method.getReturnType(), sql);
+            }
+
+            return result;
+        }
+    }
+
+    /*
+     * a physical connection with the isolation level it was opened with
+     */
+    private static class Idle {
+        private final Connection conn;
+        private final int isolation;
+        private final long since = System.currentTimeMillis();
+
+        Idle(Connection conn, int isolation) {
+            this.conn = conn;
+            this.isolation = isolation;
+        }
+    }
+}
@@ -1,26 +1,259 @@
 package projects.dao;
 
 import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
 
+import projects.config.ConfigWatcher;
+import projects.config.DbConfig;
 import projects.exception.DbException;
+import projects.exception.DbUnavailableException;
 
 public class DbConnection {
-    
-    private static String HOST = "localhost";
-    private static String PASSWORD = "projects1";
-    private static int PORT = 3306;
-    private static String SCHEMA = "projects";
-    private static String USER = "projects";
-    
+
+    private static final ConfigWatcher WATCHER = new ConfigWatcher(DbConfig.load());
+    private static volatile Pools POOLS = new Pools(WATCHER.getCurrent());
+    private static final int PROBE_TIMEOUT_SECONDS = 2;
+    private static final ScheduledExecutorService HEALTH_CHECKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "replica-health-check");
+        t.setDaemon(true);
+        return t;
+    });
+    private static ScheduledFuture<?> healthCheck;
+
+    static {
+        /* stderr, so that command mode keeps stdout for machine-readable results */
+        System.err.println(WATCHER.getCurrent() + "\n");
+        WATCHER.addListener(DbConnection::applyConfig);
+        WATCHER.start();
+        scheduleHealthCheck(POOLS.healthCheckMillis);
+    }
+
+    /*
+     * opens a connection to the primary. All writes must use this. While the circuit breaker is
+     * open this throws DbUnavailableException at once instead of waiting on the database.
+     */
     public static java.sql.Connection getConnection() {
-        String uri = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s", HOST, PORT, SCHEMA, USER, PASSWORD);
+        return getConnection(0);
+    }
+
+    /*
+     * opens a connection to a shard, where 0 is the primary. Each shard has its own circuit
+     * breaker, which counts failures to connect or validate but not waits for a busy pool. When
+     * the pool stays exhausted for pool.timeoutMillis this throws DbUnavailableException.
+     */
+    public static java.sql.Connection getConnection(int shard) {
+        Shard target = POOLS.shards.get(shard);
+        boolean probe = target.breaker.acquirePermission();
+        Connection conn;
+        
         try {
-            Connection conn = DriverManager.getConnection(uri);
-            System.out.println("Connection to " + SCHEMA + " is successful\n");
-            return conn;
+            conn = target.pool.borrow();
+            
+            /* a pooled connection may have gone stale while the circuit was open */
+            if(probe && !conn.isValid(PROBE_TIMEOUT_SECONDS)) {
+                conn.close();
+                throw new SQLNonTransientConnectionException("Connection to " + target.name + " is not valid");
+            }
+        } catch(PoolTimeoutException e) {
+            /* every connection is in use; that is load, not a database failure */
+            target.breaker.onSkipped(probe);
+            throw new DbUnavailableException(e.getMessage(), e);
         } catch(SQLException e) {
-            System.out.println("Unable to connect to " + SCHEMA);
-            throw new DbException ("Unable to connect to " + SCHEMA);
+            if(CircuitBreaker.isUnavailable(e)) {
+                target.breaker.onFailure(probe);
+            }
+            else {
+                target.breaker.onSkipped(probe);
+            }
+            System.err.println("Unable to connect to " + target.name);
+            throw new DbException ("Unable to connect to " + target.name, e);
+        }
+        
+        target.breaker.onSuccess(probe);
+        return conn;
+    }
+    
+    /*
+     * called when a statement on a primary connection fails, so that timeouts and dropped
+     * connections count towards opening the circuit
+     */
+    public static void recordFailure(Throwable e) {
+        recordFailure(0, e);
+    }
+
+    public static void recordFailure(int shard, Throwable e) {
+        if(CircuitBreaker.isUnavailable(e)) {
+            POOLS.shards.get(shard).breaker.onFailure(false);
+        }
+    }
+
+    /*
+     * called when a statement on a connection from getReadConnection fails. A replica's failure
+     * goes to ReplicaRouter and the primary's to its circuit breaker.
+     */
+    public static void recordReadFailure(Connection conn, Throwable e) {
+        if(!POOLS.router.recordFailure(conn, e)) {
+            recordFailure(0, e);
+        }
+    }
+
+    /*
+     * opens a connection for read-only work. A healthy replica is used when one is configured
+     * and no write has been made within the read-your-writes window; otherwise the primary.
+     */
+    public static java.sql.Connection getReadConnection() {
+        Connection conn = POOLS.router.openReplica();
+
+        if(Objects.nonNull(conn)) {
+            try {
+                conn.setReadOnly(true);
+            }
+            catch(SQLException e) {
+                /* the hint is optional; the connection is still usable */
+            }
+            return conn;
+        }
+
+        return getConnection();
+    }
+
+    /*
+     * called by the DAO after committing a write
+     */
+    public static void recordWrite() {
+        POOLS.router.recordWrite();
+    }
+
+    public static ReplicaRouter getRouter() {
+        return POOLS.router;
+    }
+
+    public static ConnectionPool getPrimaryPool() {
+        return POOLS.shards.get(0).pool;
+    }
+
+    public static CircuitBreaker getCircuitBreaker() {
+        return POOLS.shards.get(0).breaker;
+    }
+
+    public static ShardRouter getShardRouter() {
+        return POOLS.shardRouter;
+    }
+
+    /*
+     * the pool of each shard, with the primary first
+     */
+    public static List<ConnectionPool> getShardPools() {
+        List<ConnectionPool> pools = new ArrayList<>();
+        POOLS.shards.forEach(shard -> pools.add(shard.pool));
+        return pools;
+    }
+
+    public static List<CircuitBreaker> getShardBreakers() {
+        List<CircuitBreaker> breakers = new ArrayList<>();
+        POOLS.shards.forEach(shard -> breakers.add(shard.breaker));
+        return breakers;
+    }
+
+    public static DbConfig getConfig() {
+        return WATCHER.getCurrent();
+    }
+
+    /*
+     * re-reads the configuration immediately instead of waiting for the file watcher
+     */
+    public static void reloadConfig() {
+        WATCHER.reload();
+    }
+
+    /*
+     * swaps in pools built from the new configuration. Connections already borrowed from the old
+     * pools keep working and are closed when they are returned.
+     */
+    private static synchronized void applyConfig(DbConfig config) {
+        Pools previous = POOLS;
+
+        if(!new ShardRouter(config).sameLayout(previous.shardRouter)) {
+            System.err.println("Ignoring the new configuration: changing the shards needs a restart");
+            return;
+        }
+
+        Pools next = new Pools(config);
+
+        next.router.inheritWriteTime(previous.router);
+        POOLS = next;
+        previous.shutdown();
+
+        if(next.healthCheckMillis != previous.healthCheckMillis) {
+            scheduleHealthCheck(next.healthCheckMillis);
+        }
+    }
+
+    /*
+     * (re)starts the replica health check at the given interval. It always checks the current
+     * router, so only a change of interval needs a new schedule.
+     */
+    private static synchronized void scheduleHealthCheck(long millis) {
+        if(Objects.nonNull(healthCheck)) {
+            healthCheck.cancel(false);
+        }
+
+        healthCheck = HEALTH_CHECKER.scheduleWithFixedDelay(() -> POOLS.router.checkHealth(), millis, millis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * the primary and shard pools with their circuit breakers, and the replica router, for one
+     * configuration. A reload starts with closed breakers.
+     */
+    private static class Pools {
+        private final long healthCheckMillis;
+        private final List<Shard> shards = new ArrayList<>();
+        private final ShardRouter shardRouter;
+        private final ReplicaRouter router;
+
+        Pools(DbConfig config) {
+            healthCheckMillis = config.getLong("db.healthCheckMillis");
+            shardRouter = new ShardRouter(config);
+            shards.add(new Shard(config.getSchema(), newPool(config, config.getPrimaryUrl()), config));
+
+            for(String entry : config.getShards()) {
+                shards.add(new Shard("shard " + shards.size(), newPool(config, config.getShardUrl(entry)), config));
+            }
+
+            List<ConnectionPool> replicas = new LinkedList<>();
+            for(String entry : config.getReplicas()) {
+                String[] hostPort = entry.split(":");
+                int port = hostPort.length > 1 ? Integer.parseInt(hostPort[1]) : config.getPort();
+                replicas.add(newPool(config, config.buildUrl(hostPort[0], port)));
+            }
+
+            router = new ReplicaRouter(replicas, config.getLong("db.readYourWritesMillis"),
+                    config.getLong("db.replicaDownMillis"));
+        }
+
+        private static ConnectionPool newPool(DbConfig config, String url) {
+            return new ConnectionPool(url, config.getUser(), config.getPassword(),
+                    config.getInt("pool.maxSize"), config.getLong("pool.timeoutMillis"),
+                    config.getLong("pool.validateAfterIdleMillis"), config.getInt("db.queryTimeoutSeconds"));
+        }
+
+        void shutdown() {
+            shards.forEach(shard -> shard.pool.shutdown());
+            router.shutdown();
+        }
+    }
+
+    private static class Shard {
+        private final String name;
+        private final ConnectionPool pool;
+        private final CircuitBreaker breaker;
+
+        Shard(String name, ConnectionPool pool, DbConfig config) {
+            this.name = name;
+            this.pool = pool;
+            this.breaker = new CircuitBreaker(name, config);
         }
     }
 
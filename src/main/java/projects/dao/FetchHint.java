@@ -0,0 +1,48 @@
+package projects.dao;
+
+/*
+ * How a query's rows should come back from the driver. AUTO lets FetchTuner decide from earlier
+ * executions; the others override it for one call. Instances are immutable.
+ */
+public class FetchHint {
+    public static final FetchHint AUTO = new FetchHint(Mode.AUTO, 0);
+    /* read the whole result into memory in one round trip */
+    public static final FetchHint BUFFER = new FetchHint(Mode.BUFFER, 0);
+    /* fetch in batches sized for fetch.batchBytes from the observed row width */
+    public static final FetchHint STREAM = new FetchHint(Mode.STREAM, 0);
+
+    enum Mode {
+        AUTO, BUFFER, STREAM, FIXED
+    }
+
+    private final Mode mode;
+    private final int fetchSize;
+
+    private FetchHint(Mode mode, int fetchSize) {
+        this.mode = mode;
+        this.fetchSize = fetchSize;
+    }
+
+    /*
+     * fetch exactly this many rows per round trip
+     */
+    public static FetchHint fetchSize(int fetchSize) {
+        if(fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive but was " + fetchSize);
+        }
+        return new FetchHint(Mode.FIXED, fetchSize);
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    int getFetchSize() {
+        return fetchSize;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.FIXED ? "fetchSize(" + fetchSize + ")" : mode.name();
+    }
+}
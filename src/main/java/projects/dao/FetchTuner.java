@@ -0,0 +1,206 @@
+package projects.dao;
+
+import java.io.IOException;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import projects.config.DbConfig;
+
+/*
+ * Picks the fetch size for each named query from the row counts and row widths of its earlier
+ * executions.
+ *
+ * Connector/J reads a whole result into memory unless told otherwise. That is the fastest choice
+ * for a handful of child rows, but a large scan then costs memory in proportion to the table. A
+ * query whose results are expected to stay under fetch.bufferMaxBytes is buffered (fetch size 0);
+ * a larger one is fetched in batches of about fetch.batchBytes through a server-side cursor
+ * (driver.useCursorFetch). A query seen for the first time is fetched in batches of
+ * fetch.minFetchSize until there is something to go on.
+ *
+ * Row counts are taken on every execution. Row widths are estimated from every
+ * SAMPLE_INTERVAL-th row, so the bookkeeping stays small next to reading the rows.
+ */
+public class FetchTuner {
+    private static final int SAMPLE_INTERVAL = 64;
+    private static final double WEIGHT = 0.2;
+    private static final int ROW_OVERHEAD_BYTES = 16;
+    private static final Map<String, QueryStats> STATS = new ConcurrentHashMap<>();
+
+    private FetchTuner() {
+    }
+
+    /*
+     * runs the query with the chosen fetch size, hands the result set to the handler and records
+     * what came back
+     */
+    public static void query(PreparedStatement stmt, String name, FetchHint hint, ResultSetHandler handler)
+            throws SQLException, IOException {
+        QueryStats stats = STATS.computeIfAbsent(name, key -> new QueryStats());
+        int fetchSize = chooseFetchSize(stats, hint, DbConnection.getConfig());
+        stmt.setFetchSize(fetchSize);
+
+        try(ResultSet rs = stmt.executeQuery()) {
+            Counter counter = new Counter(rs);
+            handler.handle(counter.proxy());
+            stats.record(counter.rows, counter.averageRowBytes(), fetchSize);
+        }
+    }
+
+    static int chooseFetchSize(QueryStats stats, FetchHint hint, DbConfig config) {
+        int minFetchSize = config.getInt("fetch.minFetchSize");
+        int maxFetchSize = config.getInt("fetch.maxFetchSize");
+
+        switch(hint.getMode()) {
+            case BUFFER:
+                return 0;
+            case FIXED:
+                return hint.getFetchSize();
+            default:
+                break;
+        }
+
+        double[] estimate = stats.estimate();
+
+        if(Objects.isNull(estimate)) {
+            return minFetchSize;
+        }
+
+        double rows = estimate[0];
+        double rowBytes = Math.max(1, estimate[1]);
+
+        if(hint.getMode() == FetchHint.Mode.AUTO && rows * rowBytes <= config.getLong("fetch.bufferMaxBytes")) {
+            return 0;
+        }
+
+        long batch = (long)(config.getLong("fetch.batchBytes") / rowBytes);
+        return (int)Math.max(minFetchSize, Math.min(maxFetchSize, batch));
+    }
+
+    /*
+     * a copy of the per-query counters keyed by query name
+     */
+    public static Map<String, String> getStats() {
+        Map<String, String> result = new TreeMap<>();
+        STATS.forEach((name, stats) -> result.put(name, stats.toString()));
+        return result;
+    }
+
+    /*
+     * Counts the rows the handler reads and samples their width. The handler sees a proxy so it
+     * can keep using the plain ResultSet interface.
+     */
+    private static class Counter implements InvocationHandler {
+        private final ResultSet rs;
+        private long rows;
+        private long sampledRows;
+        private long sampledBytes;
+
+        Counter(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        ResultSet proxy() {
+            return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                    this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+
+            try {
+                result = method.invoke(rs, args);
+            }
+            catch(InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            if(method.getName().equals("next") && Boolean.TRUE.equals(result) && rows++ % SAMPLE_INTERVAL == 0) {
+                sample();
+            }
+
+            return result;
+        }
+
+        private void sample() throws SQLException {
+            int columns = rs.getMetaData().getColumnCount();
+            long bytes = ROW_OVERHEAD_BYTES;
+
+            for(int i = 1; i <= columns; i++) {
+                Object value = rs.getObject(i);
+
+                if(value instanceof String) {
+                    bytes += ((String)value).length();
+                }
+                else if(value instanceof byte[]) {
+                    bytes += ((byte[])value).length;
+                }
+                else if(value instanceof BigDecimal) {
+                    bytes += ((BigDecimal)value).precision() / 2 + 2;
+                }
+                else {
+                    bytes += Objects.isNull(value) ? 1 : 8;
+                }
+            }
+
+            sampledRows++;
+            sampledBytes += bytes;
+        }
+
+        double averageRowBytes() {
+            return sampledRows == 0 ? 0 : (double)sampledBytes / sampledRows;
+        }
+    }
+
+    /*
+     * Moving averages of one query's row count and width, plus what the chosen fetch sizes saved.
+     * Bytes not buffered is, for each batched execution, the part of the result beyond one batch
+     * that buffering would have held in memory at once.
+     */
+    static class QueryStats {
+        private long executions;
+        private long buffered;
+        private double averageRows;
+        private double averageRowBytes;
+        private int lastFetchSize;
+        private long bytesNotBuffered;
+
+        synchronized double[] estimate() {
+            return executions == 0 ? null : new double[] {averageRows, averageRowBytes};
+        }
+
+        synchronized void record(long rows, double rowBytes, int fetchSize) {
+            if(executions == 0) {
+                averageRows = rows;
+                averageRowBytes = rowBytes;
+            }
+            else {
+                averageRows += WEIGHT * (rows - averageRows);
+
+                if(rowBytes > 0) {
+                    averageRowBytes += WEIGHT * (rowBytes - averageRowBytes);
+                }
+            }
+
+            executions++;
+            lastFetchSize = fetchSize;
+
+            if(fetchSize == 0) {
+                buffered++;
+            }
+            else if(rows > fetchSize) {
+                bytesNotBuffered += (long)((rows - fetchSize) * rowBytes);
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ROOT,
+                    "executions=%d, buffered=%d, fetchSize=%d, avgRows=%.1f, avgRowBytes=%.1f, bytesNotBuffered=%d",
+                    executions, buffered, lastFetchSize, averageRows, averageRowBytes, bytesNotBuffered);
+        }
+    }
+}
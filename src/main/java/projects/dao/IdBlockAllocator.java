@@ -0,0 +1,111 @@
+package projects.dao;
+
+import java.sql.*;
+
+import projects.exception.DbException;
+
+/*
+ * Hands out IDs on the client, unique across all shards and all application instances, which
+ * per-shard AUTO_INCREMENT columns cannot do. The next free ID of each sequence is kept in the
+ * id_sequence table on shard 0, and IDs are reserved from it shard.idBlockSize at a time, so only
+ * one insert in a block pays for the round trip. Each instance's IDs increase over time. IDs
+ * reserved but not used when the process stops are skipped; they are never reused.
+ *
+ * A reservation never starts below the highest ID already in the table on shard 0, so rows added
+ * through AUTO_INCREMENT before sharding was turned on cannot collide with reserved IDs.
+ *
+ * The reservation is its own short transaction on its own connection, so it commits even if the
+ * insert it was made for rolls back, and it never joins a transaction open on the calling thread.
+ */
+public class IdBlockAllocator extends InstrumentedDaoBase {
+    private static final String SEQUENCE_TABLE = "id_sequence";
+
+    public static final IdBlockAllocator PROJECTS = new IdBlockAllocator("project", "project", "project_id");
+    public static final IdBlockAllocator MATERIALS = new IdBlockAllocator("material", "material", "material_id");
+    public static final IdBlockAllocator STEPS = new IdBlockAllocator("step", "step", "step_id");
+
+    private final String sequence;
+    private final String table;
+    private final String idColumn;
+    private long next;
+    private long end;
+
+    public IdBlockAllocator(String sequence, String table, String idColumn) {
+        this.sequence = sequence;
+        this.table = table;
+        this.idColumn = idColumn;
+    }
+
+    /*
+     * True when project, material and step IDs come from here instead of AUTO_INCREMENT: with
+     * id.clientSide=true, and always when the data is sharded.
+     */
+    public static boolean isClientSide() {
+        return DbConnection.getConfig().getBoolean("id.clientSide") || DbConnection.getShardRouter().isSharded();
+    }
+
+    public synchronized int next() {
+        if(next == end) {
+            reserve(DbConnection.getConfig().getInt("shard.idBlockSize"));
+        }
+
+        return (int)next++;
+    }
+
+    private void reserve(int blockSize) {
+        //@formatter:off
+        String select = ""
+            + "SELECT next_id, (SELECT COALESCE(MAX(" + idColumn + "), 0) + 1 FROM " + table + ") "
+            + "FROM " + SEQUENCE_TABLE + " WHERE name = ? FOR UPDATE";
+        //@formatter:on
+        String update = "UPDATE " + SEQUENCE_TABLE + " SET next_id = ? WHERE name = ?";
+
+        try(Connection conn = DbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                long first;
+
+                try(PreparedStatement stmt = conn.prepareStatement(select)) {
+                    setParameter(stmt, 1, sequence, String.class);
+
+                    try(ResultSet rs = stmt.executeQuery()) {
+                        if(!rs.next()) {
+                            throw new DbException("Sequence " + sequence + " is missing from " + SEQUENCE_TABLE);
+                        }
+                        first = Math.max(rs.getLong(1), rs.getLong(2));
+                    }
+                }
+
+                long last = Math.min((long)Integer.MAX_VALUE + 1, first + blockSize);
+
+                if(first >= last) {
+                    throw new DbException("Sequence " + sequence + " has run out of IDs");
+                }
+
+                try(PreparedStatement stmt = conn.prepareStatement(update)) {
+                    stmt.setLong(1, last);
+                    setParameter(stmt, 2, sequence, String.class);
+                    stmt.executeUpdate();
+                }
+
+                conn.commit();
+                next = first;
+                end = last;
+            }
+            catch(SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        catch(SQLException e) {
+            DbConnection.recordFailure(e);
+            throw new DbException("Unable to reserve IDs from sequence " + sequence, e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return sequence + ": " + (next == end ? "no IDs reserved" : next + " to " + (end - 1) + " reserved");
+    }
+}
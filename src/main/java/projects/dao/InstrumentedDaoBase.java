@@ -0,0 +1,33 @@
+package projects.dao;
+
+import java.sql.ResultSet;
+
+import projects.jfr.RowMappingEvent;
+import provided.util.DaoBase;
+
+/*
+ * The base of the DAOs in this package. It adds the application's flight recorder instrumentation
+ * to DaoBase, which stays free of anything specific to this application: each call to extract is
+ * recorded as a RowMappingEvent, labelled with the transaction it ran in.
+ */
+abstract class InstrumentedDaoBase extends DaoBase {
+
+    @Override
+    protected <T> T extract(ResultSet rs, Class<T> classType) {
+        RowMappingEvent event = new RowMappingEvent();
+        event.begin();
+
+        try {
+            return super.extract(rs, classType);
+        }
+        finally {
+            event.end();
+
+            if(event.shouldCommit()) {
+                event.transaction = TransactionExecutor.currentName();
+                event.entity = classType;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package projects.dao;
+
+import java.lang.reflect.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/*
+ * Merges project result sets from several shards, each ordered by project_name and project_id,
+ * into one result set in the same order. Only the current row of each source is looked at, so the
+ * merge holds no more rows than the sources do and the first row is ready as soon as every shard
+ * has sent its first one.
+ *
+ * next() moves to the least row of all the sources; every other call goes to the source holding
+ * that row. Closing the merge does nothing, because each source belongs to the statement that
+ * opened it. Names compare case-insensitively like MySQL's default collation, although accented
+ * names may still sort a little differently from the server.
+ */
+class MergedResultSet implements InvocationHandler {
+    private static final Comparator<Cursor> ORDER = Comparator.comparing((Cursor cursor) -> cursor.name,
+            String.CASE_INSENSITIVE_ORDER).thenComparingInt(cursor -> cursor.id);
+
+    private final List<ResultSet> sources;
+    private final PriorityQueue<Cursor> heap;
+    private Cursor current;
+    private boolean started;
+
+    private MergedResultSet(List<ResultSet> sources) {
+        this.sources = sources;
+        this.heap = new PriorityQueue<>(sources.size(), ORDER);
+    }
+
+    static ResultSet byProjectName(List<ResultSet> sources) {
+        return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                new MergedResultSet(new ArrayList<>(sources)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch(method.getName()) {
+            case "next":
+                return next();
+            case "close":
+                return null;
+            default:
+                break;
+        }
+
+        ResultSet target = Objects.nonNull(current) ? current.rs : sources.get(0);
+
+        try {
+            return method.invoke(target, args);
+        }
+        catch(InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean next() throws SQLException {
+        if(!started) {
+            started = true;
+
+            for(ResultSet rs : sources) {
+                advance(new Cursor(rs));
+            }
+        }
+        else if(Objects.nonNull(current)) {
+            advance(current);
+        }
+
+        current = heap.poll();
+        return Objects.nonNull(current);
+    }
+
+    private void advance(Cursor cursor) throws SQLException {
+        if(cursor.rs.next()) {
+            cursor.name = cursor.rs.getString("project_name");
+            cursor.id = cursor.rs.getInt("project_id");
+            heap.add(cursor);
+        }
+    }
+
+    /*
+     * a source and the sort key of its current row
+     */
+    private static class Cursor {
+        private final ResultSet rs;
+        private String name;
+        private int id;
+
+        Cursor(ResultSet rs) {
+            this.rs = rs;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package projects.dao;
+
+import java.sql.*;
+import java.util.*;
+
+import projects.event.ChangeEvent;
+
+/*
+ * Reads and writes the project_outbox table. Events are appended on the caller's connection so that
+ * they commit or roll back together with the change they describe, which puts them in the outbox
+ * of the changed project's shard. Each shard has its own event ID sequence, so readers pass the
+ * shard they are reading.
+ */
+public class OutboxDao extends InstrumentedDaoBase {
+    private static final String OUTBOX_TABLE = "project_outbox";
+
+    private final TransactionExecutor tx = new TransactionExecutor();
+
+    /*
+     * adds an event inside the caller's transaction
+     */
+    public void append(Connection conn, String eventType, Integer projectID, String payload) throws SQLException {
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO " + OUTBOX_TABLE + " "
+            + "(event_type, project_id, payload) "
+            + "VALUES "
+            + "(?, ?, ?)";
+        //@formatter:on
+        try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setParameter(stmt, 1, eventType, String.class);
+            setParameter(stmt, 2, projectID, Integer.class);
+            setParameter(stmt, 3, payload, String.class);
+            stmt.executeUpdate();
+        }
+    }
+
+    /*
+     * adds several events for one project inside the caller's transaction, in the map's order and
+     * sent as a single batch
+     */
+    public void appendForProject(Connection conn, Integer projectID, Map<String, String> payloadsByType)
+            throws SQLException {
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO " + OUTBOX_TABLE + " "
+            + "(event_type, project_id, payload) "
+            + "VALUES "
+            + "(?, ?, ?)";
+        //@formatter:on
+        try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for(Map.Entry<String, String> entry : payloadsByType.entrySet()) {
+                setParameter(stmt, 1, entry.getKey(), String.class);
+                setParameter(stmt, 2, projectID, Integer.class);
+                setParameter(stmt, 3, entry.getValue(), String.class);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    /*
+     * adds one event per project inside the caller's transaction, sent as a single batch
+     */
+    public void appendAll(Connection conn, String eventType, Map<Integer, String> payloadsByProject) throws SQLException {
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO " + OUTBOX_TABLE + " "
+            + "(event_type, project_id, payload) "
+            + "VALUES "
+            + "(?, ?, ?)";
+        //@formatter:on
+        try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for(Map.Entry<Integer, String> entry : payloadsByProject.entrySet()) {
+                setParameter(stmt, 1, eventType, String.class);
+                setParameter(stmt, 2, entry.getKey(), Integer.class);
+                setParameter(stmt, 3, entry.getValue(), String.class);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    /*
+     * fetches up to limit events from the shard's outbox with an ID greater than afterEventId,
+     * oldest first
+     */
+    public List<ChangeEvent> fetchEventsAfter(int shard, long afterEventId, int limit) {
+        //@formatter:off
+        String sql = ""
+            + "SELECT * FROM " + OUTBOX_TABLE + " "
+            + "WHERE event_id > ? "
+            + "ORDER BY event_id LIMIT ?";
+        //@formatter:on
+        return tx.execute(TransactionOptions.readWrite("fetchOutboxEvents").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, afterEventId);
+                setParameter(stmt, 2, limit, Integer.class);
+
+                try(ResultSet rs = stmt.executeQuery()) {
+                    List<ChangeEvent> events = new LinkedList<>();
+
+                    while(rs.next()) {
+                        ChangeEvent event = extract(rs, ChangeEvent.class);
+                        event.setShard(shard);
+                        events.add(event);
+                    }
+
+                    return events;
+                }
+            }
+        });
+    }
+
+    /*
+     * the highest event ID written to the shard's outbox so far, or 0 if it is empty
+     */
+    public long fetchLatestEventId(int shard) {
+        String sql = "SELECT COALESCE(MAX(event_id), 0) FROM " + OUTBOX_TABLE;
+
+        return tx.execute(TransactionOptions.readWrite("fetchLatestEventId").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+                try(ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    return rs.getLong(1);
+                }
+            }
+        });
+    }
+
+    /*
+     * deletes events up to eventId that are older than the given age from the shard's outbox, at
+     * most limit rows at a time
+     */
+    public int deleteEventsUpTo(int shard, long eventId, int olderThanSeconds, int limit) {
+        //@formatter:off
+        String sql = ""
+            + "DELETE FROM " + OUTBOX_TABLE + " "
+            + "WHERE event_id <= ? AND created_at < TIMESTAMPADD(SECOND, ?, NOW()) "
+            + "LIMIT ?";
+        //@formatter:on
+        return tx.execute(TransactionOptions.readWrite("deleteOutboxEvents").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, eventId);
+                setParameter(stmt, 2, -olderThanSeconds, Integer.class);
+                setParameter(stmt, 3, limit, Integer.class);
+                return stmt.executeUpdate();
+            }
+        });
+    }
+}
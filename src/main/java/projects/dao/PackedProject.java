@@ -0,0 +1,156 @@
+package projects.dao;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.zip.*;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+/*
+ * Packs a project with its materials, steps and categories into one gzipped blob for the
+ * project_archive table, and unpacks it again. The fields are written in a fixed order after a
+ * format number; strings are length-prefixed UTF-8, so notes and step text of any length fit, and
+ * a flag before each value marks nulls. Notes and step text are mostly prose and usually shrink
+ * to a fraction of their size.
+ */
+class PackedProject {
+    private static final int FORMAT = 1;
+
+    private PackedProject() {
+    }
+
+    static byte[] pack(Project project) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+
+        try(DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(FORMAT);
+            writeInt(out, project.getProjectId());
+            writeString(out, project.getProjectName());
+            writeDecimal(out, project.getEstimatedHours());
+            writeDecimal(out, project.getActualHours());
+            writeInt(out, project.getDifficulty());
+            writeString(out, project.getNotes());
+            writeInt(out, project.getVersion());
+
+            out.writeInt(project.getMaterials().size());
+            for(Material material : project.getMaterials()) {
+                writeInt(out, material.getMaterialId());
+                writeString(out, material.getMaterialName());
+                writeInt(out, material.getNumRequired());
+                writeDecimal(out, material.getCost());
+            }
+
+            out.writeInt(project.getSteps().size());
+            for(Step step : project.getSteps()) {
+                writeInt(out, step.getStepId());
+                writeString(out, step.getStepText());
+                writeInt(out, step.getStepOrder());
+            }
+
+            out.writeInt(project.getCategories().size());
+            for(Category category : project.getCategories()) {
+                writeInt(out, category.getCategoryId());
+                writeString(out, category.getCategoryName());
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static Project unpack(byte[] packed) {
+        try(DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(packed)))) {
+            int format = in.readInt();
+
+            if(format != FORMAT) {
+                throw new IOException("Unknown archive format " + format);
+            }
+
+            Project project = new Project();
+            project.setProjectId(readInt(in));
+            project.setProjectName(readString(in));
+            project.setEstimatedHours(readDecimal(in));
+            project.setActualHours(readDecimal(in));
+            project.setDifficulty(readInt(in));
+            project.setNotes(readString(in));
+            project.setVersion(readInt(in));
+
+            for(int count = in.readInt(); count > 0; count--) {
+                Material material = new Material();
+                material.setMaterialId(readInt(in));
+                material.setProjectId(project.getProjectId());
+                material.setMaterialName(readString(in));
+                material.setNumRequired(readInt(in));
+                material.setCost(readDecimal(in));
+                project.getMaterials().add(material);
+            }
+
+            for(int count = in.readInt(); count > 0; count--) {
+                Step step = new Step();
+                step.setStepId(readInt(in));
+                step.setProjectId(project.getProjectId());
+                step.setStepText(readString(in));
+                step.setStepOrder(readInt(in));
+                project.getSteps().add(step);
+            }
+
+            for(int count = in.readInt(); count > 0; count--) {
+                Category category = new Category();
+                category.setCategoryId(readInt(in));
+                category.setCategoryName(readString(in));
+                project.getCategories().add(category);
+            }
+
+            return project;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(Objects.nonNull(value));
+        if(Objects.nonNull(value)) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(Objects.nonNull(value));
+        if(Objects.nonNull(value)) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        writeString(out, Objects.isNull(value) ? null : value.toPlainString());
+    }
+
+    private static Integer readInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        if(!in.readBoolean()) {
+            return null;
+        }
+
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        String value = readString(in);
+        return Objects.isNull(value) ? null : new BigDecimal(value);
+    }
+}
@@ -0,0 +1,15 @@
+package projects.dao;
+
+import java.sql.SQLTransientException;
+
+/*
+ * Thrown by ConnectionPool when every connection stays borrowed for pool.timeoutMillis. The pool
+ * is saturated, but the database has not failed, so the circuit breaker does not count it.
+ */
+@SuppressWarnings("serial")
+public class PoolTimeoutException extends SQLTransientException {
+
+    public PoolTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,109 @@
+package projects.dao;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import projects.exception.DbException;
+
+/*
+ * Moves completed projects into the project_archive table in the background, so that the project,
+ * material and step tables only hold work in progress and scans of them stay small. Each run takes
+ * at most archive.batchSize projects from each shard, oldest ID first, and archives them one
+ * transaction at a time with archive.pauseMillis in between, so it never holds many locks or
+ * competes hard with requests. Runs are archive.intervalMillis apart.
+ */
+public class ProjectArchiver extends InstrumentedDaoBase {
+    private static final String PROJECT_TABLE = "project";
+
+    private final TransactionExecutor tx = new TransactionExecutor();
+    private final ProjectDao projectDao = new ProjectDao();
+    private ScheduledExecutorService scheduler;
+
+    /*
+     * starts archiving on a daemon thread every archive.intervalMillis
+     */
+    public synchronized void start() {
+        if(Objects.nonNull(scheduler)) {
+            return;
+        }
+
+        long interval = DbConnection.getConfig().getLong("archive.intervalMillis");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "project-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archiveOnce();
+            }
+            catch(RuntimeException e) {
+                System.err.println("Project archive failed: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if(Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /*
+     * archives one batch of completed projects from every shard and returns how many were moved
+     */
+    public int archiveOnce() {
+        long pauseMillis = DbConnection.getConfig().getLong("archive.pauseMillis");
+        int archived = 0;
+
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            for(Integer projectID : findArchivable(shard)) {
+                if(projectDao.archiveProject(projectID)) {
+                    archived++;
+                }
+
+                pause(pauseMillis);
+            }
+        }
+
+        return archived;
+    }
+
+    private List<Integer> findArchivable(int shard) {
+        //@formatter:off
+        String sql = ""
+            + "SELECT project_id FROM " + PROJECT_TABLE + " "
+            + "WHERE actual_hours IS NOT NULL AND deleted_at IS NULL "
+            + "ORDER BY project_id LIMIT ?";
+        //@formatter:on
+        int batchSize = DbConnection.getConfig().getInt("archive.batchSize");
+
+        return tx.execute(TransactionOptions.readOnly("archiveFind").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+                setParameter(stmt, 1, batchSize, Integer.class);
+
+                try(ResultSet rs = stmt.executeQuery()) {
+                    List<Integer> ids = new LinkedList<>();
+
+                    while(rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+
+                    return ids;
+                }
+            }
+        });
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("Project archive interrupted", e);
+        }
+    }
+}
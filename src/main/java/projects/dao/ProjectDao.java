@@ -1,202 +1,866 @@
 package projects.dao;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
+import java.util.function.Consumer;
 
+import projects.config.DbConfig;
 import projects.entity.Category;
 import projects.entity.Material;
 import projects.entity.Project;
 import projects.entity.Step;
+import projects.event.ChangeEvent;
 import projects.exception.DbException;
-import provided.util.DaoBase;
+import projects.exception.DbUnavailableException;
+import projects.exception.ProjectArchivedException;
+import projects.util.Json;
 
 @SuppressWarnings("unused")
-public class ProjectDao extends DaoBase{
+public class ProjectDao extends InstrumentedDaoBase {
     private static final String CATEGORY_TABLE = "category";
     private static final String MATERIAL_TABLE = "material";
     private static final String PROJECT_TABLE = "project";
     private static final String PROJECT_CATEGORY_TABLE = "project_category";
+    private static final String PROJECT_ARCHIVE_TABLE = "project_archive";
     private static final String STEP_TABLE = "step";
+    private static final int MULTI_ROW_CHUNK = 1000;
+    
+    private static final String ALL_PROJECTS_SQL = "SELECT * FROM " + PROJECT_TABLE + " WHERE deleted_at IS NULL ORDER BY project_name, project_id";
+    private static final String PROJECT_BY_ID_SQL = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_at IS NULL";
+    private static final String MATERIALS_SQL = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ?";
+    private static final String STEPS_SQL = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ?";
+    private static final String ARCHIVED_GRAPH_SQL = "SELECT graph FROM " + PROJECT_ARCHIVE_TABLE + " WHERE project_id = ?";
+    private static final String ARCHIVED_VERSION_SQL = "SELECT version FROM " + PROJECT_ARCHIVE_TABLE + " WHERE project_id = ?";
+    private static final String CATEGORIES_SQL = "SELECT c.* FROM " + CATEGORY_TABLE + " c JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) WHERE project_id = ?";
+    
+    private final TransactionExecutor tx = new TransactionExecutor();
+    private final OutboxDao outbox = new OutboxDao();
     
+    /*
+     * Gives a new project its ID up front when IDs are assigned on the client, which they are
+     * when the data is sharded because the ID decides the shard, and returns the project's shard.
+     * Otherwise the ID still comes from AUTO_INCREMENT and the project goes to shard 0.
+     */
+    public int routeNewProject(Project project) {
+        if(IdBlockAllocator.isClientSide() && Objects.isNull(project.getProjectId())) {
+            project.setProjectId(IdBlockAllocator.PROJECTS.next());
+        }
+        return DbConnection.getShardRouter().shardFor(project.getProjectId());
+    }
     /*
      * inserts a project row into the project table
      */
     public Project insertProject(Project project) {
+        boolean clientIds = IdBlockAllocator.isClientSide();
       //@formatter:off
         String sql = ""
             +"INSERT INTO " + PROJECT_TABLE + " "
-            +"(project_name, estimated_hours, actual_hours, difficulty, notes) "
+            +"(" + (clientIds ? "project_id, " : "") + "project_name, estimated_hours, actual_hours, difficulty, notes) "
             +"VALUES "
-            +"(?, ?, ?, ?, ?)";
+            +"(" + (clientIds ? "?, " : "") + "?, ?, ?, ?, ?)";
         //@formatter:on
-        try(Connection conn = DbConnection.getConnection()){
-            startTransaction(conn);
-            
-            try(PreparedStatement stmt = conn.prepareCall(sql)){
-                setParameter(stmt, 1, project.getProjectName(), String.class);
-                setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-                setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-                setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-                setParameter(stmt, 5, project.getNotes(), String.class);
+        int shard = routeNewProject(project);
+        
+        return tx.execute(TransactionOptions.readWrite("insertProject").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+                int index = 1;
+                if(clientIds) {
+                    setParameter(stmt, index++, project.getProjectId(), Integer.class);
+                }
+                setParameter(stmt, index++, project.getProjectName(), String.class);
+                setParameter(stmt, index++, project.getEstimatedHours(), BigDecimal.class);
+                setParameter(stmt, index++, project.getActualHours(), BigDecimal.class);
+                setParameter(stmt, index++, project.getDifficulty(), Integer.class);
+                setParameter(stmt, index++, project.getNotes(), String.class);
                 
                 stmt.executeUpdate();
                 
-                Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
-                commitTransaction(conn);
-                
+                Integer projectId = clientIds ? project.getProjectId() : getGeneratedId(stmt);
                 project.setProjectId(projectId);
+                project.setVersion(1);
+                outbox.append(conn, ChangeEvent.PROJECT_INSERTED, projectId, projectPayload(project));
+                QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE);
                 return project;
-                
             }
-            catch(Exception e) {
-                rollbackTransaction(conn);
-                throw new DbException(e);
+        });
+    }
+    /*
+     * inserts material rows for a project as one batch and sets the generated IDs
+     */
+    public List<Material> insertMaterials(Integer projectID, List<Material> materials) {
+        if(materials.isEmpty()) {
+            return materials;
+        }
+        
+        boolean clientIds = IdBlockAllocator.isClientSide();
+        if(clientIds) {
+            assignMaterialIds(materials);
+        }
+        
+        return tx.execute(forProject(TransactionOptions.readWrite("insertMaterials"), projectID), conn -> {
+            List<Integer> ids = writeMaterials(conn, projectID, materials, clientIds);
+            
+            incrementVersions(conn, List.of(projectID));
+            outbox.append(conn, ChangeEvent.MATERIALS_INSERTED, projectID, "{\"materialIds\":" + ids + "}");
+            QueryResultCache.SHARED.invalidateOnCommit(MATERIAL_TABLE, PROJECT_TABLE);
+            return materials;
+        });
+    }
+    /*
+     * Gives the materials without an ID one from IdBlockAllocator. This is done before the
+     * transaction starts, so that reserving a block never waits for a second connection while the
+     * transaction holds one, and a retried transaction reuses the same IDs.
+     */
+    private static void assignMaterialIds(List<Material> materials) {
+        for(Material material : materials) {
+            if(Objects.isNull(material.getMaterialId())) {
+                material.setMaterialId(IdBlockAllocator.MATERIALS.next());
+            }
+        }
+    }
+    
+    private static void assignStepIds(List<Step> steps) {
+        for(Step step : steps) {
+            if(Objects.isNull(step.getStepId())) {
+                step.setStepId(IdBlockAllocator.STEPS.next());
+            }
+        }
+    }
+    /*
+     * sends the material rows as one batch, with the IDs already assigned or from AUTO_INCREMENT,
+     * and returns the IDs
+     */
+    private List<Integer> writeMaterials(Connection conn, Integer projectID, List<Material> materials, boolean clientIds)
+            throws SQLException {
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO " + MATERIAL_TABLE + " "
+            + "(" + (clientIds ? "material_id, " : "") + "project_id, material_name, num_required, cost) "
+            + "VALUES "
+            + "(" + (clientIds ? "?, " : "") + "?, ?, ?, ?)";
+        //@formatter:on
+        try(PreparedStatement stmt = clientIds ? conn.prepareStatement(sql)
+            : conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+            for(Material material : materials) {
+                int index = 1;
+                if(clientIds) {
+                    setParameter(stmt, index++, material.getMaterialId(), Integer.class);
+                }
+                setParameter(stmt, index++, projectID, Integer.class);
+                setParameter(stmt, index++, material.getMaterialName(), String.class);
+                setParameter(stmt, index++, material.getNumRequired(), Integer.class);
+                setParameter(stmt, index++, material.getCost(), BigDecimal.class);
+                stmt.addBatch();
+            }
+            
+            stmt.executeBatch();
+            
+            List<Integer> ids = clientIds ? new ArrayList<>() : getGeneratedIds(stmt, materials.size());
+            for(int i = 0; i < materials.size(); i++) {
+                if(clientIds) {
+                    ids.add(materials.get(i).getMaterialId());
+                }
+                else {
+                    materials.get(i).setMaterialId(ids.get(i));
+                }
+                materials.get(i).setProjectId(projectID);
+            }
+            return ids;
+        }
+    }
+    /*
+     * inserts step rows for a project as one batch and sets the generated IDs. Steps without an
+     * order are numbered after the existing steps.
+     */
+    public List<Step> insertSteps(Integer projectID, List<Step> steps) {
+        if(steps.isEmpty()) {
+            return steps;
+        }
+        
+        boolean clientIds = IdBlockAllocator.isClientSide();
+        if(clientIds) {
+            assignStepIds(steps);
+        }
+        
+        return tx.execute(forProject(TransactionOptions.readWrite("insertSteps"), projectID), conn -> {
+            int nextOrder = getNextSequenceNumber(conn, projectID, STEP_TABLE, "project_id");
+            List<Integer> ids = writeSteps(conn, projectID, steps, nextOrder, clientIds);
+            
+            incrementVersions(conn, List.of(projectID));
+            outbox.append(conn, ChangeEvent.STEPS_INSERTED, projectID, "{\"stepIds\":" + ids + "}");
+            QueryResultCache.SHARED.invalidateOnCommit(STEP_TABLE, PROJECT_TABLE);
+            return steps;
+        });
+    }
+    /*
+     * sends the step rows as one batch, numbering those without an order from nextOrder, and
+     * returns the IDs
+     */
+    private List<Integer> writeSteps(Connection conn, Integer projectID, List<Step> steps, int nextOrder,
+            boolean clientIds) throws SQLException {
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO " + STEP_TABLE + " "
+            + "(" + (clientIds ? "step_id, " : "") + "project_id, step_text, step_order) "
+            + "VALUES "
+            + "(" + (clientIds ? "?, " : "") + "?, ?, ?)";
+        //@formatter:on
+        try(PreparedStatement stmt = clientIds ? conn.prepareStatement(sql)
+            : conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+            for(Step step : steps) {
+                if(Objects.isNull(step.getStepOrder())) {
+                    step.setStepOrder(nextOrder++);
+                }
+                int index = 1;
+                if(clientIds) {
+                    setParameter(stmt, index++, step.getStepId(), Integer.class);
+                }
+                setParameter(stmt, index++, projectID, Integer.class);
+                setParameter(stmt, index++, step.getStepText(), String.class);
+                setParameter(stmt, index++, step.getStepOrder(), Integer.class);
+                stmt.addBatch();
+            }
+            
+            stmt.executeBatch();
+            
+            List<Integer> ids = clientIds ? new ArrayList<>() : getGeneratedIds(stmt, steps.size());
+            for(int i = 0; i < steps.size(); i++) {
+                if(clientIds) {
+                    ids.add(steps.get(i).getStepId());
+                }
+                else {
+                    steps.get(i).setStepId(ids.get(i));
+                }
+                steps.get(i).setProjectId(projectID);
             }
+            return ids;
         }
-        catch(SQLException e) {
-            throw new DbException(e);
+    }
+    /*
+     * Inserts a project with its materials, steps and categories in one transaction on its shard.
+     * All IDs are known before it starts when they are assigned on the client, and since the
+     * project is new its steps are numbered from 1 and its version is 1 without a query or update
+     * per child table. Its change events are written as one batch.
+     */
+    public Project insertProjectWithDetails(Project project) {
+        boolean clientIds = IdBlockAllocator.isClientSide();
+        int shard = routeNewProject(project);
+        List<Material> materials = project.getMaterials();
+        List<Step> steps = project.getSteps();
+        Set<String> names = new TreeSet<>();
+        project.getCategories().forEach(category -> names.add(category.getCategoryName()));
+        
+        if(clientIds) {
+            assignMaterialIds(materials);
+            assignStepIds(steps);
         }
+        
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO " + PROJECT_TABLE + " "
+            + "(" + (clientIds ? "project_id, " : "") + "project_name, estimated_hours, actual_hours, difficulty, notes) "
+            + "VALUES "
+            + "(" + (clientIds ? "?, " : "") + "?, ?, ?, ?, ?)";
+        //@formatter:on
+        return tx.execute(TransactionOptions.readWrite("insertProjectWithDetails").onShard(shard), conn -> {
+            try(PreparedStatement stmt = clientIds ? conn.prepareStatement(sql)
+                : conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+                int index = 1;
+                if(clientIds) {
+                    setParameter(stmt, index++, project.getProjectId(), Integer.class);
+                }
+                setParameter(stmt, index++, project.getProjectName(), String.class);
+                setParameter(stmt, index++, project.getEstimatedHours(), BigDecimal.class);
+                setParameter(stmt, index++, project.getActualHours(), BigDecimal.class);
+                setParameter(stmt, index++, project.getDifficulty(), Integer.class);
+                setParameter(stmt, index++, project.getNotes(), String.class);
+                stmt.executeUpdate();
+                
+                if(!clientIds) {
+                    project.setProjectId(getGeneratedId(stmt));
+                }
+            }
+            
+            Integer projectID = project.getProjectId();
+            project.setVersion(1);
+            
+            Map<String, String> events = new LinkedHashMap<>();
+            events.put(ChangeEvent.PROJECT_INSERTED, projectPayload(project));
+            
+            if(!materials.isEmpty()) {
+                List<Integer> ids = writeMaterials(conn, projectID, materials, clientIds);
+                events.put(ChangeEvent.MATERIALS_INSERTED, "{\"materialIds\":" + ids + "}");
+            }
+            
+            if(!steps.isEmpty()) {
+                List<Integer> ids = writeSteps(conn, projectID, steps, 1, clientIds);
+                events.put(ChangeEvent.STEPS_INSERTED, "{\"stepIds\":" + ids + "}");
+            }
+            
+            if(!names.isEmpty()) {
+                Map<String, Integer> categoryIds = upsertCategories(conn, new ArrayList<>(names));
+                List<int[]> links = new ArrayList<>();
+                StringBuilder payload = new StringBuilder("{\"categoryNames\":[");
+                String separator = "";
+                
+                for(String name : names) {
+                    links.add(new int[] {projectID, categoryIds.get(name)});
+                    payload.append(separator).append(Json.quote(name));
+                    separator = ",";
+                }
+                
+                insertLinks(conn, links);
+                events.put(ChangeEvent.CATEGORIES_ASSIGNED, payload.append("]}").toString());
+            }
+            
+            outbox.appendForProject(conn, projectID, events);
+            QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE, MATERIAL_TABLE, STEP_TABLE, CATEGORY_TABLE,
+                PROJECT_CATEGORY_TABLE);
+            return project;
+        });
     }
     /*
      * lists all projects without details
      */
     public List<Project> fetchAllProjects() {
-        String sql = "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name";
-        
-        try(Connection conn = DbConnection.getConnection()){
-            startTransaction(conn);
+        return fetchAllProjects(FetchHint.AUTO);
+    }
+    /*
+     * Lists all projects without details, overriding how the rows are fetched. When the data is
+     * sharded every shard is read at once and the rows are merged by name as they arrive.
+     *
+     * With queryCache.enabled=true the list comes from QueryResultCache until a write to the
+     * project table commits. The list is then shared and cannot be changed.
+     */
+    public List<Project> fetchAllProjects(FetchHint hint) {
+        return QueryResultCache.SHARED.get(ALL_PROJECTS_SQL, List.of(), Set.of(PROJECT_TABLE),
+            () -> Collections.unmodifiableList(loadAllProjects(hint)), ProjectDao::estimateBytes);
+    }
+    
+    private List<Project> loadAllProjects(FetchHint hint) {
+        return tx.execute(TransactionOptions.readOnly("fetchAllProjects"), conn -> {
+            List<Project> projects = new LinkedList<>();
             
-            try(PreparedStatement stmt = conn.prepareStatement(sql)){
-                try(ResultSet rs = stmt.executeQuery()){
-                    List<Project> projects = new LinkedList<>();
-                    
-                    while(rs.next()) {
-                        Project project = new Project();
-                        project.setActualHours(rs.getBigDecimal("actual_hours"));
-                        project.setDifficulty(rs.getObject("difficulty", Integer.class));
-                        project.setEstimatedHours(rs.getBigDecimal("estimated_hours"));
-                        project.setNotes(rs.getString("notes"));
-                        project.setProjectId(rs.getObject("project_id", Integer.class));
-                        project.setProjectName(rs.getString("project_name"));
-                        
-                        projects.add(project);
-                    }
+            queryAllShards(conn, hint, rs -> {
+                while(rs.next()) {
+                    Project project = new Project();
+                    project.setActualHours(rs.getBigDecimal("actual_hours"));
+                    project.setDifficulty(rs.getObject("difficulty", Integer.class));
+                    project.setEstimatedHours(rs.getBigDecimal("estimated_hours"));
+                    project.setNotes(rs.getString("notes"));
+                    project.setProjectId(rs.getObject("project_id", Integer.class));
+                    project.setProjectName(rs.getString("project_name"));
+                    project.setVersion(rs.getObject("version", Integer.class));
                     
-                    return projects;
+                    projects.add(project);
+                }
+            });
+            
+            return projects;
+        });
+    }
+    
+    /*
+     * a rough size of the listed projects for QueryResultCache: the characters of the strings and
+     * a fixed amount per project for the object, its numbers and its empty detail lists
+     */
+    private static long estimateBytes(List<Project> projects) {
+        long bytes = 64;
+        
+        for(Project project : projects) {
+            bytes += 256;
+            bytes += 2L * (Objects.isNull(project.getProjectName()) ? 0 : project.getProjectName().length());
+            bytes += 2L * (Objects.isNull(project.getNotes()) ? 0 : project.getNotes().length());
+        }
+        return bytes;
+    }
+    /*
+     * hands the project rows, without details, to the handler as they are read so they can be
+     * written out without building Project objects
+     */
+    public void streamAllProjects(ResultSetHandler handler) throws IOException {
+        streamAllProjects(FetchHint.AUTO, handler);
+    }
+    
+    public void streamAllProjects(FetchHint hint, ResultSetHandler handler) throws IOException {
+        stream(TransactionOptions.readOnly("streamAllProjects"), conn -> {
+            queryAllShards(conn, hint, handler);
+            return null;
+        });
+    }
+    /*
+     * hands a project row and then its material, step and category rows to the handler. Returns
+     * false, without calling the handler, if the project does not exist.
+     */
+    public boolean streamProjectByID(Integer projectID, ProjectRowsHandler handler) throws IOException {
+        return stream(forProject(TransactionOptions.readOnly("streamProjectByID"), projectID), conn -> {
+            boolean[] found = new boolean[1];
+            
+            queryForProject(conn, "project.byId", PROJECT_BY_ID_SQL, projectID, FetchHint.BUFFER, rs -> {
+                if(rs.next()) {
+                    found[0] = true;
+                    handler.project(rs);
                 }
+            });
+            
+            if(found[0]) {
+                queryForProject(conn, "material.byProject", MATERIALS_SQL, projectID, FetchHint.AUTO, handler::materials);
+                queryForProject(conn, "step.byProject", STEPS_SQL, projectID, FetchHint.AUTO, handler::steps);
+                queryForProject(conn, "category.byProject", CATEGORIES_SQL, projectID, FetchHint.AUTO, handler::categories);
             }
-            catch(Exception e) {
-                rollbackTransaction(conn);
-                throw new DbException(e);
+            return found[0];
+        });
+    }
+    /*
+     * Runs a streaming read. It is never retried, because the handler may already have written
+     * part of the rows somewhere; an IOException from the handler is rethrown as it was.
+     */
+    private <T> T stream(TransactionOptions options, TransactionExecutor.TransactionCallback<T> work) throws IOException {
+        try {
+            return tx.execute(options.withoutRetry(), work);
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+        catch(DbException e) {
+            if(e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException)e.getCause()).getCause();
             }
+            throw e;
         }
-        catch(SQLException e) {
-            throw new DbException(e);
+    }
+    
+    /*
+     * The queries below go through FetchTuner, which buffers results it expects to be small and
+     * fetches large ones in batches. The names are the keys of its statistics.
+     */
+    private void queryAllProjects(Connection conn, FetchHint hint, ResultSetHandler handler) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement(ALL_PROJECTS_SQL)){
+            FetchTuner.query(stmt, "project.all", hint, handler);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /*
+     * Reads the projects of every shard, conn being shard 0's, and hands the handler one result
+     * set that merges them by name. Each further shard is opened inside the handler of the one
+     * before, so all of them are open together and are closed in reverse order however the
+     * handler ends. The other shards are read outside of a transaction, each in one statement. A
+     * shard that cannot be reached fails the whole read with DbUnavailableException.
+     */
+    private void queryAllShards(Connection conn, FetchHint hint, ResultSetHandler handler) throws SQLException {
+        if(!DbConnection.getShardRouter().isSharded()) {
+            queryAllProjects(conn, hint, handler);
+            return;
+        }
+        
+        List<ResultSet> sources = new ArrayList<>();
+        
+        queryAllProjects(conn, hint, rs -> {
+            sources.add(rs);
+            queryShards(1, sources, hint, handler);
+        });
+    }
+    
+    private void queryShards(int shard, List<ResultSet> sources, FetchHint hint, ResultSetHandler handler)
+            throws SQLException, IOException {
+        if(shard == DbConnection.getShardRouter().getShardCount()) {
+            handler.handle(MergedResultSet.byProjectName(sources));
+            return;
+        }
+        
+        try(Connection conn = DbConnection.getConnection(shard)){
+            conn.setReadOnly(true);
+            
+            queryAllProjects(conn, hint, rs -> {
+                sources.add(rs);
+                queryShards(shard + 1, sources, hint, handler);
+            });
+        }
+        catch(SQLException | DbException e) {
+            if(!CircuitBreaker.isUnavailable(e)) {
+                throw e;
+            }
+            
+            /* counted against this shard only; getConnection has already counted its own failures */
+            if(e instanceof SQLException) {
+                DbConnection.recordFailure(shard, e);
+            }
+            throw new DbUnavailableException("Shard " + shard + " is unavailable: " + e.getMessage(), e);
+        }
+    }
+    
+    private void queryForProject(Connection conn, String name, String sql, Integer projectID, FetchHint hint,
+            ResultSetHandler handler) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement(sql)){
+            setParameter(stmt, 1, projectID, Integer.class);
+            FetchTuner.query(stmt, name, hint, handler);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    /*
+     * the version of a project that has not been deleted, without loading its details, looking in
+     * the archive if the project is not in the project table
+     */
+    public Optional<Integer> fetchProjectVersion(Integer projectID) {
+        String sql = "SELECT version FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_at IS NULL";
+        
+        return tx.execute(forProject(TransactionOptions.readOnly("fetchProjectVersion"), projectID), conn -> {
+            Optional<Integer> version = fetchVersion(conn, sql, projectID);
+            return version.isPresent() ? version : fetchVersion(conn, ARCHIVED_VERSION_SQL, projectID);
+        });
+    }
+    
+    /*
+     * called when a write matched no project row, so that an archived project is reported as
+     * such rather than as missing
+     */
+    private void rejectIfArchived(Connection conn, Integer projectID) throws SQLException {
+        if(fetchVersion(conn, ARCHIVED_VERSION_SQL, projectID).isPresent()) {
+            throw new ProjectArchivedException("Project with ID=" + projectID + " is archived and can no longer be changed");
+        }
+    }
+    
+    private Optional<Integer> fetchVersion(Connection conn, String sql, Integer projectID) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement(sql)){
+            setParameter(stmt, 1, projectID, Integer.class);
+            
+            try(ResultSet rs = stmt.executeQuery()){
+                return rs.next() ? Optional.of(rs.getInt(1)) : Optional.empty();
+            }
         }
-
     }
     /*
      * Retrieves a single project row and all details
      */
     public Optional<Project> fetchProjectByID(Integer projectID)  {
-        String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ?";
-        
-        try(Connection conn = DbConnection.getConnection()) {
-            startTransaction (conn);
-            try {
-                Project project = null;
+        return fetchProjectByID(projectID, FetchHint.AUTO);
+    }
+    /*
+     * Retrieves a single project row and all details, overriding how the detail rows are fetched.
+     * A project that is not in the project table is looked up in the archive.
+     */
+    public Optional<Project> fetchProjectByID(Integer projectID, FetchHint hint)  {
+        return tx.execute(forProject(TransactionOptions.readOnly("fetchProjectByID"), projectID), conn -> {
+            Project project = null;
+            
+            try(PreparedStatement stmt = conn.prepareStatement(PROJECT_BY_ID_SQL)){
+                setParameter(stmt, 1, projectID, Integer.class);
                 
-                try(PreparedStatement stmt = conn.prepareStatement(sql)){
-                    setParameter(stmt, 1, projectID, Integer.class);
-                    
-                    try(ResultSet rs = stmt.executeQuery()){
-                        if(rs.next()) {
-                            project = extract(rs,Project.class);
-                        }
+                try(ResultSet rs = stmt.executeQuery()){
+                    if(rs.next()) {
+                        project = extract(rs,Project.class);
                     }
                 }
+            }
+            
+            if(Objects.isNull(project)) {
+                return fetchArchivedProject(conn, projectID);
+            }
+            
+            project.getMaterials().addAll(fetchMaterialsForProject(conn, projectID, hint));
+            project.getSteps().addAll(fetchStepsForProject(conn, projectID, hint));
+            project.getCategories().addAll(fetchCategoriesForProject(conn, projectID, hint));
+            return Optional.of(project);
+        });
+        
+    }
+    
+    private Optional<Project> fetchArchivedProject(Connection conn, Integer projectID) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement(ARCHIVED_GRAPH_SQL)){
+            setParameter(stmt, 1, projectID, Integer.class);
+            
+            try(ResultSet rs = stmt.executeQuery()){
+                return rs.next() ? Optional.of(PackedProject.unpack(rs.getBytes("graph"))) : Optional.empty();
+            }
+        }
+    }
+    
+    /*
+     * Moves a completed project (actual_hours set, not deleted) with its details into the
+     * project_archive table as one packed blob, in one transaction on its shard. Its material,
+     * step and project_category rows go with it through ON DELETE CASCADE; the categories stay.
+     * Returns false if the project is not there or not completed.
+     *
+     * Archived projects are read-only: fetchProjectByID and fetchProjectVersion still find them,
+     * but they are not listed, and modify, delete and undelete throw ProjectArchivedException.
+     */
+    public boolean archiveProject(Integer projectID) {
+        //@formatter:off
+        String select = ""
+            + "SELECT * FROM " + PROJECT_TABLE + " "
+            + "WHERE project_id = ? AND actual_hours IS NOT NULL AND deleted_at IS NULL FOR UPDATE";
+        String insert = ""
+            + "INSERT INTO " + PROJECT_ARCHIVE_TABLE + " (project_id, project_name, version, graph) "
+            + "VALUES (?, ?, ?, ?)";
+        //@formatter:on
+        String delete = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+        
+        return tx.execute(forProject(TransactionOptions.readWrite("archiveProject"), projectID), conn -> {
+            Project project = null;
+            
+            try(PreparedStatement stmt = conn.prepareStatement(select)){
+                setParameter(stmt, 1, projectID, Integer.class);
                 
-                if(Objects.nonNull(project)) {
-                    project.getMaterials().addAll(fetchMaterialsForProject(conn, projectID));
-                    project.getSteps().addAll(fetchStepsForProject(conn, projectID));
-                    project.getCategories().addAll(fetchCategoriesForProject(conn, projectID));
+                try(ResultSet rs = stmt.executeQuery()){
+                    if(rs.next()) {
+                        project = extract(rs, Project.class);
+                    }
                 }
-                commitTransaction(conn);
-                return Optional.ofNullable(project);
             }
-            catch(Exception e) {
-                rollbackTransaction(conn);
-                throw new DbException(e);
+            
+            if(Objects.isNull(project)) {
+                return false;
             }
+            
+            project.getMaterials().addAll(fetchMaterialsForProject(conn, projectID, FetchHint.BUFFER));
+            project.getSteps().addAll(fetchStepsForProject(conn, projectID, FetchHint.BUFFER));
+            project.getCategories().addAll(fetchCategoriesForProject(conn, projectID, FetchHint.BUFFER));
+            byte[] graph = PackedProject.pack(project);
+            
+            try(PreparedStatement stmt = conn.prepareStatement(insert)){
+                setParameter(stmt, 1, projectID, Integer.class);
+                setParameter(stmt, 2, project.getProjectName(), String.class);
+                setParameter(stmt, 3, project.getVersion(), Integer.class);
+                stmt.setBytes(4, graph);
+                stmt.executeUpdate();
+            }
+            
+            try(PreparedStatement stmt = conn.prepareStatement(delete)){
+                setParameter(stmt, 1, projectID, Integer.class);
+                stmt.executeUpdate();
+            }
+            
+            outbox.append(conn, ChangeEvent.PROJECT_ARCHIVED, projectID, "{\"bytes\":" + graph.length + "}");
+            QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE, MATERIAL_TABLE, STEP_TABLE, PROJECT_CATEGORY_TABLE,
+                PROJECT_ARCHIVE_TABLE);
+            return true;
+        });
+    }
+    
+    /*
+     * Assigns categories by name to many projects at once. Missing categories are created with one
+     * multi-row INSERT ... ON DUPLICATE KEY UPDATE, and the links are added with multi-row
+     * INSERT IGNORE so existing pairs are skipped instead of failing the transaction. Rows are sent
+     * in chunks of MULTI_ROW_CHUNK. Returns the number of new links.
+     *
+     * Projects on different shards are tagged in one transaction per shard, so with sharding the
+     * call as a whole is not atomic.
+     */
+    public int assignCategories(Map<Integer, Set<String>> categoriesByProject) {
+        ShardRouter router = DbConnection.getShardRouter();
+        Map<Integer, Map<Integer, Set<String>>> byShard = new TreeMap<>();
+        
+        categoriesByProject.forEach((projectID, names) -> byShard
+            .computeIfAbsent(router.shardFor(projectID), shard -> new LinkedHashMap<>()).put(projectID, names));
+        
+        int inserted = 0;
+        
+        for(Map.Entry<Integer, Map<Integer, Set<String>>> entry : byShard.entrySet()) {
+            inserted += assignCategories(entry.getKey(), entry.getValue());
         }
-        catch(SQLException e) {
-            throw new DbException (e);
+        return inserted;
+    }
+    
+    private int assignCategories(int shard, Map<Integer, Set<String>> categoriesByProject) {
+        Set<String> names = new TreeSet<>();
+        categoriesByProject.values().forEach(names::addAll);
+        
+        if(names.isEmpty()) {
+            return 0;
         }
         
+        return tx.execute(TransactionOptions.readWrite("assignCategories").onShard(shard), conn -> {
+            Map<String, Integer> categoryIds = upsertCategories(conn, new ArrayList<>(names));
+            
+            List<int[]> links = new ArrayList<>();
+            Map<Integer, String> payloads = new LinkedHashMap<>();
+            
+            for(Map.Entry<Integer, Set<String>> entry : categoriesByProject.entrySet()) {
+                if(entry.getValue().isEmpty()) {
+                    continue;
+                }
+                
+                StringBuilder payload = new StringBuilder("{\"categoryNames\":[");
+                String separator = "";
+                
+                for(String name : entry.getValue()) {
+                    links.add(new int[] {entry.getKey(), categoryIds.get(name)});
+                    payload.append(separator).append(Json.quote(name));
+                    separator = ",";
+                }
+                
+                payloads.put(entry.getKey(), payload.append("]}").toString());
+            }
+            
+            int inserted = insertLinks(conn, links);
+            
+            incrementVersions(conn, new ArrayList<>(payloads.keySet()));
+            outbox.appendAll(conn, ChangeEvent.CATEGORIES_ASSIGNED, payloads);
+            QueryResultCache.SHARED.invalidateOnCommit(CATEGORY_TABLE, PROJECT_CATEGORY_TABLE, PROJECT_TABLE);
+            return inserted;
+        });
     }
     
     /*
-     * fetches a list of categories for a project
+     * adds the project_id, category_id pairs that are not there yet and returns how many were new
      */
-    private List<Category> fetchCategoriesForProject(Connection conn, Integer projectID) throws SQLException {
-        String sql = "" + "SELECT c.* FROM " + CATEGORY_TABLE + " c " + "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) " + " WHERE project_id = ?";
+    private int insertLinks(Connection conn, List<int[]> links) throws SQLException {
+        int inserted = 0;
         
-        try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-            setParameter(stmt, 1, projectID, Integer.class);
+        for(int from = 0; from < links.size(); from += MULTI_ROW_CHUNK) {
+            List<int[]> chunk = links.subList(from, Math.min(links.size(), from + MULTI_ROW_CHUNK));
+            String sql = "INSERT IGNORE INTO " + PROJECT_CATEGORY_TABLE + " (project_id, category_id) VALUES "
+                + placeholders(chunk.size(), "(?, ?)");
             
-            try(ResultSet rs = stmt.executeQuery()) {
-                List<Category> categories = new LinkedList<>();
-                
-                while(rs.next()) {
-                    categories.add(extract(rs, Category.class));
+            try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                int index = 1;
+                for(int[] link : chunk) {
+                    setParameter(stmt, index++, link[0], Integer.class);
+                    setParameter(stmt, index++, link[1], Integer.class);
                 }
-                
-                return categories;
+                inserted += stmt.executeUpdate();
             }
         }
+        
+        return inserted;
     }
+    
     /*
-     * fetches a list of steps for a project
+     * creates any missing categories and returns the ID of every requested name, keyed by the name as
+     * requested
      */
-    private List<Step> fetchStepsForProject(Connection conn, Integer projectID) throws SQLException {
-        String sql = "" + "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ?";
+    private Map<String, Integer> upsertCategories(Connection conn, List<String> names) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
         
-        try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-            setParameter(stmt, 1, projectID, Integer.class);
+        for(int from = 0; from < names.size(); from += MULTI_ROW_CHUNK) {
+            List<String> chunk = names.subList(from, Math.min(names.size(), from + MULTI_ROW_CHUNK));
             
-            try(ResultSet rs = stmt.executeQuery()) {
-                List<Step> steps = new LinkedList<>();
-                
-                while(rs.next()) {
-                    steps.add(extract(rs, Step.class));
+            //@formatter:off
+            String upsert = ""
+                + "INSERT INTO " + CATEGORY_TABLE + " (category_name) VALUES "
+                + placeholders(chunk.size(), "(?)") + " "
+                + "ON DUPLICATE KEY UPDATE category_name = category_name";
+            //@formatter:on
+            try(PreparedStatement stmt = conn.prepareStatement(upsert)){
+                for(int i = 0; i < chunk.size(); i++) {
+                    setParameter(stmt, i + 1, chunk.get(i), String.class);
+                }
+                stmt.executeUpdate();
+            }
+            
+            /*
+             * The stored name can differ from the requested one in case, accents or trailing spaces
+             * under the column's collation, so each requested name is matched by the database and
+             * tagged with its position in the chunk rather than keyed by the name that comes back.
+             */
+            StringJoiner select = new StringJoiner(" UNION ALL ");
+            
+            for(int i = 0; i < chunk.size(); i++) {
+                select.add("SELECT " + i + " AS requested, category_id FROM " + CATEGORY_TABLE
+                    + " WHERE category_name = ?");
+            }
+            
+            try(PreparedStatement stmt = conn.prepareStatement(select.toString())){
+                for(int i = 0; i < chunk.size(); i++) {
+                    setParameter(stmt, i + 1, chunk.get(i), String.class);
                 }
                 
-                return steps;
+                try(ResultSet rs = stmt.executeQuery()){
+                    while(rs.next()) {
+                        ids.put(chunk.get(rs.getInt("requested")), rs.getInt("category_id"));
+                    }
+                }
+            }
+            
+            for(String name : chunk) {
+                if(!ids.containsKey(name)) {
+                    throw new SQLException("No category ID found for \"" + name + "\" after the upsert");
+                }
             }
         }
+        
+        return ids;
     }
+    
     /*
-     * fetches a list of materials
+     * bumps the version of each project after a change to its details. The IDs are updated in
+     * ascending order so that concurrent transactions lock the rows in the same order.
      */
-    private List<Material> fetchMaterialsForProject(Connection conn, Integer projectID) throws SQLException {
-        String sql = "" + "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ?";
+    private void incrementVersions(Connection conn, List<Integer> projectIDs) throws SQLException {
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(projectIDs));
         
-        try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-            setParameter(stmt, 1, projectID, Integer.class);
+        for(int from = 0; from < sorted.size(); from += MULTI_ROW_CHUNK) {
+            List<Integer> chunk = sorted.subList(from, Math.min(sorted.size(), from + MULTI_ROW_CHUNK));
+            String sql = "UPDATE " + PROJECT_TABLE + " SET version = version + 1 WHERE project_id IN ("
+                + placeholders(chunk.size(), "?") + ")";
             
-            try(ResultSet rs = stmt.executeQuery()) {
-                List<Material> materials = new LinkedList<>();
-                
-                while(rs.next()) {
-                    materials.add(extract(rs, Material.class));
+            try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                for(int i = 0; i < chunk.size(); i++) {
+                    setParameter(stmt, i + 1, chunk.get(i), Integer.class);
                 }
-                
-                return materials;
+                stmt.executeUpdate();
             }
         }
     }
     
+    /*
+     * repeats a placeholder group, e.g. placeholders(3, "(?)") is "(?), (?), (?)"
+     */
+    private static String placeholders(int count, String group) {
+        return String.join(", ", Collections.nCopies(count, group));
+    }
+    
+    /*
+     * fetches a list of categories for a project
+     */
+    private List<Category> fetchCategoriesForProject(Connection conn, Integer projectID, FetchHint hint) throws SQLException {
+        List<Category> categories = new LinkedList<>();
+        
+        queryForProject(conn, "category.byProject", CATEGORIES_SQL, projectID, hint, rs -> {
+            while(rs.next()) {
+                categories.add(extract(rs, Category.class));
+            }
+        });
+        
+        return categories;
+    }
+    /*
+     * fetches a list of steps for a project
+     */
+    private List<Step> fetchStepsForProject(Connection conn, Integer projectID, FetchHint hint) throws SQLException {
+        List<Step> steps = new LinkedList<>();
+        
+        queryForProject(conn, "step.byProject", STEPS_SQL, projectID, hint, rs -> {
+            while(rs.next()) {
+                steps.add(extract(rs, Step.class));
+            }
+        });
+        
+        return steps;
+    }
+    /*
+     * fetches a list of materials
+     */
+    private List<Material> fetchMaterialsForProject(Connection conn, Integer projectID, FetchHint hint) throws SQLException {
+        List<Material> materials = new LinkedList<>();
+        
+        queryForProject(conn, "material.byProject", MATERIALS_SQL, projectID, hint, rs -> {
+            while(rs.next()) {
+                materials.add(extract(rs, Material.class));
+            }
+        });
+        
+        return materials;
+    }
+    
     /*
      * Updates the project details
      */
@@ -209,13 +873,12 @@ public class ProjectDao extends DaoBase{
                 + "estimated_hours = ?, "
                 + "actual_hours = ?, "
                 + "difficulty = ?, "
-                + "notes = ? "
-                + "WHERE project_id = ?";
+                + "notes = ?, "
+                + "version = version + 1 "
+                + "WHERE project_id = ? AND deleted_at IS NULL";
         //@formatter: on
         
-        try(Connection conn = DbConnection.getConnection()){
-            startTransaction(conn);
-            
+        return tx.execute(forProject(TransactionOptions.readWrite("modifyProjectDetails"), project.getProjectId()), conn -> {
             try(PreparedStatement stmt = conn.prepareStatement(sql)){
                 setParameter(stmt, 1, project.getProjectName(), String.class);
                 setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
@@ -225,43 +888,301 @@ public class ProjectDao extends DaoBase{
                 setParameter(stmt, 6, project.getProjectId(), Integer.class);
                 
                 boolean modified = stmt.executeUpdate()==1;
-                commitTransaction(conn);
-                
+                if(modified) {
+                    outbox.append(conn, ChangeEvent.PROJECT_MODIFIED, project.getProjectId(), projectPayload(project));
+                    QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE);
+                }
+                else {
+                    rejectIfArchived(conn, project.getProjectId());
+                }
                 return modified;
+            }
+        });
+        
+    }
+    /*
+     * Deletes a project. In soft-delete mode (project.softDelete=true) this only stamps deleted_at
+     * on the project row; ProjectPurger removes the rows later in small batches.
+     */
+    public boolean deleteProject(Integer projectID) {
+        boolean soft = DbConnection.getConfig().getBoolean("project.softDelete");
+        String sql = soft
+            ? "UPDATE " + PROJECT_TABLE + " SET deleted_at = NOW() WHERE project_id = ? AND deleted_at IS NULL"
+            : "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+        
+        return tx.execute(forProject(TransactionOptions.readWrite("deleteProject"), projectID), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                setParameter(stmt, 1, projectID, Integer.class);
                 
+                boolean deleted = stmt.executeUpdate()==1;
+                if(deleted) {
+                    outbox.append(conn, ChangeEvent.PROJECT_DELETED, projectID, "{\"soft\":" + soft + "}");
+                    
+                    /* a hard delete also removes the child rows through ON DELETE CASCADE */
+                    if(soft) {
+                        QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE);
+                    }
+                    else {
+                        QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE, MATERIAL_TABLE, STEP_TABLE,
+                            PROJECT_CATEGORY_TABLE);
+                    }
+                }
+                else {
+                    rejectIfArchived(conn, projectID);
+                }
+                return deleted;
             }
-            catch(Exception e) {
-                rollbackTransaction(conn);
-                throw new DbException(e);
+        });
+    }
+    /*
+     * restores a soft-deleted project. This is only allowed within purge.graceSeconds of the delete,
+     * before ProjectPurger may have started removing its rows.
+     */
+    public boolean undeleteProject(Integer projectID) {
+        //@formatter:off
+        String sql = ""
+            + "UPDATE " + PROJECT_TABLE + " SET deleted_at = NULL, version = version + 1 "
+            + "WHERE project_id = ? AND deleted_at > TIMESTAMPADD(SECOND, ?, NOW())";
+        //@formatter:on
+        int graceSeconds = DbConnection.getConfig().getInt("purge.graceSeconds");
+        
+        return tx.execute(forProject(TransactionOptions.readWrite("undeleteProject"), projectID), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                setParameter(stmt, 1, projectID, Integer.class);
+                setParameter(stmt, 2, -graceSeconds, Integer.class);
+                
+                boolean undeleted = stmt.executeUpdate()==1;
+                if(undeleted) {
+                    outbox.append(conn, ChangeEvent.PROJECT_UNDELETED, projectID, "{}");
+                    QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE);
+                }
+                else {
+                    rejectIfArchived(conn, projectID);
+                }
+                return undeleted;
             }
+        });
+    }
+    /*
+     * The number of projects the filter matches on all shards, without changing or locking
+     * anything: the dry run of a bulk change.
+     */
+    public long countProjects(ProjectFilter filter) {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM " + PROJECT_TABLE + " p WHERE " + filter.toSql(params);
+        long count = 0;
+        
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            count += tx.execute(TransactionOptions.readOnly("countProjects").onShard(shard), conn -> {
+                try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                    setParameters(stmt, 1, params);
+                    
+                    try(ResultSet rs = stmt.executeQuery()){
+                        rs.next();
+                        return rs.getLong(1);
+                    }
+                }
+            });
         }
-        catch(SQLException e) {
-            throw new DbException(e);
-        }
+        return count;
+    }
+    /*
+     * Deletes every project the filter matches, soft or hard as project.softDelete says, in
+     * chunks (see inChunks). Returns the number deleted.
+     */
+    public long bulkDeleteProjects(ProjectFilter filter, Consumer<BulkProgress> progress) {
+        boolean soft = DbConnection.getConfig().getBoolean("project.softDelete");
         
+        return inChunks("bulkDeleteProjects", filter, progress, (conn, ids) -> {
+            String sql = soft
+                ? "UPDATE " + PROJECT_TABLE + " SET deleted_at = NOW() WHERE project_id IN (" + placeholders(ids.size(), "?") + ")"
+                : "DELETE FROM " + PROJECT_TABLE + " WHERE project_id IN (" + placeholders(ids.size(), "?") + ")";
+            Map<Integer, String> payloads = new LinkedHashMap<>();
+            
+            try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                setParameters(stmt, 1, ids);
+                stmt.executeUpdate();
+            }
+            
+            ids.forEach(id -> payloads.put(id, "{\"soft\":" + soft + "}"));
+            outbox.appendAll(conn, ChangeEvent.PROJECT_DELETED, payloads);
+            
+            if(soft) {
+                QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE);
+            }
+            else {
+                QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE, MATERIAL_TABLE, STEP_TABLE, PROJECT_CATEGORY_TABLE);
+            }
+            return ids.size();
+        });
     }
-    public boolean deleteProject(Integer projectID) {
-        String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
-        try(Connection conn = DbConnection.getConnection()){
-            startTransaction(conn);
+    /*
+     * Applies the update to every project the filter matches, in chunks (see inChunks), bumping
+     * each version. Returns the number modified.
+     */
+    public long bulkModifyProjects(ProjectFilter filter, ProjectUpdate update, Consumer<BulkProgress> progress) {
+        update.requireChange();
+        
+        return inChunks("bulkModifyProjects", filter, progress, (conn, ids) -> {
+            List<Object> params = new ArrayList<>();
+            String sql = "UPDATE " + PROJECT_TABLE + " SET " + update.toSql(params) + " WHERE project_id IN ("
+                + placeholders(ids.size(), "?") + ")";
+            String select = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id IN (" + placeholders(ids.size(), "?") + ")";
+            Map<Integer, String> payloads = new LinkedHashMap<>();
             
             try(PreparedStatement stmt = conn.prepareStatement(sql)){
-                setParameter(stmt, 1, projectID, Integer.class);
+                setParameters(stmt, setParameters(stmt, 1, params), ids);
+                stmt.executeUpdate();
+            }
+            
+            /* the events carry the new values, as they do for a single modify */
+            try(PreparedStatement stmt = conn.prepareStatement(select)){
+                setParameters(stmt, 1, ids);
                 
-                boolean deleted = stmt.executeUpdate()==1;
-                commitTransaction(conn);
+                try(ResultSet rs = stmt.executeQuery()){
+                    while(rs.next()) {
+                        Project project = extract(rs, Project.class);
+                        payloads.put(project.getProjectId(), projectPayload(project));
+                    }
+                }
+            }
+            
+            outbox.appendAll(conn, ChangeEvent.PROJECT_MODIFIED, payloads);
+            QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE);
+            return ids.size();
+        });
+    }
+    
+    /*
+     * changes the locked projects of one chunk and returns how many it changed
+     */
+    @FunctionalInterface
+    private interface ChunkWork {
+        int apply(Connection conn, List<Integer> projectIDs) throws SQLException;
+    }
+    
+    /*
+     * Runs a bulk change one range of bulk.chunkSize project IDs at a time, each range in its own
+     * transaction, with bulk.pauseMillis between them so replicas can keep up. Each transaction
+     * locks only the matching rows of its range, in ID order, and hands their IDs to the work.
+     * Shards are done one after another. The filter must have a condition.
+     *
+     * A failure stops the change with an exception; the chunks already done stay done, and since
+     * changed rows no longer match or have moved on, running the change again carries on.
+     */
+    private long inChunks(String name, ProjectFilter filter, Consumer<BulkProgress> progress, ChunkWork work) {
+        filter.requireCondition();
+        
+        DbConfig config = DbConnection.getConfig();
+        int chunkSize = config.getInt("bulk.chunkSize");
+        long pauseMillis = config.getLong("bulk.pauseMillis");
+        int shardCount = DbConnection.getShardRouter().getShardCount();
+        List<Object> params = new ArrayList<>();
+        
+        //@formatter:off
+        String sql = ""
+            + "SELECT p.project_id FROM " + PROJECT_TABLE + " p "
+            + "WHERE p.project_id BETWEEN ? AND ? AND " + filter.toSql(params) + " "
+            + "ORDER BY p.project_id FOR UPDATE";
+        //@formatter:on
+        long total = 0;
+        
+        for(int shard = 0; shard < shardCount; shard++) {
+            Optional<int[]> range = idRange(shard);
+            
+            if(range.isEmpty()) {
+                continue;
+            }
+            
+            int max = range.get()[1];
+            
+            for(long from = range.get()[0]; from <= max; from += chunkSize) {
+                int first = (int)from;
+                int last = (int)Math.min(max, from + chunkSize - 1);
                 
-                return deleted;
+                int rows = tx.execute(TransactionOptions.readWrite(name).onShard(shard), conn -> {
+                    List<Integer> ids = new ArrayList<>();
+                    
+                    try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                        setParameter(stmt, 1, first, Integer.class);
+                        setParameter(stmt, 2, last, Integer.class);
+                        setParameters(stmt, 3, params);
+                        
+                        try(ResultSet rs = stmt.executeQuery()){
+                            while(rs.next()) {
+                                ids.add(rs.getInt(1));
+                            }
+                        }
+                    }
+                    return ids.isEmpty() ? 0 : work.apply(conn, ids);
+                });
                 
+                total += rows;
+                progress.accept(new BulkProgress(shard, shardCount, last, max, rows, total));
+                
+                if(last < max) {
+                    pause(pauseMillis);
+                }
             }
-            catch(Exception e) {
-                rollbackTransaction(conn);
-                throw new DbException(e);
+        }
+        return total;
+    }
+    
+    /*
+     * the lowest and highest ID of the projects on the shard that are not deleted
+     */
+    private Optional<int[]> idRange(int shard) {
+        String sql = "SELECT MIN(project_id), MAX(project_id) FROM " + PROJECT_TABLE + " WHERE deleted_at IS NULL";
+        
+        return tx.execute(TransactionOptions.readOnly("bulkRange").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)){
+                try(ResultSet rs = stmt.executeQuery()){
+                    rs.next();
+                    Integer min = rs.getObject(1, Integer.class);
+                    return Objects.isNull(min) ? Optional.empty() : Optional.of(new int[] {min, rs.getInt(2)});
+                }
             }
+        });
+    }
+    
+    /*
+     * sets the values from the given index on and returns the index after the last
+     */
+    private int setParameters(PreparedStatement stmt, int index, List<?> values) throws SQLException {
+        for(Object value : values) {
+            setParameter(stmt, index++, value, value.getClass());
+        }
+        return index;
+    }
+    
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
         }
-        catch(SQLException e) {
-            throw new DbException(e);
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("Bulk change interrupted", e);
         }
     }
+    /*
+     * the options routed to the shard that holds the project
+     */
+    private static TransactionOptions forProject(TransactionOptions options, Integer projectID) {
+        return options.onShard(DbConnection.getShardRouter().shardFor(projectID));
+    }
+    /*
+     * the project row values as a JSON object for change events
+     */
+    private String projectPayload(Project project) {
+        //@formatter:off
+        return "{"
+            + "\"projectName\":" + Json.value(project.getProjectName())
+            + ",\"estimatedHours\":" + Json.value(project.getEstimatedHours())
+            + ",\"actualHours\":" + Json.value(project.getActualHours())
+            + ",\"difficulty\":" + Json.value(project.getDifficulty())
+            + ",\"notes\":" + Json.value(project.getNotes())
+            + "}";
+        //@formatter:on
+    }
 
 }
\ No newline at end of file
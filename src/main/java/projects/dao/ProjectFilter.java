@@ -0,0 +1,105 @@
+package projects.dao;
+
+import java.util.*;
+
+/*
+ * Which projects a bulk change or count applies to. Every condition that is set must hold, and
+ * deleted projects never match. Instances are immutable; the with... methods return a copy.
+ */
+public class ProjectFilter {
+    private final Integer difficulty;
+    private final String categoryName;
+    private final Boolean completed;
+
+    private ProjectFilter(Integer difficulty, String categoryName, Boolean completed) {
+        this.difficulty = difficulty;
+        this.categoryName = categoryName;
+        this.completed = completed;
+    }
+
+    /*
+     * every project that has not been deleted
+     */
+    public static ProjectFilter all() {
+        return new ProjectFilter(null, null, null);
+    }
+
+    public ProjectFilter withDifficulty(int difficulty) {
+        return new ProjectFilter(difficulty, categoryName, completed);
+    }
+
+    /*
+     * projects tagged with the category of that name
+     */
+    public ProjectFilter withCategory(String categoryName) {
+        return new ProjectFilter(difficulty, Objects.requireNonNull(categoryName), completed);
+    }
+
+    /*
+     * projects whose actual hours are set (true) or not yet set (false)
+     */
+    public ProjectFilter withCompleted(boolean completed) {
+        return new ProjectFilter(difficulty, categoryName, completed);
+    }
+
+    /*
+     * true if no condition is set, so the filter matches every project
+     */
+    public boolean isEmpty() {
+        return Objects.isNull(difficulty) && Objects.isNull(categoryName) && Objects.isNull(completed);
+    }
+
+    /*
+     * this filter, or IllegalArgumentException if it has no condition. Bulk changes require one,
+     * so a mistake cannot change every project.
+     */
+    public ProjectFilter requireCondition() {
+        if(isEmpty()) {
+            throw new IllegalArgumentException("A bulk change needs at least one condition");
+        }
+        return this;
+    }
+
+    /*
+     * the conditions as SQL on the project table aliased p, adding their parameters to params
+     */
+    String toSql(List<Object> params) {
+        StringBuilder sql = new StringBuilder("p.deleted_at IS NULL");
+
+        if(Objects.nonNull(difficulty)) {
+            sql.append(" AND p.difficulty = ?");
+            params.add(difficulty);
+        }
+
+        if(Objects.nonNull(completed)) {
+            sql.append(completed ? " AND p.actual_hours IS NOT NULL" : " AND p.actual_hours IS NULL");
+        }
+
+        if(Objects.nonNull(categoryName)) {
+            //@formatter:off
+            sql.append(" AND EXISTS (SELECT 1 FROM project_category pc JOIN category c USING (category_id) "
+                + "WHERE pc.project_id = p.project_id AND c.category_name = ?)");
+            //@formatter:on
+            params.add(categoryName);
+        }
+
+        return sql.toString();
+    }
+
+    @Override
+    public String toString() {
+        List<String> conditions = new ArrayList<>();
+
+        if(Objects.nonNull(difficulty)) {
+            conditions.add("difficulty=" + difficulty);
+        }
+        if(Objects.nonNull(categoryName)) {
+            conditions.add("category=" + categoryName);
+        }
+        if(Objects.nonNull(completed)) {
+            conditions.add("completed=" + completed);
+        }
+
+        return conditions.isEmpty() ? "all projects" : String.join(", ", conditions);
+    }
+}
@@ -0,0 +1,140 @@
+package projects.dao;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import projects.config.DbConfig;
+import projects.exception.DbException;
+
+/*
+ * Removes soft-deleted projects in the background. Child rows are deleted in small batches, each in
+ * its own short transaction with a pause in between, so no single statement locks a whole project
+ * graph. The project row itself goes last. Only projects deleted more than purge.graceSeconds ago
+ * are touched, which is also the window in which undelete is allowed. Each shard is purged in
+ * turn.
+ */
+public class ProjectPurger extends InstrumentedDaoBase {
+    private static final String PROJECT_TABLE = "project";
+    private static final List<String> CHILD_TABLES = List.of("project_category", "material", "step");
+
+    private final TransactionExecutor tx = new TransactionExecutor();
+    private ScheduledExecutorService scheduler;
+
+    /*
+     * starts purging on a daemon thread every purge.intervalMillis
+     */
+    public synchronized void start() {
+        if(Objects.nonNull(scheduler)) {
+            return;
+        }
+
+        long interval = DbConnection.getConfig().getLong("purge.intervalMillis");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "project-purger");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                purgeOnce();
+            }
+            catch(RuntimeException e) {
+                System.err.println("Project purge failed: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if(Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /*
+     * purges every project that is past its grace period and returns how many were removed
+     */
+    public int purgeOnce() {
+        int purged = 0;
+
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            for(Integer projectID : findPurgeable(shard)) {
+                purgeProject(shard, projectID);
+                purged++;
+            }
+        }
+
+        return purged;
+    }
+
+    private List<Integer> findPurgeable(int shard) {
+        //@formatter:off
+        String sql = ""
+            + "SELECT project_id FROM " + PROJECT_TABLE + " "
+            + "WHERE deleted_at IS NOT NULL AND deleted_at <= TIMESTAMPADD(SECOND, ?, NOW()) "
+            + "ORDER BY deleted_at LIMIT 100";
+        //@formatter:on
+        int graceSeconds = DbConnection.getConfig().getInt("purge.graceSeconds");
+
+        return tx.execute(TransactionOptions.readWrite("purgeFind").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+                setParameter(stmt, 1, -graceSeconds, Integer.class);
+
+                try(ResultSet rs = stmt.executeQuery()) {
+                    List<Integer> ids = new LinkedList<>();
+
+                    while(rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+
+                    return ids;
+                }
+            }
+        });
+    }
+
+    private void purgeProject(int shard, Integer projectID) {
+        DbConfig config = DbConnection.getConfig();
+        int batchSize = config.getInt("purge.batchSize");
+        long pauseMillis = config.getLong("purge.pauseMillis");
+
+        for(String table : CHILD_TABLES) {
+            String sql = "DELETE FROM " + table + " WHERE project_id = ? LIMIT ?";
+            int deleted;
+
+            do {
+                deleted = tx.execute(TransactionOptions.readWrite("purgeBatch").onShard(shard), conn -> {
+                    try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        setParameter(stmt, 1, projectID, Integer.class);
+                        setParameter(stmt, 2, batchSize, Integer.class);
+                        QueryResultCache.SHARED.invalidateOnCommit(table);
+                        return stmt.executeUpdate();
+                    }
+                });
+
+                pause(pauseMillis);
+            } while(deleted == batchSize);
+        }
+
+        String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_at IS NOT NULL";
+
+        tx.execute(TransactionOptions.readWrite("purgeProject").onShard(shard), conn -> {
+            try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+                setParameter(stmt, 1, projectID, Integer.class);
+                QueryResultCache.SHARED.invalidateOnCommit(PROJECT_TABLE);
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("Project purge interrupted", e);
+        }
+    }
+}
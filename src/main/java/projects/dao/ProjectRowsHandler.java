@@ -0,0 +1,20 @@
+package projects.dao;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/*
+ * Receives one project and its details straight from the result sets, in this order. project is
+ * given a result set positioned on the project row; the others get result sets positioned before
+ * their first row.
+ */
+public interface ProjectRowsHandler {
+    void project(ResultSet rs) throws SQLException, IOException;
+
+    void materials(ResultSet rs) throws SQLException, IOException;
+
+    void steps(ResultSet rs) throws SQLException, IOException;
+
+    void categories(ResultSet rs) throws SQLException, IOException;
+}
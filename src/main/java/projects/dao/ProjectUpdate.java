@@ -0,0 +1,85 @@
+package projects.dao;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/*
+ * The change a bulk modify makes to every matching project. Instances are immutable; the with...
+ * methods return a copy.
+ */
+public class ProjectUpdate {
+    private final Integer difficulty;
+    private final BigDecimal estimatedHoursFactor;
+
+    private ProjectUpdate(Integer difficulty, BigDecimal estimatedHoursFactor) {
+        this.difficulty = difficulty;
+        this.estimatedHoursFactor = estimatedHoursFactor;
+    }
+
+    /*
+     * a change that does nothing yet
+     */
+    public static ProjectUpdate create() {
+        return new ProjectUpdate(null, null);
+    }
+
+    public ProjectUpdate withDifficulty(int difficulty) {
+        return new ProjectUpdate(difficulty, estimatedHoursFactor);
+    }
+
+    /*
+     * multiplies the estimated hours, e.g. by 1.10 for 10% more, rounding to two decimals.
+     * Projects without an estimate keep none.
+     */
+    public ProjectUpdate withEstimatedHoursScaledBy(BigDecimal factor) {
+        return new ProjectUpdate(difficulty, Objects.requireNonNull(factor));
+    }
+
+    public boolean isEmpty() {
+        return Objects.isNull(difficulty) && Objects.isNull(estimatedHoursFactor);
+    }
+
+    /*
+     * this update, or IllegalArgumentException if it changes nothing
+     */
+    public ProjectUpdate requireChange() {
+        if(isEmpty()) {
+            throw new IllegalArgumentException("A bulk modify needs at least one change");
+        }
+        return this;
+    }
+
+    /*
+     * the SET list for the project table, adding its parameters to params. The version is always
+     * bumped.
+     */
+    String toSql(List<Object> params) {
+        StringBuilder sql = new StringBuilder();
+
+        if(Objects.nonNull(difficulty)) {
+            sql.append("difficulty = ?, ");
+            params.add(difficulty);
+        }
+
+        if(Objects.nonNull(estimatedHoursFactor)) {
+            sql.append("estimated_hours = ROUND(estimated_hours * ?, 2), ");
+            params.add(estimatedHoursFactor);
+        }
+
+        return sql.append("version = version + 1").toString();
+    }
+
+    @Override
+    public String toString() {
+        List<String> changes = new ArrayList<>();
+
+        if(Objects.nonNull(difficulty)) {
+            changes.add("difficulty=" + difficulty);
+        }
+        if(Objects.nonNull(estimatedHoursFactor)) {
+            changes.add("estimatedHours*" + estimatedHoursFactor);
+        }
+
+        return changes.isEmpty() ? "no change" : String.join(", ", changes);
+    }
+}
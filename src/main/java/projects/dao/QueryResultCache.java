@@ -0,0 +1,215 @@
+package projects.dao;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import projects.config.DbConfig;
+
+/*
+ * Caches query results keyed by their SQL and parameters. Each entry remembers the version of
+ * every table it read; a committed write to a table bumps that table's version, which makes every
+ * entry that read it stale without looking at them. Stale entries are dropped when next asked
+ * for or when they are the least recently used.
+ *
+ * The cache holds at most queryCache.maxEntries entries and about queryCache.maxBytes of results,
+ * as estimated by the caller; a result larger than that is not cached. Writes made by other
+ * processes are not seen, so entries also expire after queryCache.ttlMillis.
+ *
+ * Reads inside a transaction bypass the cache, because they may see the transaction's own
+ * uncommitted writes. Cached values are shared, so callers must not change them.
+ */
+public class QueryResultCache {
+    public static final QueryResultCache SHARED = new QueryResultCache();
+
+    private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder tooLarge = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /*
+     * the cached result of the query if it is still current, otherwise the loader's result, which
+     * is cached for next time. sizeOf estimates a result's size in bytes.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String sql, List<?> params, Set<String> tables, Supplier<T> loader, ToLongFunction<T> sizeOf) {
+        DbConfig config = DbConnection.getConfig();
+
+        if(!config.getBoolean("queryCache.enabled") || TransactionExecutor.inTransaction()) {
+            return loader.get();
+        }
+
+        Key key = new Key(sql, params);
+        long now = System.currentTimeMillis();
+
+        synchronized(this) {
+            Entry entry = entries.get(key);
+
+            if(Objects.nonNull(entry)) {
+                if(now - entry.loadedAtMillis > config.getLong("queryCache.ttlMillis")) {
+                    remove(key);
+                    expired.increment();
+                }
+                else if(!entry.isCurrent()) {
+                    remove(key);
+                    stale.increment();
+                }
+                else {
+                    hits.increment();
+                    return (T)entry.value;
+                }
+            }
+        }
+
+        misses.increment();
+
+        /* versions are read before the query, so a write committed during it makes the entry stale */
+        AtomicLong[] counters = new AtomicLong[tables.size()];
+        long[] versions = new long[tables.size()];
+        int i = 0;
+
+        for(String table : tables) {
+            counters[i] = version(table);
+            versions[i] = counters[i].get();
+            i++;
+        }
+
+        T value = loader.get();
+        put(key, new Entry(value, counters, versions, now, sizeOf.applyAsLong(value)), config);
+        return value;
+    }
+
+    /*
+     * marks every cached result that read the table as stale
+     */
+    public void invalidate(String table) {
+        version(table).incrementAndGet();
+        invalidations.increment();
+    }
+
+    /*
+     * invalidates the tables once the transaction open on this thread commits. Called by the DAO
+     * from inside the work of a transaction that writes to them.
+     */
+    public void invalidateOnCommit(String... tables) {
+        TransactionExecutor.afterCommit(() -> {
+            for(String table : tables) {
+                invalidate(table);
+            }
+        });
+    }
+
+    private AtomicLong version(String table) {
+        return tableVersions.computeIfAbsent(table, key -> new AtomicLong());
+    }
+
+    private synchronized void put(Key key, Entry entry, DbConfig config) {
+        long maxBytes = config.getLong("queryCache.maxBytes");
+        int maxEntries = config.getInt("queryCache.maxEntries");
+
+        if(entry.bytes > maxBytes) {
+            tooLarge.increment();
+            return;
+        }
+
+        remove(key);
+        entries.put(key, entry);
+        totalBytes += entry.bytes;
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+
+        while((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+
+        if(Objects.nonNull(removed)) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        long h = hits.sum();
+        long m = misses.sum();
+
+        metrics.put("hits", h);
+        metrics.put("misses", m);
+        metrics.put("stale", stale.sum());
+        metrics.put("expired", expired.sum());
+        metrics.put("evictions", evictions.sum());
+        metrics.put("tooLarge", tooLarge.sum());
+        metrics.put("invalidations", invalidations.sum());
+        metrics.put("hitRatioPercent", h + m == 0 ? 0 : h * 100 / (h + m));
+
+        synchronized(this) {
+            metrics.put("size", (long)entries.size());
+            metrics.put("bytes", totalBytes);
+        }
+
+        return metrics;
+    }
+
+    private static class Key {
+        private final String sql;
+        private final List<?> params;
+
+        Key(String sql, List<?> params) {
+            this.sql = sql;
+            this.params = List.copyOf(params);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && sql.equals(((Key)obj).sql) && params.equals(((Key)obj).params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + params.hashCode();
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final AtomicLong[] counters;
+        private final long[] versions;
+        private final long loadedAtMillis;
+        private final long bytes;
+
+        Entry(Object value, AtomicLong[] counters, long[] versions, long loadedAtMillis, long bytes) {
+            this.value = value;
+            this.counters = counters;
+            this.versions = versions;
+            this.loadedAtMillis = loadedAtMillis;
+            this.bytes = bytes;
+        }
+
+        /*
+         * true if none of the tables it read has been written since
+         */
+        boolean isCurrent() {
+            for(int i = 0; i < counters.length; i++) {
+                if(counters[i].get() != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package projects.dao;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.Objects;
+
+import projects.jfr.StatementEvent;
+
+/*
+ * Wraps a statement so that every execute call is recorded as a StatementEvent with its SQL and
+ * row count. An update records the rows it changed. A query hands back a result set that counts
+ * the rows read and records the event when it is closed, or when the statement is. ConnectionPool
+ * only wraps statements while a recording has the event enabled, so there is no cost otherwise.
+ */
+class RecordedStatement implements InvocationHandler {
+    private final Statement stmt;
+    private final String sql;
+    private Results openResults;
+
+    private RecordedStatement(Statement stmt, String sql) {
+        this.stmt = stmt;
+        this.sql = sql;
+    }
+
+    /*
+     * the statement wrapped as the given statement interface; sql is null for a plain Statement,
+     * whose SQL comes with each execute call
+     */
+    static Object wrap(Statement stmt, Class<?> type, String sql) {
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] {type},
+                new RecordedStatement(stmt, sql));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+
+        if(name.equals("close")) {
+            finishResults();
+        }
+
+        if(!name.startsWith("execute")) {
+            return delegate(stmt, method, args);
+        }
+
+        StatementEvent event = new StatementEvent();
+        event.begin();
+        event.transaction = TransactionExecutor.currentName();
+        event.sql = Objects.nonNull(sql) || Objects.isNull(args) || !(args[0] instanceof String) ? sql : (String)args[0];
+        event.operation = name;
+        event.rows = -1;
+
+        Object result;
+
+        try {
+            result = delegate(stmt, method, args);
+        }
+        catch(Throwable e) {
+            finish(event);
+            throw e;
+        }
+
+        event.succeeded = true;
+
+        if(result instanceof ResultSet) {
+            finishResults();
+            openResults = new Results((ResultSet)result, event);
+            return openResults.proxy();
+        }
+
+        event.rows = rows(result);
+        finish(event);
+        return result;
+    }
+
+    /*
+     * rows changed by an update or a batch; -1 when the driver does not say
+     */
+    private long rows(Object result) throws SQLException {
+        if(result instanceof Number) {
+            return ((Number)result).longValue();
+        }
+
+        if(result instanceof Boolean) {
+            return (Boolean)result ? -1 : stmt.getUpdateCount();
+        }
+
+        long total = 0;
+
+        if(result instanceof int[]) {
+            for(int count : (int[])result) {
+                if(count < 0) {
+                    return -1;
+                }
+                total += count;
+            }
+            return total;
+        }
+
+        if(result instanceof long[]) {
+            for(long count : (long[])result) {
+                if(count < 0) {
+                    return -1;
+                }
+                total += count;
+            }
+            return total;
+        }
+
+        return -1;
+    }
+
+    private void finishResults() {
+        if(Objects.nonNull(openResults)) {
+            openResults.finish();
+            openResults = null;
+        }
+    }
+
+    private static void finish(StatementEvent event) {
+        event.end();
+
+        if(event.shouldCommit()) {
+            event.commit();
+        }
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch(InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * a query's result set, counting rows until it is closed
+     */
+    private static class Results implements InvocationHandler {
+        private final ResultSet rs;
+        private final StatementEvent event;
+        private long rows;
+        private boolean finished;
+
+        Results(ResultSet rs, StatementEvent event) {
+            this.rs = rs;
+            this.event = event;
+        }
+
+        ResultSet proxy() {
+            return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                    this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = delegate(rs, method, args);
+
+            switch(method.getName()) {
+                case "next":
+                    if(Boolean.TRUE.equals(result)) {
+                        rows++;
+                    }
+                    break;
+                case "close":
+                    finish();
+                    break;
+                default:
+                    break;
+            }
+
+            return result;
+        }
+
+        void finish() {
+            if(!finished) {
+                finished = true;
+                event.rows = rows;
+                RecordedStatement.finish(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package projects.dao;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Chooses where a connection should go. Writes always go to the primary. Reads are spread
+ * round-robin over the healthy replicas unless a write happened recently, in which case they
+ * stay on the primary so the caller can see what it just wrote.
+ *
+ * A replica is marked down for db.replicaDownMillis when connecting to it or a statement on it
+ * fails in a way CircuitBreaker.isUnavailable counts. A busy replica pool or an ordinary SQL error
+ * leaves it up.
+ */
+public class ReplicaRouter {
+    private final List<Replica> replicas;
+    private final long readYourWritesMillis;
+    private final long downMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong lastWriteMillis = new AtomicLong();
+
+    public ReplicaRouter(List<ConnectionPool> replicaPools, long readYourWritesMillis, long downMillis) {
+        List<Replica> list = new ArrayList<>();
+
+        for(ConnectionPool pool : replicaPools) {
+            list.add(new Replica(pool));
+        }
+
+        this.replicas = Collections.unmodifiableList(list);
+        this.readYourWritesMillis = readYourWritesMillis;
+        this.downMillis = downMillis;
+    }
+
+    /*
+     * records that a write was committed so reads are pinned to the primary for a while
+     */
+    public void recordWrite() {
+        lastWriteMillis.set(System.currentTimeMillis());
+    }
+
+    /*
+     * true if reads should go to the primary to honor read-your-writes
+     */
+    public boolean inReadYourWritesWindow() {
+        return System.currentTimeMillis() - lastWriteMillis.get() < readYourWritesMillis;
+    }
+
+    /*
+     * opens a connection to the next healthy replica, or returns null if there is none
+     */
+    public Connection openReplica() {
+        if(replicas.isEmpty() || inReadYourWritesWindow()) {
+            return null;
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+
+        for(int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+
+            if(!replica.isAvailable()) {
+                continue;
+            }
+
+            try {
+                Connection conn = replica.pool.borrow();
+                replica.markUp();
+                return conn;
+            }
+            catch(PoolTimeoutException e) {
+                /* every connection to this replica is in use, which says nothing about its health */
+            }
+            catch(SQLException e) {
+                recordFailure(replica, e);
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * called when a statement fails. If the connection came from a replica, a failure meaning the
+     * replica is unreachable or too slow marks it down, and this returns true; a connection to
+     * the primary returns false so that the caller reports it there.
+     */
+    public boolean recordFailure(Connection conn, Throwable e) {
+        for(Replica replica : replicas) {
+            if(replica.pool.owns(conn)) {
+                recordFailure(replica, e);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void recordFailure(Replica replica, Throwable e) {
+        if(CircuitBreaker.isUnavailable(e)) {
+            System.err.println("Replica " + replica + " is unavailable: " + e.getMessage());
+            replica.markDown(downMillis);
+        }
+    }
+
+    /*
+     * probes every replica with a short validity check and updates its health
+     */
+    public void checkHealth() {
+        for(Replica replica : replicas) {
+            try(Connection conn = replica.pool.borrow()) {
+                if(conn.isValid(2)) {
+                    replica.markUp();
+                }
+                else {
+                    replica.markDown(downMillis);
+                }
+            }
+            catch(PoolTimeoutException e) {
+                /* busy, and the connections in use show it is reachable */
+            }
+            catch(SQLException e) {
+                replica.markDown(downMillis);
+            }
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /*
+     * carries the last write time over from the router this one replaces
+     */
+    void inheritWriteTime(ReplicaRouter previous) {
+        lastWriteMillis.set(previous.lastWriteMillis.get());
+    }
+
+    public void shutdown() {
+        for(Replica replica : replicas) {
+            replica.pool.shutdown();
+        }
+    }
+
+    /*
+     * a single read replica and its health state
+     */
+    public static class Replica {
+        private final ConnectionPool pool;
+        private volatile long downUntilMillis;
+
+        Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        boolean isAvailable() {
+            return System.currentTimeMillis() >= downUntilMillis;
+        }
+
+        void markUp() {
+            downUntilMillis = 0;
+        }
+
+        void markDown(long millis) {
+            downUntilMillis = System.currentTimeMillis() + millis;
+        }
+
+        public boolean isHealthy() {
+            return isAvailable();
+        }
+
+        public ConnectionPool getPool() {
+            return pool;
+        }
+
+        @Override
+        public String toString() {
+            String url = pool.getUrl();
+            int query = url.indexOf('?');
+            return query < 0 ? url : url.substring(0, query);
+        }
+    }
+}
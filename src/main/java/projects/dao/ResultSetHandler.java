@@ -0,0 +1,14 @@
+package projects.dao;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/*
+ * Reads a result set as it arrives from the database, typically writing it straight out. The
+ * result set is positioned before its first row and is closed when the handler returns.
+ */
+@FunctionalInterface
+public interface ResultSetHandler {
+    void handle(ResultSet rs) throws SQLException, IOException;
+}
@@ -0,0 +1,79 @@
+package projects.dao;
+
+import java.util.Objects;
+
+import projects.config.DbConfig;
+
+/*
+ * Decides which shard holds a project. A project's material, step and project_category rows live
+ * on the same shard, so every single-project read or write is one local transaction. Shard 0 is
+ * the primary; the others are listed in shard.urls.
+ *
+ * With shard.strategy=hash the project ID is mixed and taken modulo the shard count, which spreads
+ * new projects evenly. With shard.strategy=range each shard holds shard.rangeSize consecutive IDs
+ * and the last one holds the rest, so an existing database can become shard 0 as it is and new
+ * shards fill up as IDs grow. Either way the layout is fixed: changing the number of shards or
+ * the strategy would move existing projects, so DbConnection ignores such a change on reload.
+ *
+ * Categories are not global: each shard has its own category rows, created by name as projects
+ * on it are tagged. Outbox events are written on the changed project's shard, and the outbox relay
+ * and the cache invalidation bus read every shard's outbox.
+ */
+public class ShardRouter {
+    private final int shardCount;
+    private final boolean range;
+    private final int rangeSize;
+
+    public ShardRouter(DbConfig config) {
+        shardCount = 1 + config.getShards().size();
+        range = config.getString("shard.strategy").equals("range");
+        rangeSize = config.getInt("shard.rangeSize");
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    /*
+     * the shard of the project, or 0 for a project that has no ID yet
+     */
+    public int shardFor(Integer projectID) {
+        if(shardCount == 1 || Objects.isNull(projectID)) {
+            return 0;
+        }
+
+        if(range) {
+            return Math.min(shardCount - 1, Math.max(0, (projectID - 1) / rangeSize));
+        }
+
+        return Math.floorMod(mix(projectID), shardCount);
+    }
+
+    /*
+     * the murmur3 finalizer, so that IDs handed out in blocks do not land on the shards in runs
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /*
+     * true if both route every project ID to the same shard
+     */
+    public boolean sameLayout(ShardRouter other) {
+        return shardCount == other.shardCount && range == other.range && (!range || rangeSize == other.rangeSize);
+    }
+
+    @Override
+    public String toString() {
+        return shardCount + " shard(s), " + (range ? "range of " + rangeSize : "hash");
+    }
+}
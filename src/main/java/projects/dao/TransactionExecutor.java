@@ -0,0 +1,322 @@
+package projects.dao;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import projects.config.DbConfig;
+import projects.exception.DbException;
+import projects.jfr.CommitEvent;
+
+/*
+ * Runs a unit of work in a transaction: borrow a connection, begin, run, commit, and roll back on
+ * failure. Deadlocks and lock-wait timeouts are retried with exponential backoff. If a transaction
+ * is already open on the current thread the work joins it, so several DAO calls can share one
+ * connection and commit together. A transaction never spans shards, so joining one that is open on
+ * another shard is an error, and neither may a write join a read-only transaction, which may be
+ * running on a replica.
+ *
+ * Each transaction name has a bulkhead (bulkhead.op.<name>, or bulkhead.maxConcurrent) capping how
+ * many run at once; a joined transaction does not take a second slot.
+ */
+public class TransactionExecutor {
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final String SERIALIZATION_FAILURE = "40001";
+
+    private static final ThreadLocal<Connection> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> CURRENT_READ_ONLY = new ThreadLocal<>();
+    private static final ThreadLocal<List<Runnable>> AFTER_COMMIT = new ThreadLocal<>();
+    private static final ThreadLocal<String> CURRENT_NAME = new ThreadLocal<>();
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+    private static final Map<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+
+    /*
+     * the work to run. It must not commit, roll back or close the connection.
+     */
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T doInTransaction(Connection conn) throws SQLException;
+    }
+
+    public <T> T execute(TransactionOptions options, TransactionCallback<T> work) {
+        Connection joined = CURRENT.get();
+
+        if(Objects.nonNull(joined)) {
+            if(CURRENT_SHARD.get() != options.getShard()) {
+                throw new DbException("Transaction " + options.getName() + " on shard " + options.getShard()
+                        + " cannot join the open transaction on shard " + CURRENT_SHARD.get());
+            }
+
+            if(!options.isReadOnly() && CURRENT_READ_ONLY.get()) {
+                throw new DbException("Transaction " + options.getName()
+                        + " writes and cannot join the open read-only transaction " + CURRENT_NAME.get());
+            }
+
+            try {
+                return work.doInTransaction(joined);
+            }
+            catch(SQLException e) {
+                throw new DbException(e);
+            }
+        }
+
+        DbConfig config = DbConnection.getConfig();
+        int maxRetries = options.isRetryable() ? config.getInt("tx.maxRetries") : 0;
+        long backoff = config.getLong("tx.backoffMillis");
+        long maxBackoff = config.getLong("tx.maxBackoffMillis");
+        Stats stats = STATS.computeIfAbsent(options.getName(), name -> new Stats());
+        Bulkhead bulkhead = bulkhead(options.getName(), config);
+
+        bulkhead.enter(config.getLong("bulkhead.waitMillis"));
+        CURRENT_NAME.set(options.getName());
+
+        try {
+            for(int attempt = 0;; attempt++) {
+                long start = System.nanoTime();
+
+                try {
+                    T result = runOnce(options, work, attempt + 1);
+                    stats.record(System.nanoTime() - start, false);
+                    return result;
+                }
+                catch(DbException e) {
+                    stats.record(System.nanoTime() - start, true);
+
+                    if(attempt >= maxRetries || !isTransient(e)) {
+                        throw e;
+                    }
+
+                    stats.retries.increment();
+                    sleep(Math.min(maxBackoff, backoff << attempt));
+                }
+            }
+        }
+        finally {
+            CURRENT_NAME.remove();
+            bulkhead.exit();
+        }
+    }
+
+    /*
+     * the bulkhead for the operation, replaced when its configured limit changes. Transactions
+     * already inside the old one release it as they finish.
+     */
+    private static Bulkhead bulkhead(String name, DbConfig config) {
+        int limit = config.getBulkheadLimit(name);
+        Bulkhead bulkhead = BULKHEADS.get(name);
+
+        if(Objects.nonNull(bulkhead) && bulkhead.getLimit() == limit) {
+            return bulkhead;
+        }
+
+        return BULKHEADS.compute(name,
+                (key, current) -> Objects.nonNull(current) && current.getLimit() == limit ? current : new Bulkhead(key, limit));
+    }
+
+    /*
+     * true while a transaction is open on the current thread
+     */
+    public static boolean inTransaction() {
+        return Objects.nonNull(CURRENT.get());
+    }
+
+    /*
+     * the name of the transaction being run on the current thread, including while its
+     * connection is acquired, or null if there is none. Used to label flight recorder events.
+     */
+    public static String currentName() {
+        return CURRENT_NAME.get();
+    }
+
+    /*
+     * runs the action once the transaction open on this thread has committed, or at once if there
+     * is none. The action is dropped if the transaction rolls back. An action that fails after the
+     * commit is reported on stderr; the transaction stays committed and is not retried.
+     */
+    public static void afterCommit(Runnable action) {
+        List<Runnable> actions = AFTER_COMMIT.get();
+
+        if(Objects.isNull(actions)) {
+            action.run();
+            return;
+        }
+
+        actions.add(action);
+    }
+
+    /*
+     * runs work that makes several DAO calls in one transaction on one connection
+     */
+    public <T> T inTransaction(TransactionOptions options, Supplier<T> work) {
+        return execute(options, conn -> work.get());
+    }
+
+    private <T> T runOnce(TransactionOptions options, TransactionCallback<T> work, int attempt) {
+        Connection conn = options.getShard() != 0 ? DbConnection.getConnection(options.getShard())
+                : options.isReadOnly() ? DbConnection.getReadConnection() : DbConnection.getConnection();
+
+        List<Runnable> actions = new ArrayList<>();
+        T result;
+
+        try(conn) {
+            if(options.getIsolation() != TransactionOptions.DEFAULT_ISOLATION) {
+                conn.setTransactionIsolation(options.getIsolation());
+            }
+
+            conn.setReadOnly(options.isReadOnly());
+            conn.setAutoCommit(false);
+            CURRENT.set(conn);
+            CURRENT_SHARD.set(options.getShard());
+            CURRENT_READ_ONLY.set(options.isReadOnly());
+            AFTER_COMMIT.set(actions);
+
+            try {
+                result = work.doInTransaction(conn);
+                commit(conn, options, attempt);
+
+                if(!options.isReadOnly() && options.getShard() == 0) {
+                    DbConnection.recordWrite();
+                }
+            }
+            catch(Exception e) {
+                recordFailure(options, conn, e);
+                conn.rollback();
+                throw e instanceof DbException ? (DbException)e : new DbException(e);
+            }
+            finally {
+                CURRENT.remove();
+                CURRENT_SHARD.remove();
+                CURRENT_READ_ONLY.remove();
+                AFTER_COMMIT.remove();
+            }
+        }
+        catch(SQLException e) {
+            recordFailure(options, conn, e);
+            throw new DbException(e);
+        }
+
+        runAfterCommit(options, actions);
+        return result;
+    }
+
+    /*
+     * runs the actions of a committed transaction outside its rollback and retry handling
+     */
+    private static void runAfterCommit(TransactionOptions options, List<Runnable> actions) {
+        for(Runnable action : actions) {
+            try {
+                action.run();
+            }
+            catch(RuntimeException e) {
+                System.err.println("After-commit action of transaction " + options.getName() + " failed: " + e);
+            }
+        }
+    }
+
+    private static void commit(Connection conn, TransactionOptions options, int attempt) throws SQLException {
+        CommitEvent event = new CommitEvent();
+        event.begin();
+        conn.commit();
+        event.end();
+
+        if(event.shouldCommit()) {
+            event.transaction = options.getName();
+            event.shard = options.getShard();
+            event.readOnly = options.isReadOnly();
+            event.attempt = attempt;
+            event.commit();
+        }
+    }
+
+    /*
+     * Reports the failure to the shard's circuit breaker. Read-only work on the primary may have
+     * run on a replica, whose failures go to ReplicaRouter instead.
+     */
+    private static void recordFailure(TransactionOptions options, Connection conn, Exception e) {
+        if(options.getShard() == 0 && options.isReadOnly()) {
+            DbConnection.recordReadFailure(conn, e);
+        }
+        else {
+            DbConnection.recordFailure(options.getShard(), e);
+        }
+    }
+
+    /*
+     * true for errors that are worth retrying: deadlocks and lock-wait timeouts
+     */
+    static boolean isTransient(Throwable e) {
+        for(Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+            if(cause instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+
+            if(cause instanceof SQLException) {
+                SQLException sql = (SQLException)cause;
+                int code = sql.getErrorCode();
+
+                if(code == ER_LOCK_DEADLOCK || code == ER_LOCK_WAIT_TIMEOUT
+                        || SERIALIZATION_FAILURE.equals(sql.getSQLState())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("Interrupted while waiting to retry a transaction", e);
+        }
+    }
+
+    /*
+     * a copy of the per-transaction counters keyed by transaction name
+     */
+    public static Map<String, String> getStats() {
+        Map<String, String> result = new TreeMap<>();
+        STATS.forEach((name, stats) -> result.put(name, stats.toString()));
+        return result;
+    }
+
+    /*
+     * a copy of the per-operation bulkhead counters keyed by transaction name
+     */
+    public static Map<String, String> getBulkheadStats() {
+        Map<String, String> result = new TreeMap<>();
+        BULKHEADS.forEach((name, bulkhead) -> result.put(name, bulkhead.toString()));
+        return result;
+    }
+
+    private static class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos, boolean failed) {
+            count.increment();
+            totalNanos.add(nanos);
+
+            if(failed) {
+                failures.increment();
+            }
+        }
+
+        @Override
+        public String toString() {
+            long n = count.sum();
+            double avgMillis = n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+            return String.format("count=%d, failures=%d, retries=%d, avgMillis=%.3f", n, failures.sum(), retries.sum(),
+                    avgMillis);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package projects.dao;
+
+import java.sql.Connection;
+
+/*
+ * How a unit of work should run: its name for timing, whether it only reads, the isolation level
+ * to use and the shard it runs on. Instances are immutable; the with... and on... methods return
+ * a copy.
+ */
+public class TransactionOptions {
+    public static final int DEFAULT_ISOLATION = -1;
+
+    private final String name;
+    private final boolean readOnly;
+    private final int isolation;
+    private final boolean retryable;
+    private final int shard;
+
+    private TransactionOptions(String name, boolean readOnly, int isolation, boolean retryable, int shard) {
+        this.name = name;
+        this.readOnly = readOnly;
+        this.isolation = isolation;
+        this.retryable = retryable;
+        this.shard = shard;
+    }
+
+    public static TransactionOptions readWrite(String name) {
+        return new TransactionOptions(name, false, DEFAULT_ISOLATION, true, 0);
+    }
+
+    /*
+     * read-only work may be routed to a replica and uses READ COMMITTED to avoid gap locks
+     */
+    public static TransactionOptions readOnly(String name) {
+        return new TransactionOptions(name, true, Connection.TRANSACTION_READ_COMMITTED, true, 0);
+    }
+
+    public TransactionOptions withIsolation(int isolation) {
+        return new TransactionOptions(name, readOnly, isolation, retryable, shard);
+    }
+
+    /*
+     * turns off retries, for work with side effects outside the database
+     */
+    public TransactionOptions withoutRetry() {
+        return new TransactionOptions(name, readOnly, isolation, false, shard);
+    }
+
+    /*
+     * runs the work on the given shard instead of the primary. Only shard 0 has replicas.
+     */
+    public TransactionOptions onShard(int shard) {
+        return new TransactionOptions(name, readOnly, isolation, retryable, shard);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public int getIsolation() {
+        return isolation;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+}
@@ -18,6 +18,7 @@ public class Project {
   private BigDecimal actualHours;
   private Integer difficulty;
   private String notes;
+  private Integer version;
 
   private List<Material> materials = new LinkedList<>();
   private List<Step> steps = new LinkedList<>();
@@ -71,6 +72,18 @@ public class Project {
     this.notes = notes;
   }
 
+  /**
+   * The row version, incremented by every change to the project or its materials, steps or
+   * categories. It is used as the HTTP entity tag.
+   */
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
   public List<Material> getMaterials() {
     return materials;
   }
@@ -83,6 +96,26 @@ public class Project {
     return categories;
   }
 
+  /**
+   * Returns a deep copy of this project, including copies of its materials, steps and categories,
+   * so that a caller can change the copy without affecting a shared instance such as a cached one.
+   */
+  public Project copy() {
+    Project copy = new Project();
+    copy.projectId = projectId;
+    copy.projectName = projectName;
+    copy.estimatedHours = estimatedHours;
+    copy.actualHours = actualHours;
+    copy.difficulty = difficulty;
+    copy.notes = notes;
+    copy.version = version;
+
+    materials.forEach(material -> copy.materials.add(material.copy()));
+    steps.forEach(step -> copy.steps.add(step.copy()));
+    categories.forEach(category -> copy.categories.add(category.copy()));
+    return copy;
+  }
+
   @Override
   public String toString() {
     String result = "";
@@ -45,6 +45,18 @@ public class Step {
     this.stepOrder = stepOrder;
   }
 
+  /**
+   * Returns a copy of this step.
+   */
+  public Step copy() {
+    Step copy = new Step();
+    copy.stepId = stepId;
+    copy.projectId = projectId;
+    copy.stepText = stepText;
+    copy.stepOrder = stepOrder;
+    return copy;
+  }
+
   @Override
   public String toString() {
     return "ID=" + stepId + ", stepText=" + stepText;
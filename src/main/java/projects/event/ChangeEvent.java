@@ -0,0 +1,94 @@
+package projects.event;
+
+import java.time.LocalDateTime;
+
+import projects.util.Json;
+
+/*
+ * One row of the project_outbox table: a committed change to a project or its children
+ */
+public class ChangeEvent {
+    public static final String PROJECT_INSERTED = "PROJECT_INSERTED";
+    public static final String PROJECT_MODIFIED = "PROJECT_MODIFIED";
+    public static final String PROJECT_DELETED = "PROJECT_DELETED";
+    public static final String PROJECT_UNDELETED = "PROJECT_UNDELETED";
+    public static final String PROJECT_ARCHIVED = "PROJECT_ARCHIVED";
+    public static final String MATERIALS_INSERTED = "MATERIALS_INSERTED";
+    public static final String STEPS_INSERTED = "STEPS_INSERTED";
+    public static final String CATEGORIES_ASSIGNED = "CATEGORIES_ASSIGNED";
+
+    private Long eventId;
+    private String eventType;
+    private Integer projectId;
+    private String payload;
+    private LocalDateTime createdAt;
+    private int shard;
+
+    public Long getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(Long eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public Integer getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(Integer projectId) {
+        this.projectId = projectId;
+    }
+
+    /*
+     * the changed values as a JSON object
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /*
+     * the shard whose outbox the event was read from. Event IDs are only unique within a shard.
+     */
+    public int getShard() {
+        return shard;
+    }
+
+    public void setShard(int shard) {
+        this.shard = shard;
+    }
+
+    /*
+     * the whole event as a single line of JSON
+     */
+    public String toJson() {
+        return "{\"eventId\":" + eventId + ",\"shard\":" + shard + ",\"eventType\":" + Json.value(eventType)
+                + ",\"projectId\":" + projectId + ",\"createdAt\":" + Json.value(createdAt) + ",\"payload\":" + payload
+                + "}";
+    }
+
+    @Override
+    public String toString() {
+        return "ID=" + eventId + ", shard=" + shard + ", eventType=" + eventType + ", projectId=" + projectId;
+    }
+}
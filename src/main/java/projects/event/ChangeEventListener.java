@@ -0,0 +1,13 @@
+package projects.event;
+
+import java.util.List;
+
+/*
+ * Receives committed change events from the OutboxRelay in event ID order. Each batch comes from
+ * one shard's outbox, and the order only holds within a shard. If a listener throws, the same
+ * batch is offered again on the next poll, so handlers should be idempotent.
+ */
+@FunctionalInterface
+public interface ChangeEventListener {
+    void onEvents(List<ChangeEvent> events) throws Exception;
+}
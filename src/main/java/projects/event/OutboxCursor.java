@@ -0,0 +1,71 @@
+package projects.event;
+
+import java.util.*;
+
+/*
+ * A reader's position in the project_outbox sequence.
+ *
+ * AUTO_INCREMENT IDs are assigned at insert time but become visible at commit time, so a lower ID
+ * can appear after a higher one has been read. A reader that moved past every ID it read would
+ * never see the late one. The cursor therefore only moves through the contiguous part of what was
+ * read and stops before a hole until it fills. A hole still open after the gap timeout is treated
+ * as a rolled-back insert and skipped.
+ */
+public class OutboxCursor {
+    private volatile long lastEventId;
+    private long gapSeenAtMillis;
+
+    public OutboxCursor(long lastEventId) {
+        this.lastEventId = lastEventId;
+    }
+
+    public long getLastEventId() {
+        return lastEventId;
+    }
+
+    /*
+     * moves the cursor past an event returned by contiguousPrefix once it has been handled
+     */
+    public void advanceTo(long eventId) {
+        lastEventId = eventId;
+    }
+
+    /*
+     * returns the fetched events up to the first hole in the ID sequence, or all of them once the
+     * hole has been open longer than the timeout. The events must be in ID order and follow the
+     * cursor.
+     */
+    public synchronized List<ChangeEvent> contiguousPrefix(List<ChangeEvent> fetched, long gapTimeoutMillis) {
+        List<ChangeEvent> batch = new ArrayList<>(fetched.size());
+        long expected = lastEventId + 1;
+
+        for(ChangeEvent event : fetched) {
+            boolean sequenceKnown = lastEventId != 0 || !batch.isEmpty();
+
+            if(sequenceKnown && event.getEventId() != expected) {
+                if(!batch.isEmpty()) {
+                    break;
+                }
+
+                long now = System.currentTimeMillis();
+
+                if(gapSeenAtMillis == 0) {
+                    gapSeenAtMillis = now;
+                }
+
+                if(now - gapSeenAtMillis < gapTimeoutMillis) {
+                    break;
+                }
+            }
+
+            if(batch.isEmpty()) {
+                gapSeenAtMillis = 0;
+            }
+
+            batch.add(event);
+            expected = event.getEventId() + 1;
+        }
+
+        return batch;
+    }
+}
@@ -0,0 +1,136 @@
+package projects.event;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import projects.config.DbConfig;
+import projects.dao.DbConnection;
+import projects.dao.OutboxDao;
+
+/*
+ * Streams committed outbox events to subscribers in event ID order, in batches of up to
+ * outbox.batchSize. An OutboxCursor holds delivery back at a hole in the sequence for up to
+ * outbox.gapTimeoutMillis, so an event committed after a higher ID is not lost.
+ *
+ * Each shard has its own outbox and ID sequence. The relay keeps a cursor per shard and delivers
+ * each shard's events in their own batches, so the order holds within a shard but not across them.
+ *
+ * ProjectsApp and ProjectServer run a relay into a StreamEventSink when outbox.sink is set, and an
+ * OutboxTrimmer removes what it has delivered. The cursors are not stored, so a restarted relay
+ * delivers the retained events again.
+ */
+public class OutboxRelay {
+    private final OutboxDao outboxDao = new OutboxDao();
+    private final List<ChangeEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<OutboxCursor> cursors = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    /*
+     * startFromLatest skips events written before the relay was created
+     */
+    public OutboxRelay(boolean startFromLatest) {
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            cursors.add(new OutboxCursor(startFromLatest ? outboxDao.fetchLatestEventId(shard) : 0));
+        }
+    }
+
+    public void subscribe(ChangeEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(ChangeEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /*
+     * the ID of the last event delivered from the shard's outbox
+     */
+    public long getLastEventId(int shard) {
+        return cursors.get(shard).getLastEventId();
+    }
+
+    public synchronized void start() {
+        if(Objects.nonNull(scheduler)) {
+            return;
+        }
+
+        long pollMillis = DbConnection.getConfig().getLong("outbox.pollMillis");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbox-relay");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                while(pollOnce() > 0) {
+                    /* keep draining while there is a backlog */
+                }
+            }
+            catch(RuntimeException e) {
+                System.err.println("Outbox relay poll failed: " + e.getMessage());
+            }
+        }, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if(Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /*
+     * delivers the next batch from each shard and returns the number of events delivered
+     */
+    public synchronized int pollOnce() {
+        DbConfig config = DbConnection.getConfig();
+        int delivered = 0;
+
+        for(int shard = 0; shard < cursors.size(); shard++) {
+            delivered += pollShard(shard, config);
+        }
+
+        return delivered;
+    }
+
+    private int pollShard(int shard, DbConfig config) {
+        OutboxCursor cursor = cursors.get(shard);
+        List<ChangeEvent> fetched = outboxDao.fetchEventsAfter(shard, cursor.getLastEventId(),
+                config.getInt("outbox.batchSize"));
+        List<ChangeEvent> batch = cursor.contiguousPrefix(fetched, config.getLong("outbox.gapTimeoutMillis"));
+
+        if(batch.isEmpty()) {
+            return 0;
+        }
+
+        List<ChangeEvent> events = Collections.unmodifiableList(batch);
+
+        for(ChangeEventListener listener : listeners) {
+            try {
+                listener.onEvents(events);
+            }
+            catch(Exception e) {
+                System.err.println("Change event listener failed, batch will be retried: " + e);
+                return 0;
+            }
+        }
+
+        cursor.advanceTo(batch.get(batch.size() - 1).getEventId());
+        return batch.size();
+    }
+
+    /*
+     * removes delivered events older than outbox.retentionSeconds from every shard's outbox
+     */
+    public int trimDelivered() {
+        DbConfig config = DbConnection.getConfig();
+        int deleted = 0;
+
+        for(int shard = 0; shard < cursors.size(); shard++) {
+            deleted += outboxDao.deleteEventsUpTo(shard, cursors.get(shard).getLastEventId(),
+                    config.getInt("outbox.retentionSeconds"), config.getInt("outbox.batchSize"));
+        }
+
+        return deleted;
+    }
+}
@@ -0,0 +1,87 @@
+package projects.event;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import projects.config.DbConfig;
+import projects.dao.DbConnection;
+import projects.dao.OutboxDao;
+
+/*
+ * Keeps project_outbox from growing without bound. Every outbox.trimMillis it deletes events older
+ * than outbox.retentionSeconds from each shard's outbox, outbox.batchSize rows per statement.
+ *
+ * With a relay, only events the relay has delivered are deleted. Without one, nothing in this
+ * process consumes the outbox and every event past retention goes, so outbox.retentionSeconds is
+ * also how far behind another process's relay may fall before it misses events.
+ */
+public class OutboxTrimmer {
+    private final OutboxDao outboxDao = new OutboxDao();
+    private final OutboxRelay relay;
+    private ScheduledExecutorService scheduler;
+
+    /*
+     * relay may be null when no relay runs in this process
+     */
+    public OutboxTrimmer(OutboxRelay relay) {
+        this.relay = relay;
+    }
+
+    /*
+     * starts trimming on a daemon thread every outbox.trimMillis
+     */
+    public synchronized void start() {
+        if(Objects.nonNull(scheduler)) {
+            return;
+        }
+
+        long interval = DbConnection.getConfig().getLong("outbox.trimMillis");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbox-trimmer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                trimOnce();
+            }
+            catch(RuntimeException e) {
+                System.err.println("Outbox trim failed: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if(Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /*
+     * deletes batches until no shard has an event left to trim and returns how many were removed
+     */
+    public int trimOnce() {
+        int deleted = 0;
+        int batch;
+
+        do {
+            batch = Objects.isNull(relay) ? trimExpired() : relay.trimDelivered();
+            deleted += batch;
+        } while(batch > 0);
+
+        return deleted;
+    }
+
+    private int trimExpired() {
+        DbConfig config = DbConnection.getConfig();
+        int deleted = 0;
+
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            deleted += outboxDao.deleteEventsUpTo(shard, Long.MAX_VALUE, config.getInt("outbox.retentionSeconds"),
+                    config.getInt("outbox.batchSize"));
+        }
+
+        return deleted;
+    }
+}
@@ -0,0 +1,73 @@
+package projects.event;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+
+/*
+ * A listener that writes each event as one line of JSON to a stream and flushes once per batch.
+ * Use toFile for an append-only log or toSocket to feed a local consumer process, or open with an
+ * outbox.sink value, file:<path> or tcp:<host>:<port>.
+ */
+public class StreamEventSink implements ChangeEventListener, Closeable {
+    public static final String FILE_SCHEME = "file:";
+    public static final String TCP_SCHEME = "tcp:";
+
+    private final Writer out;
+    private final Closeable resource;
+
+    private StreamEventSink(OutputStream stream, Closeable resource) {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+        this.resource = resource;
+    }
+
+    /*
+     * opens the sink described by an outbox.sink value
+     */
+    public static StreamEventSink open(String spec) throws IOException {
+        if(spec.startsWith(FILE_SCHEME)) {
+            return toFile(Paths.get(spec.substring(FILE_SCHEME.length())));
+        }
+
+        if(spec.startsWith(TCP_SCHEME)) {
+            String hostPort = spec.substring(TCP_SCHEME.length());
+            int colon = hostPort.lastIndexOf(':');
+            return toSocket(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+        }
+
+        throw new IllegalArgumentException("Unknown event sink " + spec);
+    }
+
+    public static StreamEventSink toFile(Path file) throws IOException {
+        OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new StreamEventSink(stream, stream);
+    }
+
+    public static StreamEventSink toSocket(String host, int port) throws IOException {
+        Socket socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        return new StreamEventSink(socket.getOutputStream(), socket);
+    }
+
+    @Override
+    public synchronized void onEvents(List<ChangeEvent> events) throws IOException {
+        for(ChangeEvent event : events) {
+            out.write(event.toJson());
+            out.write('\n');
+        }
+
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        }
+        finally {
+            resource.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package projects.exception;
+
+/*
+ * Thrown without touching the database when the circuit breaker is open or an operation's
+ * bulkhead is full, and when one of several shards being read together cannot be reached. Callers
+ * should back off rather than retry immediately.
+ */
+@SuppressWarnings("serial")
+public class DbUnavailableException extends DbException {
+    
+    public DbUnavailableException(String message) {
+        super(message);
+    }
+
+    public DbUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,13 @@
+package projects.exception;
+
+/*
+ * Thrown when a write targets a project that has been moved to the archive. Archived projects can
+ * still be read but no longer changed, so this is not a database failure and retrying will not help.
+ */
+@SuppressWarnings("serial")
+public class ProjectArchivedException extends DbException {
+
+    public ProjectArchivedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,274 @@
+package projects.harness;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.service.ProjectService;
+
+/*
+ * Replays a weighted mix of ProjectService operations at a fixed arrival rate and writes
+ * per-second throughput and latency percentiles to CSV.
+ *
+ * The generator is open-loop: operation i is due at start + i / rate whether or not earlier ones
+ * have finished, and its latency is measured from that due time. A stall therefore shows up as
+ * queueing delay in every operation that was due during it instead of being hidden by the
+ * generator slowing down (coordinated omission).
+ *
+ * Arguments are key=value pairs, all optional:
+ *   rate=200             operations per second
+ *   duration=60          seconds to run
+ *   threads=16           worker threads
+ *   mix=fetchAllProjects:5,fetchProjectByID:60,addProject:20,modifyProjectDetails:10,deleteProject:5
+ *   csv=load-report.csv  output file
+ *   h2=false             run against a seeded in-memory stand-in instead of the configured database
+ *   seed=1000            projects to seed when h2=true
+ *
+ * Java 11 has no virtual threads, so the workers are a fixed pool of platform threads.
+ */
+public class LoadGenerator {
+    private static final List<String> OPERATIONS = List.of("fetchAllProjects", "fetchProjectByID", "addProject",
+            "modifyProjectDetails", "deleteProject");
+
+    private final ProjectService projectService = new ProjectService();
+    private final Map<String, String> options;
+    private final String[] schedule;
+    private final Map<String, Interval> intervals = new ConcurrentHashMap<>();
+    private final Queue<Integer> addedIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger maxKnownId = new AtomicInteger(1);
+
+    LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.schedule = buildSchedule(options.getOrDefault("mix",
+                "fetchAllProjects:5,fetchProjectByID:60,addProject:20,modifyProjectDetails:10,deleteProject:5"));
+
+        for(String operation : OPERATIONS) {
+            intervals.put(operation, new Interval());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+
+        for(String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            options.put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "true");
+        }
+
+        if(Boolean.parseBoolean(options.getOrDefault("h2", "false"))) {
+            TestDatabase.startH2();
+            TestDatabase.SeedSpec spec = new TestDatabase.SeedSpec();
+            spec.setProjects(Integer.parseInt(options.getOrDefault("seed", "1000")));
+            TestDatabase.seed(spec);
+        }
+
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    void run() throws IOException, InterruptedException {
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "60"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        Path csv = Paths.get(options.getOrDefault("csv", "load-report.csv"));
+
+        projectService.fetchAllProjects().forEach(p -> maxKnownId.accumulateAndGet(p.getProjectId(), Math::max));
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long intervalNanos = (long)(1_000_000_000L / rate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(duration);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        Random random = new Random(11);
+
+        try(BufferedWriter out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            out.write("second,operation,count,errors,throughput_per_sec,p50_ms,p90_ms,p99_ms,max_ms\n");
+
+            for(long i = 0;; i++) {
+                long due = start + i * intervalNanos;
+
+                while(System.nanoTime() >= nextReport) {
+                    report(out, (nextReport - start) / 1_000_000_000L);
+                    nextReport += TimeUnit.SECONDS.toNanos(1);
+                }
+
+                if(due >= end) {
+                    break;
+                }
+
+                long wait = due - System.nanoTime();
+                if(wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+
+                String operation = schedule[random.nextInt(schedule.length)];
+                workers.execute(() -> execute(operation, due));
+            }
+
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+
+            /* operations still in flight at the end are reported under the second in which they finished */
+            long elapsed = System.nanoTime() - start;
+            report(out, (elapsed + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+
+        System.out.println("Wrote " + csv.toAbsolutePath());
+    }
+
+    private void execute(String operation, long dueNanos) {
+        boolean failed = false;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        try {
+            switch(operation) {
+                case "fetchAllProjects":
+                    projectService.fetchAllProjects();
+                    break;
+                case "fetchProjectByID":
+                    projectService.fetchProjectByID(1 + random.nextInt(maxKnownId.get()));
+                    break;
+                case "addProject":
+                    Project project = projectService.addProjectWithDetails(randomProject(random));
+                    addedIds.add(project.getProjectId());
+                    maxKnownId.accumulateAndGet(project.getProjectId(), Math::max);
+                    break;
+                case "modifyProjectDetails":
+                    Project changes = randomProject(random);
+                    changes.setProjectId(1 + random.nextInt(maxKnownId.get()));
+                    projectService.modifyProjectDetails(changes);
+                    break;
+                case "deleteProject":
+                    Integer projectID = addedIds.poll();
+                    projectService.deleteProject(Objects.nonNull(projectID) ? projectID : 1 + random.nextInt(maxKnownId.get()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+        }
+        catch(RuntimeException e) {
+            failed = true;
+        }
+
+        intervals.get(operation).record(System.nanoTime() - dueNanos, failed);
+    }
+
+    /*
+     * a project with a realistic number of materials, steps and categories
+     */
+    private Project randomProject(ThreadLocalRandom random) {
+        Project project = new Project();
+        project.setProjectName("Load project " + random.nextInt(1_000_000));
+        project.setEstimatedHours(BigDecimal.valueOf(100 + random.nextInt(4000), 2));
+        project.setDifficulty(1 + random.nextInt(5));
+        project.setNotes(TestDatabase.filler(50 + random.nextInt(500)));
+
+        for(int i = 0, n = 1 + random.nextInt(8); i < n; i++) {
+            Material material = new Material();
+            material.setMaterialName("Material " + random.nextInt(500));
+            material.setNumRequired(1 + random.nextInt(20));
+            material.setCost(BigDecimal.valueOf(random.nextInt(10000), 2));
+            project.getMaterials().add(material);
+        }
+
+        for(int i = 0, n = 2 + random.nextInt(10); i < n; i++) {
+            Step step = new Step();
+            step.setStepText("Step " + (i + 1) + ": " + TestDatabase.filler(40 + random.nextInt(300)));
+            step.setStepOrder(i + 1);
+            project.getSteps().add(step);
+        }
+
+        for(int i = 0, n = random.nextInt(4); i < n; i++) {
+            Category category = new Category();
+            category.setCategoryName("Category " + (1 + random.nextInt(30)));
+            project.getCategories().add(category);
+        }
+
+        return project;
+    }
+
+    private void report(Writer out, long second) throws IOException {
+        for(String operation : OPERATIONS) {
+            long[] nanos = intervals.get(operation).drain();
+            int errors = (int)nanos[nanos.length - 1];
+            int count = nanos.length - 1;
+
+            if(count == 0) {
+                continue;
+            }
+
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+
+            out.write(String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f%n", second, operation, count, errors,
+                    count, millis(sorted, 0.50), millis(sorted, 0.90), millis(sorted, 0.99),
+                    sorted[count - 1] / 1_000_000.0));
+        }
+
+        out.flush();
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int)(sorted.length * percentile))] / 1_000_000.0;
+    }
+
+    /*
+     * expands "a:3,b:1" into an array with a three times and b once, for weighted random choice
+     */
+    private static String[] buildSchedule(String mix) {
+        List<String> schedule = new ArrayList<>();
+
+        for(String entry : mix.split(",")) {
+            String[] nameWeight = entry.trim().split(":");
+
+            if(!OPERATIONS.contains(nameWeight[0])) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + nameWeight[0]);
+            }
+
+            int weight = nameWeight.length > 1 ? Integer.parseInt(nameWeight[1]) : 1;
+            schedule.addAll(Collections.nCopies(weight, nameWeight[0]));
+        }
+
+        return schedule.toArray(new String[0]);
+    }
+
+    /*
+     * latencies recorded since the last report
+     */
+    private static class Interval {
+        private long[] nanos = new long[1024];
+        private int count;
+        private int errors;
+
+        synchronized void record(long latency, boolean failed) {
+            if(count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+
+            nanos[count++] = latency;
+
+            if(failed) {
+                errors++;
+            }
+        }
+
+        /*
+         * returns the latencies followed by the error count, and resets the interval
+         */
+        synchronized long[] drain() {
+            long[] result = Arrays.copyOf(nanos, count + 1);
+            result[count] = errors;
+            count = 0;
+            errors = 0;
+            return result;
+        }
+    }
+}
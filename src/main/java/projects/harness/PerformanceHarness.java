@@ -0,0 +1,145 @@
+package projects.harness;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+
+import projects.entity.Project;
+import projects.service.ProjectService;
+
+/*
+ * Runs each ProjectService operation against the seeded stand-in database, checks that it returns
+ * what it should, and compares the p95 latency to the budget in harness-budgets.properties. Exits
+ * with status 1 if any check fails, so it can fail a build (mvn -Pperf verify).
+ *
+ * Budgets can be overridden with -Dharness.budget.<operation>=<millis> and iterations with
+ * -Dharness.iterations. -Dharness.shards=<n> spreads the data over n in-memory databases.
+ */
+public class PerformanceHarness {
+    private final ProjectService projectService;
+    private final int iterations = Integer.getInteger("harness.iterations", 200);
+    private final Properties budgets = new Properties();
+    private final List<String> failures = new LinkedList<>();
+    private final Random random = new Random(7);
+    private final int seededProjects;
+
+    PerformanceHarness(int seededProjects) throws IOException {
+        this.projectService = new ProjectService();
+        this.seededProjects = seededProjects;
+
+        try(InputStream in = getClass().getResourceAsStream("/harness-budgets.properties")) {
+            budgets.load(in);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        TestDatabase.startH2Shards(Integer.getInteger("harness.shards", 1));
+        TestDatabase.SeedSpec spec = new TestDatabase.SeedSpec();
+        TestDatabase.seed(spec);
+
+        PerformanceHarness harness = new PerformanceHarness(spec.getProjects());
+        harness.runAll();
+
+        if(!harness.failures.isEmpty()) {
+            System.out.println("\nPerformance harness FAILED:");
+            harness.failures.forEach(failure -> System.out.println("   " + failure));
+            System.exit(1);
+        }
+
+        System.out.println("\nPerformance harness passed.");
+        System.exit(0);
+    }
+
+    void runAll() {
+        List<Integer> inserted = new ArrayList<>();
+
+        measure("insertProject", () -> {
+            Project project = projectService.addProject(newProject());
+            check(Objects.nonNull(project.getProjectId()), "insertProject did not set an ID");
+            inserted.add(project.getProjectId());
+        });
+
+        measure("fetchProjectByID", () -> {
+            Project project = projectService.fetchProjectByID(1 + random.nextInt(seededProjects));
+            check(!project.getMaterials().isEmpty() || !project.getSteps().isEmpty(),
+                    "fetchProjectByID returned project " + project.getProjectId() + " without details");
+        });
+
+        measure("fetchAllProjects", () -> {
+            List<Project> projects = projectService.fetchAllProjects();
+            check(projects.size() >= seededProjects, "fetchAllProjects returned " + projects.size() + " projects");
+        });
+
+        measure("modifyProjectDetails", () -> {
+            Project project = newProject();
+            project.setProjectId(1 + random.nextInt(seededProjects));
+            projectService.modifyProjectDetails(project);
+        });
+
+        Iterator<Integer> toDelete = inserted.iterator();
+        measure("deleteProject", () -> {
+            if(toDelete.hasNext()) {
+                projectService.deleteProject(toDelete.next());
+            }
+        });
+
+        measure("assignCategories", () -> {
+            Map<Integer, Set<String>> tags = new HashMap<>();
+            for(int i = 0; i < 50; i++) {
+                tags.put(1 + random.nextInt(seededProjects), Set.of("Category " + (1 + random.nextInt(30))));
+            }
+            projectService.assignCategories(tags);
+        });
+    }
+
+    /*
+     * runs the operation a few times to warm up, then times it and checks the p95 against the budget
+     */
+    private void measure(String operation, Runnable action) {
+        int warmup = Math.max(1, iterations / 10);
+        long[] nanos = new long[iterations];
+
+        try {
+            for(int i = 0; i < warmup; i++) {
+                action.run();
+            }
+
+            for(int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                action.run();
+                nanos[i] = System.nanoTime() - start;
+            }
+        }
+        catch(RuntimeException e) {
+            failures.add(operation + " threw " + e);
+            return;
+        }
+
+        Arrays.sort(nanos);
+        double p50 = nanos[iterations / 2] / 1_000_000.0;
+        double p95 = nanos[(int)(iterations * 0.95)] / 1_000_000.0;
+        double budget = Double.parseDouble(
+                System.getProperty("harness.budget." + operation, budgets.getProperty(operation, "1000")));
+
+        System.out.printf("%-22s n=%d p50=%.3fms p95=%.3fms budget=%.1fms%n", operation, iterations, p50, p95, budget);
+
+        if(p95 > budget) {
+            failures.add(String.format("%s p95 %.3fms exceeds budget %.1fms", operation, p95, budget));
+        }
+    }
+
+    private void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private Project newProject() {
+        Project project = new Project();
+        project.setProjectName("Harness project " + random.nextInt(1_000_000));
+        project.setEstimatedHours(BigDecimal.valueOf(random.nextInt(5000), 2));
+        project.setDifficulty(1 + random.nextInt(5));
+        project.setNotes(TestDatabase.filler(200));
+        return project;
+    }
+}
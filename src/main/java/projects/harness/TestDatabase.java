@@ -0,0 +1,351 @@
+package projects.harness;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+
+import projects.dao.DbConnection;
+import projects.dao.IdBlockAllocator;
+import projects.dao.ShardRouter;
+import projects.exception.DbException;
+import projects.migration.Migration;
+
+/*
+ * Points the application at a stand-in database, creates the schema from projects-schema.sql and
+ * fills it with synthetic data. The default stand-in is an in-memory H2 database in MySQL mode,
+ * which needs the H2 driver on the classpath (see the perf profile in pom.xml). Any other JDBC URL,
+ * including a throwaway MySQL schema, can be given instead. startH2Shards spreads the data over
+ * several in-memory databases to exercise sharding.
+ *
+ * start must be called before anything else touches DbConnection, because the database settings
+ * are read when DbConnection is first used.
+ */
+public class TestDatabase {
+    public static final String H2_URL = "jdbc:h2:mem:projects;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    public static final String H2_SHARD_URL = "jdbc:h2:mem:projects_%d;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static final Random RANDOM = new Random(42);
+
+    /*
+     * how much synthetic data to create
+     */
+    public static class SeedSpec {
+        private int projects = Integer.getInteger("harness.projects", 1000);
+        private int materialsPerProject = Integer.getInteger("harness.materialsPerProject", 5);
+        private int stepsPerProject = Integer.getInteger("harness.stepsPerProject", 5);
+        private int categories = Integer.getInteger("harness.categories", 20);
+        private int categoriesPerProject = Integer.getInteger("harness.categoriesPerProject", 2);
+
+        public int getProjects() {
+            return projects;
+        }
+
+        public void setProjects(int projects) {
+            this.projects = projects;
+        }
+
+        public int getMaterialsPerProject() {
+            return materialsPerProject;
+        }
+
+        public void setMaterialsPerProject(int materialsPerProject) {
+            this.materialsPerProject = materialsPerProject;
+        }
+
+        public int getStepsPerProject() {
+            return stepsPerProject;
+        }
+
+        public void setStepsPerProject(int stepsPerProject) {
+            this.stepsPerProject = stepsPerProject;
+        }
+
+        public int getCategories() {
+            return categories;
+        }
+
+        public void setCategories(int categories) {
+            this.categories = categories;
+        }
+
+        public int getCategoriesPerProject() {
+            return categoriesPerProject;
+        }
+
+        public void setCategoriesPerProject(int categoriesPerProject) {
+            this.categoriesPerProject = categoriesPerProject;
+        }
+
+        @Override
+        public String toString() {
+            return "projects=" + projects + ", materialsPerProject=" + materialsPerProject + ", stepsPerProject="
+                    + stepsPerProject + ", categories=" + categories + ", categoriesPerProject=" + categoriesPerProject;
+        }
+    }
+
+    /*
+     * configures DbConnection for the given URL and creates the schema on every shard
+     */
+    public static void start(String url, String user, String password) {
+        System.setProperty("projects.db.url", url);
+        System.setProperty("projects.db.user", user);
+        System.setProperty("projects.db.password", password);
+        System.setProperty("projects.config.reloadMillis", "0");
+
+        applySchema();
+    }
+
+    public static void startH2() {
+        start(System.getProperty("harness.url", H2_URL), "sa", "");
+    }
+
+    /*
+     * as startH2, with shard 0 there and the other shards in in-memory databases of their own
+     */
+    public static void startH2Shards(int shards) {
+        List<String> urls = new ArrayList<>();
+
+        for(int shard = 1; shard < shards; shard++) {
+            urls.add(String.format(H2_SHARD_URL, shard));
+        }
+
+        System.setProperty("projects.shard.urls", String.join(",", urls));
+        startH2();
+    }
+
+    /*
+     * runs projects-schema.sql, which drops and recreates every table, on every shard
+     */
+    public static void applySchema() {
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            applySchema(shard);
+        }
+    }
+
+    private static void applySchema(int shard) {
+        try(InputStream in = TestDatabase.class.getResourceAsStream("/projects-schema.sql")) {
+            if(Objects.isNull(in)) {
+                throw new DbException("projects-schema.sql not found on the classpath");
+            }
+
+            String script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+
+            try(Connection conn = DbConnection.getConnection(shard); Statement stmt = conn.createStatement()) {
+                for(String sql : Migration.splitStatements(script)) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+        catch(IOException | SQLException e) {
+            throw new DbException("Unable to create the test schema", e);
+        }
+    }
+
+    /*
+     * inserts synthetic projects with their materials, steps and categories in large batches. With
+     * client-side IDs, projects, materials and steps get their IDs from IdBlockAllocator. With
+     * sharding, the projects are spread as ShardRouter says and every shard gets its own copy of
+     * the categories.
+     */
+    public static void seed(SeedSpec spec) {
+        long start = System.nanoTime();
+        List<Connection> conns = new ArrayList<>();
+
+        try {
+            for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+                Connection conn = DbConnection.getConnection(shard);
+                conns.add(conn);
+                conn.setAutoCommit(false);
+            }
+
+            List<List<Integer>> categoryIds = new ArrayList<>();
+            for(Connection conn : conns) {
+                categoryIds.add(insertCategories(conn, spec.getCategories()));
+            }
+
+            List<List<Integer>> projectIds = insertProjects(conns, spec.getProjects());
+
+            for(int shard = 0; shard < conns.size(); shard++) {
+                insertDetails(conns.get(shard), projectIds.get(shard), categoryIds.get(shard), spec);
+                conns.get(shard).commit();
+            }
+        }
+        catch(SQLException e) {
+            throw new DbException("Unable to seed the test database", e);
+        }
+        finally {
+            close(conns);
+        }
+
+        System.out.printf("Seeded %s in %d ms%n", spec, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void insertDetails(Connection conn, List<Integer> projectIds, List<Integer> categoryIds,
+            SeedSpec spec) throws SQLException {
+        boolean clientIds = IdBlockAllocator.isClientSide();
+        String materialId = clientIds ? "material_id, " : "";
+        String stepId = clientIds ? "step_id, " : "";
+        String id = clientIds ? "?, " : "";
+
+        try(PreparedStatement materials = conn.prepareStatement("INSERT INTO material (" + materialId
+                + "project_id, material_name, num_required, cost) VALUES (" + id + "?, ?, ?, ?)");
+                PreparedStatement steps = conn.prepareStatement(
+                        "INSERT INTO step (" + stepId + "project_id, step_text, step_order) VALUES (" + id + "?, ?, ?)");
+                PreparedStatement links = conn.prepareStatement(
+                        "INSERT INTO project_category (project_id, category_id) VALUES (?, ?)")) {
+            int pending = 0;
+
+            for(Integer projectId : projectIds) {
+                for(int m = 1; m <= spec.getMaterialsPerProject(); m++) {
+                    int index = 1;
+                    if(clientIds) {
+                        materials.setInt(index++, IdBlockAllocator.MATERIALS.next());
+                    }
+                    materials.setInt(index++, projectId);
+                    materials.setString(index++, "Material " + m);
+                    materials.setInt(index++, 1 + RANDOM.nextInt(10));
+                    materials.setBigDecimal(index++, BigDecimal.valueOf(RANDOM.nextInt(10000), 2));
+                    materials.addBatch();
+                }
+
+                for(int s = 1; s <= spec.getStepsPerProject(); s++) {
+                    int index = 1;
+                    if(clientIds) {
+                        steps.setInt(index++, IdBlockAllocator.STEPS.next());
+                    }
+                    steps.setInt(index++, projectId);
+                    steps.setString(index++, "Step " + s + " of project " + projectId + ": " + filler(200));
+                    steps.setInt(index++, s);
+                    steps.addBatch();
+                }
+
+                int first = RANDOM.nextInt(Math.max(1, categoryIds.size()));
+                for(int c = 0; c < Math.min(spec.getCategoriesPerProject(), categoryIds.size()); c++) {
+                    links.setInt(1, projectId);
+                    links.setInt(2, categoryIds.get((first + c) % categoryIds.size()));
+                    links.addBatch();
+                }
+
+                if(++pending % 500 == 0) {
+                    materials.executeBatch();
+                    steps.executeBatch();
+                    links.executeBatch();
+                }
+            }
+
+            materials.executeBatch();
+            steps.executeBatch();
+            links.executeBatch();
+        }
+    }
+
+    private static List<Integer> insertCategories(Connection conn, int count) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement("INSERT INTO category (category_name) VALUES (?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for(int i = 1; i <= count; i++) {
+                stmt.setString(1, "Category " + i);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+            return generatedKeys(stmt);
+        }
+    }
+
+    /*
+     * the IDs of the new projects on each shard
+     */
+    private static List<List<Integer>> insertProjects(List<Connection> conns, int count) throws SQLException {
+        ShardRouter router = DbConnection.getShardRouter();
+        boolean clientIds = IdBlockAllocator.isClientSide();
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO project "
+            + "(" + (clientIds ? "project_id, " : "") + "project_name, estimated_hours, actual_hours, difficulty, notes) "
+            + "VALUES "
+            + "(" + (clientIds ? "?, " : "") + "?, ?, ?, ?, ?)";
+        //@formatter:on
+        List<PreparedStatement> stmts = new ArrayList<>();
+        List<List<Integer>> ids = new ArrayList<>();
+
+        try {
+            for(Connection conn : conns) {
+                stmts.add(conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS));
+                ids.add(new ArrayList<>());
+            }
+
+            for(int i = 1; i <= count; i++) {
+                Integer projectId = clientIds ? IdBlockAllocator.PROJECTS.next() : null;
+                int shard = router.shardFor(projectId);
+                PreparedStatement stmt = stmts.get(shard);
+                int index = 1;
+
+                if(clientIds) {
+                    stmt.setInt(index++, projectId);
+                    ids.get(shard).add(projectId);
+                }
+
+                stmt.setString(index++, "Project " + i);
+                stmt.setBigDecimal(index++, BigDecimal.valueOf(100 + RANDOM.nextInt(4000), 2));
+                stmt.setBigDecimal(index++, RANDOM.nextBoolean() ? BigDecimal.valueOf(RANDOM.nextInt(5000), 2) : null);
+                stmt.setInt(index++, 1 + RANDOM.nextInt(5));
+                stmt.setString(index++, filler(100 + RANDOM.nextInt(400)));
+                stmt.addBatch();
+
+                if(i % 1000 == 0 || i == count) {
+                    for(int s = 0; s < stmts.size(); s++) {
+                        stmts.get(s).executeBatch();
+
+                        if(!clientIds) {
+                            ids.get(s).addAll(generatedKeys(stmts.get(s)));
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            close(stmts);
+        }
+
+        return ids;
+    }
+
+    private static void close(List<? extends AutoCloseable> resources) {
+        for(AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            }
+            catch(Exception e) {
+                /* nothing more can be done with it */
+            }
+        }
+    }
+
+    private static List<Integer> generatedKeys(Statement stmt) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+
+        try(ResultSet rs = stmt.getGeneratedKeys()) {
+            while(rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+
+        return ids;
+    }
+
+    /*
+     * deterministic filler text of the given length
+     */
+    static String filler(int length) {
+        String words = "lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod tempor ";
+        StringBuilder text = new StringBuilder(length);
+
+        while(text.length() < length) {
+            text.append(words);
+        }
+
+        return text.substring(0, length);
+    }
+}
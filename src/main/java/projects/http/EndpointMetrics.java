@@ -0,0 +1,76 @@
+package projects.http;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Request counters for one endpoint. Latencies go into power-of-two microsecond buckets, so
+ * recording is lock-free and the percentiles are upper bounds accurate to within a factor of two.
+ */
+class EndpointMetrics {
+    private static final int BUCKETS = 32;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    EndpointMetrics() {
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    /*
+     * records a finished request. Responses with a 5xx status count as errors.
+     */
+    void end(long nanos, int status) {
+        inFlight.decrementAndGet();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+
+        if(status >= 500) {
+            errors.increment();
+        }
+
+        long micros = Math.max(1, nanos / 1000);
+        buckets[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros))].increment();
+    }
+
+    /*
+     * the counters as a JSON object. Throughput is averaged over the server's uptime.
+     */
+    String toJson(double uptimeSeconds) {
+        long n = count.sum();
+        double mean = n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+
+        return String.format(Locale.ROOT,
+                "{\"count\":%d,\"errors\":%d,\"inFlight\":%d,\"throughputPerSec\":%.2f,\"meanMillis\":%.3f,"
+                        + "\"p50Millis\":%.3f,\"p99Millis\":%.3f,\"maxMillis\":%.3f}",
+                n, errors.sum(), inFlight.get(), uptimeSeconds > 0 ? n / uptimeSeconds : 0, mean, percentile(n, 0.50),
+                percentile(n, 0.99), maxNanos.get() / 1_000_000.0);
+    }
+
+    private double percentile(long n, double fraction) {
+        long rank = (long)Math.ceil(n * fraction);
+        long seen = 0;
+
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+
+            if(seen >= rank && seen > 0) {
+                return (1L << (i + 1)) / 1000.0;
+            }
+        }
+
+        return 0;
+    }
+}
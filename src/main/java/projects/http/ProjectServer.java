@@ -0,0 +1,637 @@
+package projects.http;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import projects.Bootstrap;
+import projects.config.DbConfig;
+import projects.dao.CircuitBreaker;
+import projects.dao.ConnectionPool;
+import projects.dao.DbConnection;
+import projects.dao.FetchTuner;
+import projects.dao.ProjectRowsHandler;
+import projects.dao.QueryResultCache;
+import projects.dao.TransactionExecutor;
+import projects.entity.Project;
+import projects.exception.DbException;
+import projects.exception.DbUnavailableException;
+import projects.exception.ProjectArchivedException;
+import projects.jfr.Profiler;
+import projects.service.ProjectService;
+import projects.util.BufferPool;
+import projects.util.Json;
+import projects.util.JsonStreamWriter;
+import projects.util.ProjectJson;
+import projects.util.ProjectJsonStream;
+
+/*
+ * Serves ProjectService as JSON over HTTP on the JDK's built-in server.
+ *
+ *   GET    /projects                 every project without details, streamed
+ *   POST   /projects                 adds a project, e.g. {"projectName":"Shelf","difficulty":2}
+ *   GET    /projects/{id}            the project with its details, streamed, honouring If-None-Match;
+ *                                    an archived project is unpacked from the archive instead
+ *   PUT    /projects/{id}            changes the fields given in the body
+ *   DELETE /projects/{id}
+ *   POST   /projects/{id}/undelete
+ *   GET    /metrics                  per-endpoint request counters, cache, query cache, circuit breaker,
+ *                                    pool, shard, bulkhead and fetch-size metrics
+ *   POST   /profile/start            starts the flight recording (see Profiler)
+ *   POST   /profile/dump             writes the recording to jfr.dir and returns a summary of it
+ *   POST   /profile/stop
+ *
+ * There is no authentication, so the server listens on http.bindAddress, the loopback interface
+ * unless configured otherwise, and the /profile routes, which write files on the server, answer
+ * 404 unless http.profiling=true.
+ *
+ * PUT, DELETE and undelete on an archived project are refused with 409 Conflict.
+ *
+ * main runs the same startup as ProjectsApp (see Bootstrap): migrations when migrate.onStartup,
+ * the purger, the archiver when archive.enabled, and the outbox relay and trimmer.
+ *
+ * The entity tag of a project is its row version, so a conditional GET that still matches is
+ * answered with one primary-key lookup instead of loading materials, steps and categories.
+ * Responses of at least http.gzipMinBytes are gzipped when the client accepts it.
+ *
+ * Java 11 has no virtual threads, so requests run on a fixed pool of http.threads platform
+ * threads. Each request holds a database connection while it runs, so size this together with
+ * pool.maxSize. When the circuit breaker is open or a bulkhead is full, requests get 503 with
+ * Retry-After at once instead of queueing.
+ */
+public class ProjectServer {
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int PROFILE_SUMMARY_LIMIT = 25;
+    private static final List<String> FIELDS = List.of("projectName", "estimatedHours", "actualHours", "difficulty",
+            "notes");
+
+    private final ProjectService projectService;
+    private final Map<String, EndpointMetrics> metrics = new ConcurrentSkipListMap<>();
+    private final long startedNanos = System.nanoTime();
+    private final int gzipMinBytes;
+    private HttpServer server;
+    private ExecutorService workers;
+
+    /*
+     * the work behind one endpoint. It sends the response and returns its status code.
+     */
+    @FunctionalInterface
+    private interface Handler {
+        int handle(HttpExchange exchange) throws IOException;
+    }
+
+    public ProjectServer(ProjectService projectService) {
+        this.projectService = projectService;
+        this.gzipMinBytes = DbConnection.getConfig().getInt("http.gzipMinBytes");
+    }
+
+    public static void main(String[] args) throws IOException {
+        DbConfig config = DbConnection.getConfig();
+        Bootstrap.start();
+        ProjectServer server = new ProjectServer(new ProjectService());
+
+        if(config.getBoolean("jfr.onStartup")) {
+            Profiler.start();
+        }
+
+        server.start(config.getInt("http.port"), config.getInt("http.threads"));
+        System.err.println("Serving projects on " + server.getAddress());
+    }
+
+    /*
+     * listens on http.bindAddress
+     */
+    public void start(int port, int threads) throws IOException {
+        DbConfig config = DbConnection.getConfig();
+        AtomicInteger number = new AtomicInteger();
+
+        workers = Executors.newFixedThreadPool(threads, r -> new Thread(r, "http-worker-" + number.incrementAndGet()));
+        server = HttpServer.create(new InetSocketAddress(config.getString("http.bindAddress"), port), 0);
+        server.setExecutor(workers);
+        server.createContext("/projects", this::routeProjects);
+        server.createContext("/metrics", this::routeMetrics);
+        server.createContext("/profile", this::routeProfile);
+        server.start();
+    }
+
+    /*
+     * stops accepting requests and waits up to the delay for those in progress
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void routeProjects(HttpExchange exchange) {
+        String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+        String route = exchange.getRequestMethod() + (path.length > 2 ? " /projects/{id}" : " /projects")
+            + (path.length > 3 ? "/" + path[3] : "");
+
+        switch(path.length > 4 || !path[1].equals("projects") ? "" : route) {
+            case "GET /projects":
+                timed(route, exchange, this::listProjects);
+                break;
+            case "POST /projects":
+                timed(route, exchange, this::addProject);
+                break;
+            case "GET /projects/{id}":
+                timed(route, exchange, this::getProject);
+                break;
+            case "PUT /projects/{id}":
+                timed(route, exchange, this::modifyProject);
+                break;
+            case "DELETE /projects/{id}":
+                timed(route, exchange, this::deleteProject);
+                break;
+            case "POST /projects/{id}/undelete":
+                timed(route, exchange, this::undeleteProject);
+                break;
+            default:
+                timed("unmatched", exchange, ex -> sendError(ex, 404, "No route for " + exchange.getRequestMethod()
+                    + " " + exchange.getRequestURI().getPath()));
+                break;
+        }
+    }
+
+    private void routeMetrics(HttpExchange exchange) {
+        timed("GET /metrics", exchange, ex -> {
+            double uptimeSeconds = (System.nanoTime() - startedNanos) / 1_000_000_000.0;
+            StringBuilder json = new StringBuilder(String.format(Locale.ROOT, "{\"uptimeSeconds\":%.1f,\"endpoints\":{",
+                    uptimeSeconds));
+            String separator = "";
+
+            for(Map.Entry<String, EndpointMetrics> entry : metrics.entrySet()) {
+                json.append(separator).append(Json.quote(entry.getKey())).append(':')
+                    .append(entry.getValue().toJson(uptimeSeconds));
+                separator = ",";
+            }
+
+            json.append("},\"cache\":{");
+            separator = "";
+
+            for(Map.Entry<String, Long> entry : projectService.getCacheMetrics().entrySet()) {
+                json.append(separator).append(Json.quote(entry.getKey())).append(':').append(entry.getValue());
+                separator = ",";
+            }
+
+            json.append("},\"queryCache\":{");
+            separator = "";
+
+            for(Map.Entry<String, Long> entry : QueryResultCache.SHARED.getMetrics().entrySet()) {
+                json.append(separator).append(Json.quote(entry.getKey())).append(':').append(entry.getValue());
+                separator = ",";
+            }
+
+            CircuitBreaker breaker = DbConnection.getCircuitBreaker();
+            ConnectionPool pool = DbConnection.getPrimaryPool();
+
+            json.append("},\"database\":{\"breaker\":").append(Json.quote(breaker.getState().name()));
+            breaker.getMetrics().forEach((key, value) -> json.append(',').append(Json.quote("breaker." + key)).append(':')
+                .append(value));
+            json.append(",\"pool.active\":").append(pool.getActiveCount()).append(",\"pool.idle\":")
+                .append(pool.getIdleCount()).append(",\"pool.maxSize\":").append(pool.getMaxSize());
+
+            /* the primary is shard 0 and is reported above */
+            List<ConnectionPool> shardPools = DbConnection.getShardPools();
+            List<CircuitBreaker> shardBreakers = DbConnection.getShardBreakers();
+            Map<String, String> shards = new TreeMap<>();
+
+            for(int shard = 1; shard < shardPools.size(); shard++) {
+                ConnectionPool shardPool = shardPools.get(shard);
+                shards.put(String.valueOf(shard), "breaker=" + shardBreakers.get(shard).getState() + ", active="
+                        + shardPool.getActiveCount() + ", idle=" + shardPool.getIdleCount());
+            }
+
+            json.append("},\"shards\":");
+            appendStrings(json, shards);
+            json.append(",\"bulkheads\":");
+            appendStrings(json, TransactionExecutor.getBulkheadStats());
+            json.append(",\"fetch\":");
+            appendStrings(json, FetchTuner.getStats());
+
+            return send(ex, 200, json.append('}').toString());
+        });
+    }
+
+    /*
+     * controls the flight recording of this process (see Profiler)
+     */
+    private void routeProfile(HttpExchange exchange) {
+        String route = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath().replaceAll("/+$", "");
+
+        if(!DbConnection.getConfig().getBoolean("http.profiling")) {
+            timed("unmatched", exchange, ex -> sendError(ex, 404, "No route for " + route + " (http.profiling is off)"));
+            return;
+        }
+
+        switch(route) {
+            case "POST /profile/start":
+                timed(route, exchange, ex -> {
+                    Profiler.start();
+                    return send(ex, 200, "{\"recording\":\"running\"}");
+                });
+                break;
+            case "POST /profile/dump":
+                timed(route, exchange, ex -> {
+                    Path file = Profiler.dump();
+                    StringBuilder json = new StringBuilder("{\"file\":").append(Json.quote(file.toString()))
+                        .append(",\"summary\":");
+                    appendStrings(json, Profiler.summarize(file, PROFILE_SUMMARY_LIMIT));
+                    return send(ex, 200, json.append('}').toString());
+                });
+                break;
+            case "POST /profile/stop":
+                timed(route, exchange, ex -> {
+                    Profiler.stop();
+                    return send(ex, 200, "{\"recording\":\"stopped\"}");
+                });
+                break;
+            default:
+                timed("unmatched", exchange, ex -> sendError(ex, 404, "No route for " + route));
+                break;
+        }
+    }
+
+    private static void appendStrings(StringBuilder json, Map<String, String> values) {
+        String separator = "";
+        json.append('{');
+
+        for(Map.Entry<String, String> entry : values.entrySet()) {
+            json.append(separator).append(Json.quote(entry.getKey())).append(':').append(Json.quote(entry.getValue()));
+            separator = ",";
+        }
+
+        json.append('}');
+    }
+
+    /*
+     * runs the handler, turns exceptions into error responses and records the request
+     */
+    private void timed(String endpoint, HttpExchange exchange, Handler handler) {
+        EndpointMetrics endpointMetrics = metrics.computeIfAbsent(endpoint, name -> new EndpointMetrics());
+        long start = System.nanoTime();
+        int status = 500;
+
+        endpointMetrics.begin();
+
+        try {
+            status = handler.handle(exchange);
+        }
+        catch(NoSuchElementException e) {
+            status = sendError(exchange, 404, e.getMessage());
+        }
+        catch(IllegalArgumentException e) {
+            status = sendError(exchange, 400, e.getMessage());
+        }
+        catch(DbUnavailableException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            status = sendError(exchange, 503, e.getMessage());
+        }
+        catch(IllegalStateException | ProjectArchivedException e) {
+            status = sendError(exchange, 409, e.getMessage());
+        }
+        catch(RuntimeException | IOException e) {
+            status = sendError(exchange, 500, String.valueOf(e.getMessage()));
+        }
+        finally {
+            exchange.close();
+            endpointMetrics.end(System.nanoTime() - start, status);
+        }
+    }
+
+    /*
+     * Writes the projects from the result set as they are read, without building Project objects
+     * or the response as a String. The status line goes out only once the query has succeeded, so
+     * a failing query still gets a proper error response; a failure after that can only cut the
+     * response off.
+     */
+    private int listProjects(HttpExchange exchange) throws IOException {
+        projectService.streamAllProjects(rs -> {
+            try(OutputStream body = openStream(exchange); JsonStreamWriter json = new JsonStreamWriter(body, BufferPool.SHARED)) {
+                ProjectJsonStream.writeSummaries(rs, json);
+            }
+        });
+        return 200;
+    }
+
+    private int addProject(HttpExchange exchange) throws IOException {
+        Project project = new Project();
+        applyFields(project, readBody(exchange));
+
+        Project dbProject = projectService.addProject(project);
+
+        exchange.getResponseHeaders().set("Location", "/projects/" + dbProject.getProjectId());
+        exchange.getResponseHeaders().set("ETag", etag(dbProject.getProjectId(), dbProject.getVersion()));
+        return send(exchange, 201, ProjectJson.summary(dbProject));
+    }
+
+    private int getProject(HttpExchange exchange) throws IOException {
+        Integer projectID = projectId(exchange);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+
+        if(Objects.nonNull(ifNoneMatch)) {
+            Integer version = projectService.fetchProjectVersion(projectID)
+                .orElseThrow(() -> new NoSuchElementException("Project with project ID=" + projectID + " does not exist."));
+            String etag = etag(projectID, version);
+
+            if(matches(ifNoneMatch, etag)) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return 304;
+            }
+        }
+
+        /* the near cache, when there is one, saves more than streaming would */
+        if(projectService.hasNearCache()) {
+            Project project = projectService.fetchProjectByID(projectID);
+            exchange.getResponseHeaders().set("ETag", etag(projectID, project.getVersion()));
+            return send(exchange, 200, ProjectJson.full(project));
+        }
+
+        StreamedProject streamed = new StreamedProject(exchange);
+        boolean found;
+
+        try(streamed) {
+            found = projectService.streamProjectByID(projectID, streamed);
+        }
+
+        /* not in the project table, so it may be archived; this throws if it is not there either */
+        if(!found) {
+            Project project = projectService.fetchProjectByID(projectID);
+            exchange.getResponseHeaders().set("ETag", etag(projectID, project.getVersion()));
+            return send(exchange, 200, ProjectJson.full(project));
+        }
+        return 200;
+    }
+
+    /*
+     * sends the status line and entity tag when the project row arrives, then writes the project
+     * and its details straight from the result sets
+     */
+    private class StreamedProject implements ProjectRowsHandler, Closeable {
+        private final HttpExchange exchange;
+        private OutputStream body;
+        private JsonStreamWriter json;
+        private ProjectJsonStream writer;
+
+        StreamedProject(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void project(ResultSet rs) throws SQLException, IOException {
+            exchange.getResponseHeaders().set("ETag", etag(rs.getInt("project_id"), rs.getInt("version")));
+            body = openStream(exchange);
+            json = new JsonStreamWriter(body, BufferPool.SHARED);
+            writer = new ProjectJsonStream(json);
+            writer.project(rs);
+        }
+
+        @Override
+        public void materials(ResultSet rs) throws SQLException, IOException {
+            writer.materials(rs);
+        }
+
+        @Override
+        public void steps(ResultSet rs) throws SQLException, IOException {
+            writer.steps(rs);
+        }
+
+        @Override
+        public void categories(ResultSet rs) throws SQLException, IOException {
+            writer.categories(rs);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(Objects.nonNull(json)) {
+                try {
+                    json.close();
+                }
+                finally {
+                    body.close();
+                }
+            }
+        }
+    }
+
+    /*
+     * applies the fields in the body on top of the current values. The fetched project is copied
+     * first because it may be the instance held by the near cache.
+     */
+    private int modifyProject(HttpExchange exchange) throws IOException {
+        Integer projectID = projectId(exchange);
+        Map<String, Object> fields = readBody(exchange);
+        Project current = projectService.fetchProjectByID(projectID);
+
+        Project changes = new Project();
+        changes.setProjectId(projectID);
+        changes.setProjectName(current.getProjectName());
+        changes.setEstimatedHours(current.getEstimatedHours());
+        changes.setActualHours(current.getActualHours());
+        changes.setDifficulty(current.getDifficulty());
+        changes.setNotes(current.getNotes());
+        applyFields(changes, fields);
+
+        projectService.modifyProjectDetails(changes);
+        exchange.sendResponseHeaders(204, -1);
+        return 204;
+    }
+
+    private int deleteProject(HttpExchange exchange) throws IOException {
+        Integer projectID = projectId(exchange);
+
+        if(projectService.fetchProjectVersion(projectID).isEmpty()) {
+            throw new NoSuchElementException("Project with project ID=" + projectID + " does not exist.");
+        }
+
+        projectService.deleteProject(projectID);
+        exchange.sendResponseHeaders(204, -1);
+        return 204;
+    }
+
+    private int undeleteProject(HttpExchange exchange) throws IOException {
+        try {
+            projectService.undeleteProject(projectId(exchange));
+        }
+        catch(DbException e) {
+            /* without a cause the project simply was not restorable; with one the database failed */
+            if(Objects.nonNull(e.getCause())) {
+                throw e;
+            }
+            return sendError(exchange, 409, e.getMessage());
+        }
+
+        exchange.sendResponseHeaders(204, -1);
+        return 204;
+    }
+
+    private static Integer projectId(HttpExchange exchange) {
+        String id = exchange.getRequestURI().getPath().split("/")[2];
+
+        try {
+            return Integer.valueOf(id);
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException(id + " is not a valid project ID");
+        }
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+
+        if(body.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+
+        return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static void applyFields(Project project, Map<String, Object> fields) {
+        for(Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+
+            if(!FIELDS.contains(field.getKey())) {
+                throw new IllegalArgumentException("Unknown field: " + field.getKey());
+            }
+
+            boolean text = field.getKey().equals("projectName") || field.getKey().equals("notes");
+            if(Objects.nonNull(value) && !(text ? value instanceof String : value instanceof BigDecimal)) {
+                throw new IllegalArgumentException(value + " is not a valid value for " + field.getKey());
+            }
+
+            try {
+                switch(field.getKey()) {
+                    case "projectName":
+                        project.setProjectName((String)value);
+                        break;
+                    case "estimatedHours":
+                        project.setEstimatedHours(Objects.isNull(value) ? null : ((BigDecimal)value).setScale(2));
+                        break;
+                    case "actualHours":
+                        project.setActualHours(Objects.isNull(value) ? null : ((BigDecimal)value).setScale(2));
+                        break;
+                    case "difficulty":
+                        project.setDifficulty(Objects.isNull(value) ? null : ((BigDecimal)value).intValueExact());
+                        break;
+                    default:
+                        project.setNotes((String)value);
+                        break;
+                }
+            }
+            catch(ArithmeticException e) {
+                throw new IllegalArgumentException(value + " is not a valid value for " + field.getKey());
+            }
+        }
+    }
+
+    /*
+     * Weak, because the same version is served both plain and gzipped
+     */
+    private static String etag(Integer projectID, Integer version) {
+        return "W/\"" + projectID + "-" + version + "\"";
+    }
+
+    private static boolean matches(String header, String etag) {
+        String opaque = etag.substring(2);
+
+        for(String candidate : header.split(",")) {
+            String tag = candidate.trim();
+
+            if(tag.equals("*") || tag.equals(etag) || tag.equals(opaque)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean acceptsGzip(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return Objects.nonNull(accept) && accept.contains("gzip");
+    }
+
+    /*
+     * sends the status line for a body of unknown length and returns the stream to write it to
+     */
+    private OutputStream openStream(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", JSON_TYPE);
+        headers.set("Vary", "Accept-Encoding");
+
+        if(acceptsGzip(exchange)) {
+            headers.set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            return new GZIPOutputStream(exchange.getResponseBody(), BufferPool.SHARED.getBufferSize());
+        }
+
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private int send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", JSON_TYPE);
+        headers.set("Vary", "Accept-Encoding");
+
+        if(body.length >= gzipMinBytes && acceptsGzip(exchange)) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+
+            try(GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+
+            body = compressed.toByteArray();
+            headers.set("Content-Encoding", "gzip");
+        }
+
+        exchange.sendResponseHeaders(status, body.length);
+
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+
+        return status;
+    }
+
+    /*
+     * sends {"error": message} unless the status line has already gone out, in which case the
+     * response can only be cut short
+     */
+    private int sendError(HttpExchange exchange, int status, String message) {
+        if(exchange.getResponseCode() != -1) {
+            return status;
+        }
+
+        try {
+            exchange.getResponseHeaders().remove("ETag");
+            exchange.getResponseHeaders().remove("Location");
+            return send(exchange, status, "{\"error\":" + Json.quote(String.valueOf(message)) + "}");
+        }
+        catch(IOException e) {
+            return status;
+        }
+    }
+}
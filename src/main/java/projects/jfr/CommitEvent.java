@@ -0,0 +1,27 @@
+package projects.jfr;
+
+import jdk.jfr.*;
+
+/*
+ * Committing a transaction run by TransactionExecutor
+ */
+@Name("projects.Commit")
+@Label("Commit")
+@Category({"Projects", "Database"})
+@Description("Committing a transaction")
+@StackTrace(false)
+public class CommitEvent extends Event {
+    @Label("Transaction")
+    @Description("The transaction name, usually the DAO method name")
+    public String transaction;
+
+    @Label("Shard")
+    public int shard;
+
+    @Label("Read Only")
+    public boolean readOnly;
+
+    @Label("Attempt")
+    @Description("1 for the first try, more after retries")
+    public int attempt;
+}
@@ -0,0 +1,28 @@
+package projects.jfr;
+
+import jdk.jfr.*;
+
+/*
+ * Borrowing a connection from a pool, including the wait for a free one and, when none is idle,
+ * opening a new one
+ */
+@Name("projects.ConnectionAcquire")
+@Label("Connection Acquire")
+@Category({"Projects", "Database"})
+@Description("Borrowing a connection from a pool")
+@StackTrace(false)
+public class ConnectionAcquireEvent extends Event {
+    @Label("Transaction")
+    @Description("The transaction the connection is for, usually the DAO method name")
+    public String transaction;
+
+    @Label("URL")
+    public String url;
+
+    @Label("Reused")
+    @Description("False if a new physical connection was opened")
+    public boolean reused;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,195 @@
+package projects.jfr;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.text.ParseException;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+import jdk.jfr.*;
+import jdk.jfr.consumer.*;
+import projects.config.DbConfig;
+import projects.dao.DbConnection;
+import projects.exception.DbException;
+
+/*
+ * Runs one flight recording in this process with the projects.* events enabled, for profiling a
+ * live instance. The JDK settings named by jfr.settings ("default" costs about 1% and is meant to
+ * stay on; "profile" samples more) come along, so the DAO events can be read next to GC pauses and
+ * CPU samples. Connection, statement and commit events shorter than jfr.thresholdMillis are
+ * dropped; row mapping events are all kept. The recording keeps the last jfr.maxAgeSeconds, up to
+ * jfr.maxSizeBytes, so a dump taken just after a latency spike still holds it.
+ *
+ * ProjectServer starts it with jfr.onStartup=true and, when http.profiling=true, under POST
+ * /profile/start, and dumps it to jfr.dir under POST /profile/dump. A recording started from
+ * outside, e.g. with jcmd <pid> JFR.start, also holds the events, since they are enabled by
+ * default.
+ *
+ * Usage, to summarize a dump:
+ *   java projects.jfr.Profiler summary <file.jfr> [limit]
+ */
+public class Profiler {
+    private static final String EVENT_PREFIX = "projects.";
+    private static final int DEFAULT_LIMIT = 25;
+    private static final int MAX_SQL_LENGTH = 120;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static Recording recording;
+
+    private Profiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2 || !args[0].equals("summary")) {
+            System.err.println("Usage: Profiler summary <file.jfr> [limit]");
+            System.exit(2);
+        }
+
+        int limit = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_LIMIT;
+        summarize(Paths.get(args[1]), limit).forEach((key, value) -> System.out.println(key + "  " + value));
+    }
+
+    /*
+     * starts the recording; returns false if it is already running
+     */
+    public static synchronized boolean start() {
+        if(isRunning()) {
+            return false;
+        }
+
+        DbConfig config = DbConnection.getConfig();
+        Duration threshold = Duration.ofMillis(config.getLong("jfr.thresholdMillis"));
+        Recording started = new Recording(settings(config.getString("jfr.settings")));
+
+        started.setName("projects");
+        started.setToDisk(true);
+        started.setMaxAge(Duration.ofSeconds(config.getLong("jfr.maxAgeSeconds")));
+        started.setMaxSize(config.getLong("jfr.maxSizeBytes"));
+        started.enable(ConnectionAcquireEvent.class).withThreshold(threshold);
+        started.enable(StatementEvent.class).withThreshold(threshold);
+        started.enable(CommitEvent.class).withThreshold(threshold);
+        started.enable(RowMappingEvent.class);
+        started.start();
+
+        recording = started;
+        return true;
+    }
+
+    public static synchronized boolean isRunning() {
+        return Objects.nonNull(recording) && recording.getState() == RecordingState.RUNNING;
+    }
+
+    /*
+     * writes what the recording holds to a new file in jfr.dir and returns its path. The
+     * recording goes on.
+     */
+    public static synchronized Path dump() throws IOException {
+        if(!isRunning()) {
+            throw new IllegalStateException("No recording is running");
+        }
+
+        Path dir = Paths.get(DbConnection.getConfig().getString("jfr.dir"));
+        Files.createDirectories(dir);
+
+        Path file = dir.resolve("projects-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+        recording.dump(file);
+        return file;
+    }
+
+    /*
+     * stops and discards the recording; returns false if none was running
+     */
+    public static synchronized boolean stop() {
+        if(Objects.isNull(recording)) {
+            return false;
+        }
+
+        boolean running = isRunning();
+        recording.close();
+        recording = null;
+        return running;
+    }
+
+    /*
+     * Totals the projects.* events in a recording by event, transaction and SQL, entity, URL or
+     * shard, most time first. Keys read e.g. "Statement fetchProjectByID SELECT * FROM step ...".
+     */
+    public static Map<String, String> summarize(Path file, int limit) throws IOException {
+        Map<String, Total> totals = new HashMap<>();
+
+        try(RecordingFile events = new RecordingFile(file)) {
+            while(events.hasMoreEvents()) {
+                RecordedEvent event = events.readEvent();
+                String type = event.getEventType().getName();
+
+                if(type.startsWith(EVENT_PREFIX)) {
+                    String key = type.substring(EVENT_PREFIX.length()) + " " + event.getString("transaction") + " "
+                        + detail(event);
+                    totals.computeIfAbsent(key, name -> new Total()).add(event);
+                }
+            }
+        }
+
+        Map<String, String> summary = new LinkedHashMap<>();
+
+        totals.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<String, Total> entry) -> entry.getValue().nanos).reversed())
+            .limit(limit)
+            .forEach(entry -> summary.put(entry.getKey(), entry.getValue().toString()));
+
+        return summary;
+    }
+
+    private static String detail(RecordedEvent event) {
+        if(event.hasField("sql")) {
+            String sql = String.valueOf(event.getString("sql"));
+            return sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + "..." : sql;
+        }
+
+        if(event.hasField("entity")) {
+            RecordedClass entity = event.getClass("entity");
+            return Objects.isNull(entity) ? "null" : entity.getName();
+        }
+
+        if(event.hasField("url")) {
+            return event.getString("url");
+        }
+
+        return "shard " + event.getInt("shard");
+    }
+
+    private static Configuration settings(String name) {
+        try {
+            return name.endsWith(".jfc") ? Configuration.create(Paths.get(name)) : Configuration.getConfiguration(name);
+        }
+        catch(IOException | ParseException e) {
+            throw new DbException("Unable to read flight recorder settings " + name, e);
+        }
+    }
+
+    private static class Total {
+        private long count;
+        private long nanos;
+        private long maxNanos;
+        private long rows = -1;
+
+        void add(RecordedEvent event) {
+            long duration = event.getDuration().toNanos();
+
+            count++;
+            nanos += duration;
+            maxNanos = Math.max(maxNanos, duration);
+
+            if(event.hasField("rows")) {
+                rows = Math.max(rows, 0) + Math.max(event.getLong("rows"), 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count=%d, totalMs=%.3f, avgMs=%.3f, maxMs=%.3f", count, nanos / 1e6,
+                    nanos / 1e6 / count, maxNanos / 1e6) + (rows < 0 ? "" : ", rows=" + rows);
+        }
+    }
+}
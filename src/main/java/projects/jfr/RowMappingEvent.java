@@ -0,0 +1,20 @@
+package projects.jfr;
+
+import jdk.jfr.*;
+
+/*
+ * Building one entity from the current row of a result set with DaoBase.extract
+ */
+@Name("projects.RowMapping")
+@Label("Row Mapping")
+@Category({"Projects", "Database"})
+@Description("Building one entity from a result set row by reflection")
+@StackTrace(false)
+public class RowMappingEvent extends Event {
+    @Label("Transaction")
+    @Description("The transaction the row was read in, usually the DAO method name")
+    public String transaction;
+
+    @Label("Entity")
+    public Class<?> entity;
+}
@@ -0,0 +1,32 @@
+package projects.jfr;
+
+import jdk.jfr.*;
+
+/*
+ * One execution of a statement. For a query the event lasts until its result set is closed, so it
+ * includes reading the rows and whatever the caller did with them, such as row mapping.
+ */
+@Name("projects.Statement")
+@Label("Statement")
+@Category({"Projects", "Database"})
+@Description("One execution of a SQL statement")
+@StackTrace(false)
+public class StatementEvent extends Event {
+    @Label("Transaction")
+    @Description("The transaction the statement ran in, usually the DAO method name")
+    public String transaction;
+
+    @Label("SQL")
+    public String sql;
+
+    @Label("Operation")
+    @Description("executeQuery, executeUpdate, executeBatch or execute")
+    public String operation;
+
+    @Label("Rows")
+    @Description("Rows read by a query or changed by an update; -1 if not known")
+    public long rows;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,108 @@
+package projects.migration;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.*;
+import java.util.zip.CRC32;
+
+import projects.exception.DbException;
+
+/*
+ * One versioned schema script from db/migration, named V<version>__<description>.sql
+ */
+public class Migration implements Comparable<Migration> {
+    private static final Pattern NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final int version;
+    private final String description;
+    private final String script;
+
+    private Migration(int version, String description, String script) {
+        this.version = version;
+        this.description = description;
+        this.script = script;
+    }
+
+    /*
+     * loads a script from the classpath
+     */
+    public static Migration load(String resourceDir, String fileName) {
+        Matcher matcher = NAME.matcher(fileName);
+
+        if(!matcher.matches()) {
+            throw new DbException("Migration file name " + fileName + " does not match V<version>__<description>.sql");
+        }
+
+        String resource = resourceDir + "/" + fileName;
+
+        try(InputStream in = Migration.class.getResourceAsStream(resource)) {
+            if(Objects.isNull(in)) {
+                throw new DbException("Migration " + resource + " not found on the classpath");
+            }
+
+            String script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '), script);
+        }
+        catch(IOException e) {
+            throw new DbException("Unable to read migration " + resource, e);
+        }
+    }
+
+    public List<String> getStatements() {
+        return splitStatements(script);
+    }
+
+    /*
+     * splits a script into statements on semicolons at the end of a line. Comment lines are
+     * dropped.
+     */
+    public static List<String> splitStatements(String script) {
+        List<String> statements = new LinkedList<>();
+        StringBuilder current = new StringBuilder();
+
+        for(String line : script.split("\\R")) {
+            if(line.trim().startsWith("--")) {
+                continue;
+            }
+
+            current.append(line).append('\n');
+
+            if(line.trim().endsWith(";")) {
+                String statement = current.toString().trim();
+                statements.add(statement.substring(0, statement.length() - 1));
+                current.setLength(0);
+            }
+        }
+
+        if(!current.toString().isBlank()) {
+            statements.add(current.toString().trim());
+        }
+
+        return statements;
+    }
+
+    public long getChecksum() {
+        CRC32 crc = new CRC32();
+        crc.update(script.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public int compareTo(Migration other) {
+        return Integer.compare(version, other.version);
+    }
+
+    @Override
+    public String toString() {
+        return "V" + version + " " + description;
+    }
+}
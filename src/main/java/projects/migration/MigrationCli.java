@@ -0,0 +1,51 @@
+package projects.migration;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Command line entry point for schema migrations.
+ *
+ * Usage: MigrationCli migrate | info | baseline <version>
+ *
+ * Every command runs against each shard in turn.
+ */
+public class MigrationCli {
+
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "migrate";
+        List<MigrationRunner> runners = MigrationRunner.forAllShards();
+
+        switch(command) {
+            case "migrate":
+                long total = 0;
+                for(MigrationRunner runner : runners) {
+                    for(Map.Entry<Migration, Long> entry : runner.migrate().entrySet()) {
+                        total += entry.getValue();
+                    }
+                }
+                System.out.println("Total migration time: " + total + " ms");
+                break;
+            case "info":
+                for(int shard = 0; shard < runners.size(); shard++) {
+                    if(runners.size() > 1) {
+                        System.out.println("Shard " + shard + ":");
+                    }
+                    runners.get(shard).info().forEach(System.out::println);
+                }
+                break;
+            case "baseline":
+                if(args.length < 2) {
+                    System.out.println("Usage: MigrationCli baseline <version>");
+                    System.exit(2);
+                }
+                for(MigrationRunner runner : runners) {
+                    runner.baseline(Integer.parseInt(args[1]));
+                }
+                break;
+            default:
+                System.out.println("Usage: MigrationCli migrate | info | baseline <version>");
+                System.exit(2);
+        }
+    }
+}
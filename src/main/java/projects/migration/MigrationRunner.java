@@ -0,0 +1,271 @@
+package projects.migration;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+
+import projects.dao.DbConnection;
+import projects.exception.DbException;
+
+/*
+ * Applies the scripts listed in db/migration/migrations.list in version order and records each in
+ * schema_history along with a checksum and how long it took. A named lock keeps two instances
+ * starting at the same time from migrating concurrently.
+ *
+ * MySQL commits DDL implicitly, so a migration is not atomic. Keep each script to one logical
+ * change and write index additions as online DDL (ALGORITHM=INPLACE, LOCK=NONE) so they do not
+ * block writers.
+ *
+ * A runner works on one shard, and each shard keeps its own schema_history. forAllShards gives one
+ * runner per configured shard.
+ */
+public class MigrationRunner {
+    private static final String RESOURCE_DIR = "/db/migration";
+    private static final String HISTORY_TABLE = "schema_history";
+    private static final String LOCK_NAME = "projects_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final int shard;
+
+    public MigrationRunner() {
+        this(0);
+    }
+
+    public MigrationRunner(int shard) {
+        this.shard = shard;
+    }
+
+    /*
+     * a runner for every shard, shard 0 first
+     */
+    public static List<MigrationRunner> forAllShards() {
+        List<MigrationRunner> runners = new ArrayList<>();
+
+        for(int shard = 0; shard < DbConnection.getShardRouter().getShardCount(); shard++) {
+            runners.add(new MigrationRunner(shard));
+        }
+
+        return runners;
+    }
+
+    /*
+     * all known migrations, oldest first
+     */
+    public List<Migration> findMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+
+        try(InputStream in = getClass().getResourceAsStream(RESOURCE_DIR + "/migrations.list")) {
+            if(Objects.isNull(in)) {
+                throw new DbException("Migration index " + RESOURCE_DIR + "/migrations.list not found");
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+
+            while(Objects.nonNull(line = reader.readLine())) {
+                if(!line.isBlank()) {
+                    migrations.add(Migration.load(RESOURCE_DIR, line.trim()));
+                }
+            }
+        }
+        catch(IOException e) {
+            throw new DbException("Unable to read the migration index", e);
+        }
+
+        Collections.sort(migrations);
+        return migrations;
+    }
+
+    /*
+     * applies every pending migration and returns the applied versions with their duration
+     */
+    public Map<Migration, Long> migrate() {
+        Map<Migration, Long> applied = new LinkedHashMap<>();
+
+        try(Connection conn = DbConnection.getConnection(shard)) {
+            lock(conn);
+
+            try {
+                createHistoryTable(conn);
+                Map<Integer, Long> history = fetchHistory(conn);
+
+                for(Migration migration : findMigrations()) {
+                    Long checksum = history.get(migration.getVersion());
+
+                    if(Objects.nonNull(checksum)) {
+                        if(checksum != 0 && checksum != migration.getChecksum()) {
+                            System.err.println("Warning: " + migration + " changed after it was applied" + where());
+                        }
+                        continue;
+                    }
+
+                    long millis = apply(conn, migration);
+                    applied.put(migration, millis);
+                    System.err.println("Applied " + migration + where() + " in " + millis + " ms");
+                }
+            }
+            finally {
+                unlock(conn);
+            }
+        }
+        catch(SQLException e) {
+            throw new DbException(e);
+        }
+
+        if(applied.isEmpty()) {
+            System.err.println("Schema is up to date" + where() + ".");
+        }
+
+        return applied;
+    }
+
+    /*
+     * marks every migration up to and including the version as applied without running it. Use
+     * this once for a database that was built from projects-schema.sql.
+     */
+    public void baseline(int version) {
+        try(Connection conn = DbConnection.getConnection(shard)) {
+            lock(conn);
+
+            try {
+                createHistoryTable(conn);
+                Map<Integer, Long> history = fetchHistory(conn);
+
+                for(Migration migration : findMigrations()) {
+                    if(migration.getVersion() <= version && !history.containsKey(migration.getVersion())) {
+                        record(conn, migration, 0, 0);
+                        System.out.println("Baselined " + migration + where());
+                    }
+                }
+            }
+            finally {
+                unlock(conn);
+            }
+        }
+        catch(SQLException e) {
+            throw new DbException(e);
+        }
+    }
+
+    /*
+     * one line per known migration showing whether and when it was applied
+     */
+    public List<String> info() {
+        List<String> lines = new LinkedList<>();
+        String sql = "SELECT version, installed_at, execution_millis FROM " + HISTORY_TABLE;
+
+        try(Connection conn = DbConnection.getConnection(shard)) {
+            createHistoryTable(conn);
+            Map<Integer, String> applied = new HashMap<>();
+
+            try(Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                while(rs.next()) {
+                    applied.put(rs.getInt(1), rs.getString(2) + " (" + rs.getLong(3) + " ms)");
+                }
+            }
+
+            for(Migration migration : findMigrations()) {
+                lines.add(migration + ": " + applied.getOrDefault(migration.getVersion(), "pending"));
+            }
+        }
+        catch(SQLException e) {
+            throw new DbException(e);
+        }
+
+        return lines;
+    }
+
+    /*
+     * names the shard in messages, but only when there is more than one
+     */
+    private String where() {
+        return DbConnection.getShardRouter().isSharded() ? " on shard " + shard : "";
+    }
+
+    private long apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.nanoTime();
+
+        try(Statement stmt = conn.createStatement()) {
+            /* online DDL can legitimately run longer than db.queryTimeoutSeconds */
+            stmt.setQueryTimeout(0);
+
+            for(String sql : migration.getStatements()) {
+                stmt.execute(sql);
+            }
+        }
+        catch(SQLException e) {
+            throw new DbException("Migration " + migration + " failed: " + e.getMessage(), e);
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        record(conn, migration, migration.getChecksum(), millis);
+        return millis;
+    }
+
+    private void createHistoryTable(Connection conn) throws SQLException {
+        //@formatter:off
+        String sql = ""
+            + "CREATE TABLE IF NOT EXISTS " + HISTORY_TABLE + " ("
+            + "version INT NOT NULL, "
+            + "description VARCHAR(200) NOT NULL, "
+            + "checksum BIGINT NOT NULL, "
+            + "installed_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+            + "execution_millis BIGINT NOT NULL, "
+            + "PRIMARY KEY (version))";
+        //@formatter:on
+        try(Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private Map<Integer, Long> fetchHistory(Connection conn) throws SQLException {
+        Map<Integer, Long> history = new HashMap<>();
+
+        try(Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM " + HISTORY_TABLE)) {
+            while(rs.next()) {
+                history.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+
+        return history;
+    }
+
+    private void record(Connection conn, Migration migration, long checksum, long millis) throws SQLException {
+        //@formatter:off
+        String sql = ""
+            + "INSERT INTO " + HISTORY_TABLE + " "
+            + "(version, description, checksum, execution_millis) "
+            + "VALUES "
+            + "(?, ?, ?, ?)";
+        //@formatter:on
+        try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, migration.getVersion());
+            stmt.setString(2, migration.getDescription());
+            stmt.setLong(3, checksum);
+            stmt.setLong(4, millis);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void lock(Connection conn) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+
+            try(ResultSet rs = stmt.executeQuery()) {
+                if(!rs.next() || rs.getInt(1) != 1) {
+                    throw new DbException("Timed out waiting for the schema migration lock");
+                }
+            }
+        }
+    }
+
+    private void unlock(Connection conn) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        }
+    }
+}
@@ -1,13 +1,58 @@
 package projects.service;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import projects.cache.InvalidationBus;
+import projects.cache.ProjectNearCache;
+import projects.config.DbConfig;
+import projects.dao.BulkProgress;
+import projects.dao.DbConnection;
+import projects.dao.FetchHint;
 import projects.dao.ProjectDao;
+import projects.dao.ProjectFilter;
+import projects.dao.ProjectRowsHandler;
+import projects.dao.ProjectUpdate;
+import projects.dao.ResultSetHandler;
+import projects.dao.TransactionExecutor;
+import projects.dao.TransactionOptions;
 import projects.entity.Project;
 import projects.exception.DbException;
 
 public class ProjectService {
     private ProjectDao projectDao = new ProjectDao();
+    private TransactionExecutor transactionExecutor = new TransactionExecutor();
+    private static final int BULK_INVALIDATE_THRESHOLD = 100;
+    private ProjectNearCache cache;
+    private InvalidationBus invalidationBus;
+
+    /*
+     * sets up the near cache when cache.enabled is true
+     */
+    public ProjectService() {
+        DbConfig config = DbConnection.getConfig();
+        
+        if(config.getBoolean("cache.enabled")) {
+            cache = new ProjectNearCache(config.getInt("cache.maxEntries"), config.getLong("cache.maxStalenessMillis"));
+            invalidationBus = new InvalidationBus(cache);
+            try {
+                invalidationBus.start();
+            }
+            catch(IOException e) {
+                throw new DbException("Unable to start cache invalidation", e);
+            }
+        }
+    }
+
+    /*
+     * runs several service calls in one transaction on one connection, committing them together.
+     * The transaction is on shard 0, so with sharding the calls may only touch projects there.
+     */
+    public <T> T inTransaction(String name, Supplier<T> work) {
+        return transactionExecutor.inTransaction(TransactionOptions.readWrite(name), work);
+    }
 
     /*
      * calls DAO class to to insert a project row
@@ -16,11 +61,31 @@ public class ProjectService {
         return projectDao.insertProject(project);
     }
     
+    /*
+     * inserts a project with its materials, steps and categories in one transaction
+     */
+    public Project addProjectWithDetails(Project project) {
+        return projectDao.insertProjectWithDetails(project);
+    }
+    
     /*
      * calls the DAO object to retrieve the details of a specified project
      */
     public Project fetchProjectByID(Integer projectID) {
-        return projectDao.fetchProjectByID(projectID).orElseThrow(() -> new NoSuchElementException("Project with project ID=" + projectID + " does not exist."));
+        if(Objects.nonNull(cache)) {
+            Optional<Project> cached = cache.get(projectID);
+            if(cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        
+        long loadedAt = System.currentTimeMillis();
+        Project project = projectDao.fetchProjectByID(projectID).orElseThrow(() -> new NoSuchElementException("Project with project ID=" + projectID + " does not exist."));
+        
+        if(Objects.nonNull(cache)) {
+            cache.put(project, loadedAt);
+        }
+        return project;
       }
 
     /*
@@ -30,6 +95,43 @@ public class ProjectService {
         return projectDao.fetchAllProjects();
     }
 
+    /*
+     * as fetchAllProjects, but with the rows fetched as the hint says rather than as FetchTuner
+     * would choose
+     */
+    public List<Project> fetchAllProjects(FetchHint hint) {
+        return projectDao.fetchAllProjects(hint);
+    }
+
+    /*
+     * calls the DAO object to hand the project rows to the handler as they are read
+     */
+    public void streamAllProjects(ResultSetHandler handler) throws IOException {
+        projectDao.streamAllProjects(handler);
+    }
+
+    /*
+     * calls the DAO object to hand a project's rows and its details to the handler. This reads
+     * the database directly and does not use the near cache.
+     */
+    public boolean streamProjectByID(Integer projectID, ProjectRowsHandler handler) throws IOException {
+        return projectDao.streamProjectByID(projectID, handler);
+    }
+
+    /*
+     * the current version of a project, from the cache when it holds the project. Used to answer
+     * conditional requests without loading the details.
+     */
+    public Optional<Integer> fetchProjectVersion(Integer projectID) {
+        if(Objects.nonNull(cache)) {
+            Optional<Project> cached = cache.get(projectID);
+            if(cached.isPresent()) {
+                return Optional.ofNullable(cached.get().getVersion());
+            }
+        }
+        return projectDao.fetchProjectVersion(projectID);
+    }
+
     /*
      * Calls the DAO object to modify a single project, or throw an error if it does not exist
      */
@@ -37,6 +139,7 @@ public class ProjectService {
         if(!projectDao.modifyProjectDetails(project)) {
             throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");    
         }
+        invalidate(project.getProjectId());
         
     }
 
@@ -47,7 +150,90 @@ public class ProjectService {
         if(!projectDao.deleteProject(projectID)) {
             throw new DbException("Project with ID=" + projectID + " does not exist");
         }
+        invalidate(projectID);
         
     }
 
+    /*
+     * calls the DAO object to restore a soft-deleted project
+     */
+    public void undeleteProject(Integer projectID) {
+        if(!projectDao.undeleteProject(projectID)) {
+            throw new DbException("Project with ID=" + projectID + " is not deleted or can no longer be restored");
+        }
+        invalidate(projectID);
+        
+    }
+
+    /*
+     * calls the DAO object to tag many projects with categories by name, creating categories as needed
+     */
+    public int assignCategories(Map<Integer, Set<String>> categoriesByProject) {
+        int assigned = projectDao.assignCategories(categoriesByProject);
+        
+        if(categoriesByProject.size() > BULK_INVALIDATE_THRESHOLD) {
+            invalidate(null);
+        }
+        else {
+            categoriesByProject.keySet().forEach(this::invalidate);
+        }
+        return assigned;
+    }
+
+    /*
+     * Deletes every project the filter matches, a chunk of IDs at a time, reporting each chunk to
+     * progress. With dryRun nothing is changed and the number that would be deleted is returned.
+     */
+    public long bulkDeleteProjects(ProjectFilter filter, boolean dryRun, Consumer<BulkProgress> progress) {
+        if(dryRun) {
+            return projectDao.countProjects(filter.requireCondition());
+        }
+        
+        try {
+            return projectDao.bulkDeleteProjects(filter, progress);
+        }
+        finally {
+            invalidate(null);
+        }
+    }
+
+    /*
+     * applies the update to every project the filter matches, as bulkDeleteProjects does
+     */
+    public long bulkModifyProjects(ProjectFilter filter, ProjectUpdate update, boolean dryRun,
+            Consumer<BulkProgress> progress) {
+        if(dryRun) {
+            update.requireChange();
+            return projectDao.countProjects(filter.requireCondition());
+        }
+        
+        try {
+            return projectDao.bulkModifyProjects(filter, update, progress);
+        }
+        finally {
+            invalidate(null);
+        }
+    }
+
+    /*
+     * drops the project from this instance's cache and tells the other instances. A null ID
+     * clears every cache.
+     */
+    private void invalidate(Integer projectID) {
+        if(Objects.nonNull(invalidationBus)) {
+            invalidationBus.publish(projectID);
+        }
+    }
+
+    public boolean hasNearCache() {
+        return Objects.nonNull(cache);
+    }
+
+    /*
+     * cache and invalidation counters, or an empty map when caching is off
+     */
+    public Map<String, Long> getCacheMetrics() {
+        return Objects.isNull(invalidationBus) ? Map.of() : invalidationBus.getMetrics();
+    }
+
 }
@@ -0,0 +1,54 @@
+package projects.util;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Fixed-size byte buffers shared between requests, so that streaming a response does not allocate
+ * a fresh buffer each time. At most maxRetained idle buffers are kept; beyond that, released
+ * buffers are left to the garbage collector.
+ */
+public class BufferPool {
+    public static final BufferPool SHARED = new BufferPool(16 * 1024, 64);
+
+    private final int bufferSize;
+    private final int maxRetained;
+    private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxRetained) {
+        this.bufferSize = bufferSize;
+        this.maxRetained = maxRetained;
+    }
+
+    /*
+     * an empty buffer, ready for writing
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+
+        if(Objects.isNull(buffer)) {
+            return ByteBuffer.allocate(bufferSize);
+        }
+
+        idleCount.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if(buffer.capacity() != bufferSize || idleCount.incrementAndGet() > maxRetained) {
+            idleCount.decrementAndGet();
+            return;
+        }
+
+        buffer.clear();
+        idle.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
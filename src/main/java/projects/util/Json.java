@@ -0,0 +1,238 @@
+package projects.util;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/*
+ * Minimal JSON helpers. The project has no JSON library, and the documents it writes are small
+ * and flat enough not to need one.
+ */
+public class Json {
+
+    private Json() {
+    }
+
+    /*
+     * returns the value as a JSON literal: null, a number or boolean as-is, anything else as a
+     * quoted and escaped string
+     */
+    public static String value(Object value) {
+        if(Objects.isNull(value)) {
+            return "null";
+        }
+
+        if(value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+
+        return quote(value.toString());
+    }
+
+    public static String quote(String text) {
+        StringBuilder result = new StringBuilder(text.length() + 2);
+        appendQuoted(result, text);
+        return result.toString();
+    }
+
+    public static void appendQuoted(StringBuilder result, String text) {
+        result.append('"');
+
+        for(int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+
+            switch(ch) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if(ch < 0x20) {
+                        result.append(String.format("\\u%04x", (int)ch));
+                    }
+                    else {
+                        result.append(ch);
+                    }
+                    break;
+            }
+        }
+
+        result.append('"');
+    }
+
+    /*
+     * parses a flat JSON object such as a request body. Values may be strings, numbers (returned
+     * as BigDecimal), true, false or null; nested objects and arrays are rejected.
+     */
+    public static Map<String, Object> parseObject(String json) {
+        Parser parser = new Parser(json);
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        parser.expect('{');
+
+        if(!parser.skip('}')) {
+            do {
+                String key = parser.string();
+                parser.expect(':');
+                result.put(key, parser.scalar());
+            } while(parser.skip(','));
+
+            parser.expect('}');
+        }
+
+        parser.end();
+        return result;
+    }
+
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        boolean skip(char ch) {
+            whitespace();
+
+            if(pos < text.length() && text.charAt(pos) == ch) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char ch) {
+            if(!skip(ch)) {
+                throw error("expected '" + ch + "'");
+            }
+        }
+
+        void end() {
+            whitespace();
+
+            if(pos != text.length()) {
+                throw error("unexpected trailing text");
+            }
+        }
+
+        Object scalar() {
+            whitespace();
+
+            if(pos >= text.length()) {
+                throw error("expected a value");
+            }
+
+            char ch = text.charAt(pos);
+
+            if(ch == '"') {
+                return string();
+            }
+
+            for(String literal : List.of("true", "false", "null")) {
+                if(text.startsWith(literal, pos)) {
+                    pos += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+
+            int start = pos;
+            while(pos < text.length() && "+-.0123456789eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+
+            try {
+                return new BigDecimal(text.substring(start, pos));
+            }
+            catch(NumberFormatException e) {
+                pos = start;
+                throw error("expected a string, number, true, false or null");
+            }
+        }
+
+        String string() {
+            whitespace();
+
+            if(pos >= text.length() || text.charAt(pos) != '"') {
+                throw error("expected a string");
+            }
+
+            StringBuilder result = new StringBuilder();
+            pos++;
+
+            while(pos < text.length()) {
+                char ch = text.charAt(pos++);
+
+                if(ch == '"') {
+                    return result.toString();
+                }
+
+                if(ch != '\\') {
+                    result.append(ch);
+                    continue;
+                }
+
+                if(pos >= text.length()) {
+                    break;
+                }
+
+                char escaped = text.charAt(pos++);
+
+                switch(escaped) {
+                    case 'n':
+                        result.append('\n');
+                        break;
+                    case 'r':
+                        result.append('\r');
+                        break;
+                    case 't':
+                        result.append('\t');
+                        break;
+                    case 'b':
+                        result.append('\b');
+                        break;
+                    case 'f':
+                        result.append('\f');
+                        break;
+                    case 'u':
+                        if(pos + 4 > text.length()) {
+                            throw error("incomplete \\u escape");
+                        }
+                        try {
+                            result.append((char)Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        }
+                        catch(NumberFormatException e) {
+                            throw error("invalid \\u escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        result.append(escaped);
+                        break;
+                }
+            }
+
+            throw error("unterminated string");
+        }
+
+        private void whitespace() {
+            while(pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON at offset " + pos + ": " + message);
+        }
+    }
+}
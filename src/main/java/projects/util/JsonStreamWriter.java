@@ -0,0 +1,268 @@
+package projects.util;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/*
+ * Writes JSON as UTF-8 straight into a pooled buffer and drains it to the stream or channel
+ * whenever it fills, so a document of any size needs no intermediate String and only one buffer.
+ * The writer puts in the commas itself; callers only open, name and close.
+ *
+ * Closing flushes the buffer and returns it to the pool but leaves the stream or channel open.
+ * A writer is not thread-safe.
+ */
+public class JsonStreamWriter implements Closeable {
+    private static final int MAX_DEPTH = 32;
+    /* the longest encoding of one char: the six-byte escape of a control character */
+    private static final int MAX_CHAR_BYTES = 6;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    private final boolean[] hasItems = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonStreamWriter(OutputStream out, BufferPool pool) {
+        this(out, null, pool);
+    }
+
+    public JsonStreamWriter(WritableByteChannel channel, BufferPool pool) {
+        this(null, channel, pool);
+    }
+
+    private JsonStreamWriter(OutputStream out, WritableByteChannel channel, BufferPool pool) {
+        this.out = out;
+        this.channel = channel;
+        this.pool = pool;
+        this.buffer = pool.acquire();
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        separator();
+        string(name);
+        put((byte)':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        separator();
+
+        if(Objects.isNull(value)) {
+            return ascii("null");
+        }
+
+        string(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(BigDecimal value) throws IOException {
+        separator();
+        return ascii(Objects.isNull(value) ? "null" : value.toString());
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        separator();
+
+        if(value == Long.MIN_VALUE) {
+            return ascii(Long.toString(value));
+        }
+
+        ensure(20);
+
+        if(value < 0) {
+            buffer.put((byte)'-');
+            value = -value;
+        }
+
+        int start = buffer.position();
+        do {
+            buffer.put((byte)('0' + value % 10));
+            value /= 10;
+        } while(value > 0);
+
+        /* the digits went in backwards */
+        for(int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte digit = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, digit);
+        }
+
+        return this;
+    }
+
+    /*
+     * writes an integer column value, or null
+     */
+    public JsonStreamWriter value(Integer value) throws IOException {
+        if(Objects.isNull(value)) {
+            separator();
+            return ascii("null");
+        }
+        return value(value.longValue());
+    }
+
+    /*
+     * writes whatever is buffered to the stream or channel
+     */
+    public void flush() throws IOException {
+        drain();
+
+        if(Objects.nonNull(out)) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(Objects.isNull(buffer)) {
+            return;
+        }
+
+        try {
+            flush();
+        }
+        finally {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private JsonStreamWriter open(char bracket) throws IOException {
+        if(depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH);
+        }
+
+        separator();
+        put((byte)bracket);
+        hasItems[depth++] = false;
+        return this;
+    }
+
+    private JsonStreamWriter close(char bracket) throws IOException {
+        depth--;
+        put((byte)bracket);
+        return this;
+    }
+
+    /*
+     * a comma before every item but the first in an object or array, nothing after a name
+     */
+    private void separator() throws IOException {
+        if(afterName) {
+            afterName = false;
+            return;
+        }
+
+        if(depth > 0) {
+            if(hasItems[depth - 1]) {
+                put((byte)',');
+            }
+            hasItems[depth - 1] = true;
+        }
+    }
+
+    private JsonStreamWriter ascii(String text) throws IOException {
+        for(int i = 0; i < text.length(); i++) {
+            put((byte)text.charAt(i));
+        }
+        return this;
+    }
+
+    /*
+     * writes the quoted, escaped string, encoding it to UTF-8 as it goes
+     */
+    private void string(String text) throws IOException {
+        put((byte)'"');
+
+        for(int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            ensure(MAX_CHAR_BYTES);
+
+            if(ch == '"' || ch == '\\') {
+                buffer.put((byte)'\\').put((byte)ch);
+            }
+            else if(ch >= 0x20 && ch < 0x80) {
+                buffer.put((byte)ch);
+            }
+            else if(ch == '\n') {
+                buffer.put((byte)'\\').put((byte)'n');
+            }
+            else if(ch == '\r') {
+                buffer.put((byte)'\\').put((byte)'r');
+            }
+            else if(ch == '\t') {
+                buffer.put((byte)'\\').put((byte)'t');
+            }
+            else if(ch < 0x20) {
+                buffer.put((byte)'\\').put((byte)'u').put((byte)'0').put((byte)'0').put(HEX[ch >> 4]).put(HEX[ch & 0xf]);
+            }
+            else if(ch < 0x800) {
+                buffer.put((byte)(0xc0 | ch >> 6)).put((byte)(0x80 | ch & 0x3f));
+            }
+            else if(Character.isHighSurrogate(ch) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(ch, text.charAt(++i));
+                buffer.put((byte)(0xf0 | codePoint >> 18)).put((byte)(0x80 | codePoint >> 12 & 0x3f))
+                    .put((byte)(0x80 | codePoint >> 6 & 0x3f)).put((byte)(0x80 | codePoint & 0x3f));
+            }
+            else if(Character.isSurrogate(ch)) {
+                /* an unpaired surrogate cannot be encoded; write U+FFFD as String.getBytes would */
+                buffer.put((byte)0xef).put((byte)0xbf).put((byte)0xbd);
+            }
+            else {
+                buffer.put((byte)(0xe0 | ch >> 12)).put((byte)(0x80 | ch >> 6 & 0x3f)).put((byte)(0x80 | ch & 0x3f));
+            }
+        }
+
+        put((byte)'"');
+    }
+
+    private void put(byte b) throws IOException {
+        ensure(1);
+        buffer.put(b);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if(buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+
+        if(Objects.nonNull(out)) {
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        }
+        else {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        buffer.clear();
+    }
+}
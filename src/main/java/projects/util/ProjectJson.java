@@ -0,0 +1,74 @@
+package projects.util;
+
+import java.util.List;
+import java.util.function.Function;
+
+import projects.entity.Project;
+
+/*
+ * Writes Project aggregates as JSON objects
+ */
+public class ProjectJson {
+
+    private ProjectJson() {
+    }
+
+    /*
+     * the project row only, without materials, steps or categories
+     */
+    public static String summary(Project project) {
+        StringBuilder json = new StringBuilder(128);
+        appendSummaryFields(json, project);
+        return json.append('}').toString();
+    }
+
+    /*
+     * the project with its materials, steps and categories
+     */
+    public static String full(Project project) {
+        StringBuilder json = new StringBuilder(512);
+        appendSummaryFields(json, project);
+
+        json.append(",\"materials\":[");
+        appendAll(json, project.getMaterials(), material -> "{\"materialId\":" + material.getMaterialId()
+                + ",\"materialName\":" + Json.value(material.getMaterialName()) + ",\"numRequired\":"
+                + material.getNumRequired() + ",\"cost\":" + Json.value(material.getCost()) + "}");
+
+        json.append("],\"steps\":[");
+        appendAll(json, project.getSteps(), step -> "{\"stepId\":" + step.getStepId() + ",\"stepText\":"
+                + Json.value(step.getStepText()) + ",\"stepOrder\":" + step.getStepOrder() + "}");
+
+        json.append("],\"categories\":[");
+        appendAll(json, project.getCategories(), category -> "{\"categoryId\":" + category.getCategoryId()
+                + ",\"categoryName\":" + Json.value(category.getCategoryName()) + "}");
+
+        return json.append("]}").toString();
+    }
+
+    public static String summaries(List<Project> projects) {
+        StringBuilder json = new StringBuilder(projects.size() * 128 + 2).append('[');
+        appendAll(json, projects, ProjectJson::summary);
+        return json.append(']').toString();
+    }
+
+    private static void appendSummaryFields(StringBuilder json, Project project) {
+        //@formatter:off
+        json.append("{\"projectId\":").append(project.getProjectId())
+            .append(",\"projectName\":").append(Json.value(project.getProjectName()))
+            .append(",\"estimatedHours\":").append(Json.value(project.getEstimatedHours()))
+            .append(",\"actualHours\":").append(Json.value(project.getActualHours()))
+            .append(",\"difficulty\":").append(Json.value(project.getDifficulty()))
+            .append(",\"notes\":").append(Json.value(project.getNotes()))
+            .append(",\"version\":").append(Json.value(project.getVersion()));
+        //@formatter:on
+    }
+
+    private static <T> void appendAll(StringBuilder json, List<T> items, Function<T, String> writer) {
+        String separator = "";
+
+        for(T item : items) {
+            json.append(separator).append(writer.apply(item));
+            separator = ",";
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package projects.util;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import projects.dao.ProjectRowsHandler;
+
+/*
+ * Writes projects as JSON straight from their result sets, in the same shape as ProjectJson but
+ * without building Project, Material, Step or Category objects or the document as a String.
+ */
+public class ProjectJsonStream implements ProjectRowsHandler {
+    private final JsonStreamWriter out;
+
+    /*
+     * writes one project with its details to out; pass it to ProjectService.streamProjectByID
+     */
+    public ProjectJsonStream(JsonStreamWriter out) {
+        this.out = out;
+    }
+
+    /*
+     * writes every row of the project result set as a JSON array of summaries
+     */
+    public static void writeSummaries(ResultSet rs, JsonStreamWriter out) throws SQLException, IOException {
+        out.beginArray();
+
+        while(rs.next()) {
+            writeSummaryFields(rs, out.beginObject());
+            out.endObject();
+        }
+
+        out.endArray();
+    }
+
+    @Override
+    public void project(ResultSet rs) throws SQLException, IOException {
+        writeSummaryFields(rs, out.beginObject());
+    }
+
+    @Override
+    public void materials(ResultSet rs) throws SQLException, IOException {
+        out.name("materials").beginArray();
+
+        while(rs.next()) {
+            //@formatter:off
+            out.beginObject()
+                .name("materialId").value(integer(rs, "material_id"))
+                .name("materialName").value(rs.getString("material_name"))
+                .name("numRequired").value(integer(rs, "num_required"))
+                .name("cost").value(rs.getBigDecimal("cost"))
+                .endObject();
+            //@formatter:on
+        }
+
+        out.endArray();
+    }
+
+    @Override
+    public void steps(ResultSet rs) throws SQLException, IOException {
+        out.name("steps").beginArray();
+
+        while(rs.next()) {
+            //@formatter:off
+            out.beginObject()
+                .name("stepId").value(integer(rs, "step_id"))
+                .name("stepText").value(rs.getString("step_text"))
+                .name("stepOrder").value(integer(rs, "step_order"))
+                .endObject();
+            //@formatter:on
+        }
+
+        out.endArray();
+    }
+
+    /*
+     * the last section, so it also closes the project object
+     */
+    @Override
+    public void categories(ResultSet rs) throws SQLException, IOException {
+        out.name("categories").beginArray();
+
+        while(rs.next()) {
+            //@formatter:off
+            out.beginObject()
+                .name("categoryId").value(integer(rs, "category_id"))
+                .name("categoryName").value(rs.getString("category_name"))
+                .endObject();
+            //@formatter:on
+        }
+
+        out.endArray().endObject();
+    }
+
+    private static void writeSummaryFields(ResultSet rs, JsonStreamWriter out) throws SQLException, IOException {
+        //@formatter:off
+        out.name("projectId").value(integer(rs, "project_id"))
+            .name("projectName").value(rs.getString("project_name"))
+            .name("estimatedHours").value(rs.getBigDecimal("estimated_hours"))
+            .name("actualHours").value(rs.getBigDecimal("actual_hours"))
+            .name("difficulty").value(integer(rs, "difficulty"))
+            .name("notes").value(rs.getString("notes"))
+            .name("version").value(integer(rs, "version"));
+        //@formatter:on
+    }
+
+    /*
+     * the column as an Integer, or null if it is NULL
+     */
+    private static Integer integer(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+}
@@ -16,6 +16,8 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -166,20 +168,21 @@ public abstract class DaoBase {
   }
 
   /**
-   * This returns the integer primary key value of the last row inserted into the given table. It
-   * allows the ID to be inserted into the entity object after inserting it into the table.
+   * This returns the integer primary key value of the last row inserted on the connection. It is
+   * the fallback for drivers or statements that do not return generated keys; prefer
+   * {@link #getGeneratedId(Statement)}, which needs no extra round trip.
    * 
-   * The other way of doing this is to call {@link Statement#getGeneratedKeys()}, but this returns a
-   * result set that needs to be parsed for the ID. It's not really any easier than this approach
-   * but should be closer to database-agnostic.
+   * Note that LAST_INSERT_ID() is per connection, so no table is needed. Selecting it FROM the
+   * table returned one (identical) row for every row in the table.
    * 
    * @param conn The connection
-   * @param table The name of the table on which to get the last inserted primary key value
+   * @param table The name of the table on which to get the last inserted primary key value. It is
+   *        kept for compatibility and is only used in the error message.
    * @return The primary key value
    * @throws SQLException Thrown if an error occurs
    */
   protected Integer getLastInsertId(Connection conn, String table) throws SQLException {
-    String sql = String.format("SELECT LAST_INSERT_ID() FROM %s", table);
+    String sql = "SELECT LAST_INSERT_ID()";
 
     try(Statement stmt = conn.createStatement()) {
       try(ResultSet rs = stmt.executeQuery(sql)) {
@@ -187,11 +190,56 @@ public abstract class DaoBase {
           return rs.getInt(1);
         }
 
-        throw new SQLException("Unable to retrieve the primary key value. No result set!");
+        throw new SQLException("Unable to retrieve the primary key value for " + table + ". No result set!");
       }
     }
   }
 
+  /**
+   * This returns the primary key generated by the last insert executed on the statement. The
+   * statement must have been prepared with {@link Statement#RETURN_GENERATED_KEYS}. If the driver
+   * returns no keys, it falls back to {@link #getLastInsertId(Connection, String)}.
+   * 
+   * @param stmt The statement that performed the insert
+   * @return The primary key value
+   * @throws SQLException Thrown if an error occurs
+   */
+  protected Integer getGeneratedId(Statement stmt) throws SQLException {
+    try(ResultSet rs = stmt.getGeneratedKeys()) {
+      if(rs.next()) {
+        return rs.getInt(1);
+      }
+    }
+
+    return getLastInsertId(stmt.getConnection(), "statement");
+  }
+
+  /**
+   * This returns all primary keys generated by a batch or multi-row insert, in insert order. The
+   * statement must have been prepared with {@link Statement#RETURN_GENERATED_KEYS}. The IDs are
+   * never guessed: auto-increment values need not be consecutive, so a missing key is an error.
+   * 
+   * @param stmt The statement that performed the insert
+   * @param rowCount The number of rows inserted
+   * @return The primary key values
+   * @throws SQLException Thrown if an error occurs or the driver returns fewer keys than rows
+   */
+  protected List<Integer> getGeneratedIds(Statement stmt, int rowCount) throws SQLException {
+    List<Integer> ids = new ArrayList<>(rowCount);
+
+    try(ResultSet rs = stmt.getGeneratedKeys()) {
+      while(rs.next()) {
+        ids.add(rs.getInt(1));
+      }
+    }
+
+    if(ids.size() < rowCount) {
+      throw new SQLException("Expected " + rowCount + " generated keys but the driver returned " + ids.size());
+    }
+
+    return ids;
+  }
+
   /**
    * This extracts an object of the given type from a result set. The object must have a
    * zero-argument constructor. It builds an object from a result set using reflection as follows:
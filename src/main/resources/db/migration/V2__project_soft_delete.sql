@@ -0,0 +1,3 @@
+ALTER TABLE project ADD COLUMN deleted_at DATETIME NULL, ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE project ADD INDEX idx_project_deleted_name (deleted_at, project_name), ALGORITHM=INPLACE, LOCK=NONE;
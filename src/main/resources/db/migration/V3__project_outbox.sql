@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS project_outbox(
+	event_id BIGINT AUTO_INCREMENT NOT NULL,
+    event_type VARCHAR(32) NOT NULL,
+    project_id INT NOT NULL,
+    payload TEXT NOT NULL,
+    created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (event_id)
+);
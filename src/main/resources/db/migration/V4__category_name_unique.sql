@@ -0,0 +1,16 @@
+-- Databases created before this migration can hold several categories with the same name, and
+-- the unique key cannot be added while they exist. Each name keeps its lowest category_id: the
+-- projects tagged with a duplicate are tagged with the kept category instead, and the duplicates
+-- are then deleted, which removes their project_category rows.
+INSERT IGNORE INTO project_category (project_id, category_id)
+SELECT pc.project_id, keep.category_id
+FROM project_category pc
+JOIN category c ON c.category_id = pc.category_id
+JOIN (SELECT category_name, MIN(category_id) AS category_id FROM category GROUP BY category_name) keep
+    ON keep.category_name = c.category_name
+WHERE c.category_id <> keep.category_id;
+
+DELETE c FROM category c
+JOIN category keep ON keep.category_name = c.category_name AND keep.category_id < c.category_id;
+
+ALTER TABLE category ADD UNIQUE KEY category_name (category_name), ALGORITHM=INPLACE, LOCK=NONE;
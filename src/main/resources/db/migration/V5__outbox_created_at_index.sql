@@ -0,0 +1 @@
+ALTER TABLE project_outbox ADD INDEX idx_outbox_created_at (created_at), ALGORITHM=INPLACE, LOCK=NONE;
@@ -0,0 +1 @@
+ALTER TABLE project ADD COLUMN version INT NOT NULL DEFAULT 1, ALGORITHM=INPLACE, LOCK=NONE;
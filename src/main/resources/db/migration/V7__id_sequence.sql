@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS id_sequence(
+	name VARCHAR(32) NOT NULL,
+    next_id BIGINT NOT NULL,
+    PRIMARY KEY (name)
+);
+
+INSERT INTO id_sequence (name, next_id) SELECT 'project', COALESCE(MAX(project_id), 0) + 1 FROM project;
@@ -0,0 +1,3 @@
+INSERT INTO id_sequence (name, next_id) SELECT 'material', COALESCE(MAX(material_id), 0) + 1 FROM material;
+
+INSERT INTO id_sequence (name, next_id) SELECT 'step', COALESCE(MAX(step_id), 0) + 1 FROM step;
@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS project_archive(
+	project_id INT NOT NULL,
+    project_name VARCHAR(64) NOT NULL,
+    version INT NOT NULL,
+    archived_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    graph LONGBLOB NOT NULL,
+    PRIMARY KEY (project_id)
+);
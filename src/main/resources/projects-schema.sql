@@ -1,3 +1,11 @@
+-- Drops and recreates every table. Use this only for a fresh development database.
+-- Existing databases are upgraded with the versioned scripts in db/migration; a database built
+-- from this file matches the latest migration and can be marked as such with
+-- MigrationCli baseline.
+
+DROP TABLE IF EXISTS project_archive;
+DROP TABLE IF EXISTS id_sequence;
+DROP TABLE IF EXISTS project_outbox;
 DROP TABLE IF EXISTS project_category;
 DROP TABLE IF EXISTS category;
 DROP TABLE IF EXISTS step;
@@ -11,7 +19,10 @@ CREATE TABLE project(
 	actual_hours DECIMAL(7, 2),
     difficulty INT NOT NULL,
     notes TEXT,
-    PRIMARY KEY (project_id)
+    deleted_at DATETIME NULL,
+    version INT NOT NULL DEFAULT 1,
+    PRIMARY KEY (project_id),
+    INDEX idx_project_deleted_name (deleted_at, project_name)
 );
 
 CREATE TABLE material(
@@ -36,7 +47,8 @@ CREATE TABLE step(
 CREATE TABLE category(
 	category_id INT AUTO_INCREMENT NOT NULL,
     category_name VARCHAR(64) NOT NULL,
-    PRIMARY KEY (category_id)
+    PRIMARY KEY (category_id),
+    UNIQUE KEY (category_name)
 );
 
 CREATE TABLE project_category(
@@ -45,4 +57,31 @@ CREATE TABLE project_category(
     FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE,
     FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE,
     UNIQUE KEY (project_id, category_id)
-);
\ No newline at end of file
+);
+
+CREATE TABLE project_outbox(
+	event_id BIGINT AUTO_INCREMENT NOT NULL,
+    event_type VARCHAR(32) NOT NULL,
+    project_id INT NOT NULL,
+    payload TEXT NOT NULL,
+    created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (event_id),
+    INDEX idx_outbox_created_at (created_at)
+);
+
+CREATE TABLE id_sequence(
+	name VARCHAR(32) NOT NULL,
+    next_id BIGINT NOT NULL,
+    PRIMARY KEY (name)
+);
+
+INSERT INTO id_sequence (name, next_id) VALUES ('project', 1), ('material', 1), ('step', 1);
+
+CREATE TABLE project_archive(
+	project_id INT NOT NULL,
+    project_name VARCHAR(64) NOT NULL,
+    version INT NOT NULL,
+    archived_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    graph LONGBLOB NOT NULL,
+    PRIMARY KEY (project_id)
+);
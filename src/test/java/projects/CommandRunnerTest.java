@@ -0,0 +1,72 @@
+package projects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.ProjectDao;
+import projects.dao.ProjectFilter;
+import projects.harness.TestDatabase;
+
+/*
+ * Bulk commands only count what they would change unless they are told dryRun=false
+ */
+class CommandRunnerTest {
+    private final ProjectDao projectDao = new ProjectDao();
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.bulk.pauseMillis", "0");
+        TestDatabase.startH2();
+    }
+
+    @BeforeEach
+    void addProjects() throws IOException {
+        TestDatabase.applySchema();
+        run("add", "name=first", "difficulty=1", ";", "add", "name=second", "difficulty=1", ";", "add",
+                "name=third", "difficulty=2");
+    }
+
+    @Test
+    void bulkDeleteIsADryRunByDefault() throws IOException {
+        String output = run("bulk-delete", "difficulty=1");
+
+        assertTrue(output.contains("\"result\":{\"rows\":2,\"dryRun\":true}"), output);
+        assertEquals(3, projectDao.countProjects(ProjectFilter.all()));
+    }
+
+    @Test
+    void bulkUpdateIsADryRunByDefault() throws IOException {
+        String output = run("bulk-update", "difficulty=1", "set.difficulty=5");
+
+        assertTrue(output.contains("\"dryRun\":true"), output);
+        assertEquals(0, projectDao.countProjects(ProjectFilter.all().withDifficulty(5)));
+    }
+
+    @Test
+    void dryRunFalseChangesTheData() throws IOException {
+        String output = run("bulk-delete", "difficulty=1", "dryRun=false");
+
+        assertTrue(output.contains("\"result\":{\"rows\":2,\"dryRun\":false}"), output);
+        assertEquals(1, projectDao.countProjects(ProjectFilter.all()));
+    }
+
+    @Test
+    void anUnclearDryRunValueIsRefused() throws IOException {
+        String output = run("bulk-delete", "difficulty=1", "dryRun=no");
+
+        assertTrue(output.contains("\"ok\":false"), output);
+        assertEquals(3, projectDao.countProjects(ProjectFilter.all()));
+    }
+
+    private static String run(String... args) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new CommandRunner(new PrintStream(bytes, true, StandardCharsets.UTF_8)).run(args);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
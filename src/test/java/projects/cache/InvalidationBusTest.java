@@ -0,0 +1,86 @@
+package projects.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.sql.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.DbConnection;
+import projects.dao.OutboxDao;
+import projects.entity.Project;
+import projects.event.ChangeEvent;
+import projects.harness.TestDatabase;
+
+/*
+ * The polling fallback does not lose an event that commits after a higher event ID was read
+ */
+class InvalidationBusTest {
+    private final OutboxDao outboxDao = new OutboxDao();
+    private final ProjectNearCache cache = new ProjectNearCache(100, 60_000);
+    private final InvalidationBus bus = new InvalidationBus(cache);
+
+    /*
+     * the outbox starts with one event, so the bus knows where the sequence stands
+     */
+    @BeforeAll
+    static void startDatabase() throws SQLException {
+        System.setProperty("projects.cache.pollMillis", "60000");
+        System.setProperty("projects.cache.maxStalenessMillis", "120000");
+        TestDatabase.startH2();
+        TestDatabase.applySchema();
+
+        try(Connection conn = DbConnection.getConnection()) {
+            new OutboxDao().append(conn, ChangeEvent.PROJECT_MODIFIED, 3, "{}");
+        }
+    }
+
+    @BeforeEach
+    void startBus() throws IOException {
+        bus.start();
+    }
+
+    @AfterEach
+    void stopBus() {
+        bus.stop();
+    }
+
+    @Test
+    void anEventCommittedLateIsStillSeen() throws SQLException {
+        long start = bus.getMetrics().get("lastEventId");
+        cache(1);
+        cache(2);
+
+        try(Connection open = DbConnection.getConnection()) {
+            open.setAutoCommit(false);
+            outboxDao.append(open, ChangeEvent.PROJECT_MODIFIED, 1, "{}");
+
+            try(Connection conn = DbConnection.getConnection()) {
+                outboxDao.append(conn, ChangeEvent.PROJECT_MODIFIED, 2, "{}");
+            }
+
+            bus.pollOnce();
+
+            assertTrue(cache.get(2).isEmpty(), "events past the hole are invalidated at once");
+            assertTrue(cache.get(1).isPresent());
+            assertEquals(start, bus.getMetrics().get("lastEventId"), "the poll must not move past the hole");
+
+            open.commit();
+        }
+
+        bus.pollOnce();
+
+        assertTrue(cache.get(1).isEmpty(), "the late event invalidates its project");
+        assertEquals(start + 2, bus.getMetrics().get("lastEventId"));
+    }
+
+    private void cache(Integer projectID) {
+        Project project = new Project();
+        project.setProjectId(projectID);
+        cache.put(project, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,44 @@
+package projects.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Project;
+
+/*
+ * An invalidation that arrives while a project is being loaded keeps the stale load out of the
+ * cache, whether it names the project or clears everything
+ */
+class ProjectNearCacheTest {
+    private final ProjectNearCache cache = new ProjectNearCache(100, 60_000);
+
+    @Test
+    void aLoadStartedBeforeAnInvalidationIsNotCached() {
+        long loadStarted = System.currentTimeMillis() - 1;
+        cache.invalidate(1);
+
+        cache.put(project(1), loadStarted);
+
+        assertTrue(cache.get(1).isEmpty());
+    }
+
+    @Test
+    void aLoadStartedBeforeInvalidateAllIsNotCached() {
+        long loadStarted = System.currentTimeMillis() - 1;
+        cache.invalidateAll();
+
+        cache.put(project(1), loadStarted);
+        assertTrue(cache.get(1).isEmpty());
+
+        cache.put(project(1), System.currentTimeMillis() + 1);
+        assertTrue(cache.get(1).isPresent(), "a load started afterwards is cached");
+    }
+
+    private static Project project(Integer projectID) {
+        Project project = new Project();
+        project.setProjectId(projectID);
+        project.setProjectName("Cached");
+        return project;
+    }
+}
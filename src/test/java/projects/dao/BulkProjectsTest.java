@@ -0,0 +1,173 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Project;
+import projects.event.ChangeEvent;
+import projects.exception.DbException;
+import projects.harness.TestDatabase;
+
+/*
+ * Bulk delete and modify over two shards in chunks of ten IDs: every matching project is changed
+ * exactly once, nothing else is touched, and progress is reported per chunk
+ */
+class BulkProjectsTest {
+    private static final int SHARDS = 2;
+    private static final int CHUNK_SIZE = 10;
+    private static final int PROJECTS = 100;
+
+    private final ProjectDao projectDao = new ProjectDao();
+    private final List<BulkProgress> progress = new ArrayList<>();
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.bulk.chunkSize", String.valueOf(CHUNK_SIZE));
+        System.setProperty("projects.bulk.pauseMillis", "0");
+        System.setProperty("projects.project.softDelete", "true");
+        TestDatabase.startH2Shards(SHARDS);
+    }
+
+    /*
+     * deletes the rows rather than recreating the schema, which would hand out IDs that
+     * IdBlockAllocator has already reserved
+     */
+    @BeforeEach
+    void insertProjects() throws SQLException {
+        for(int shard = 0; shard < SHARDS; shard++) {
+            try(Connection conn = DbConnection.getConnection(shard); Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM project");
+                stmt.executeUpdate("DELETE FROM project_outbox");
+            }
+        }
+
+        Map<Integer, Set<String>> tags = new HashMap<>();
+
+        for(int i = 0; i < PROJECTS; i++) {
+            Project project = new Project();
+            project.setProjectName("bulk " + i);
+            project.setDifficulty(1 + i % 4);
+            project.setEstimatedHours(new BigDecimal("10.00"));
+            project.setActualHours(i % 2 == 0 ? new BigDecimal("8.00") : null);
+            Integer projectID = projectDao.insertProject(project).getProjectId();
+
+            if(i % 5 == 0) {
+                tags.put(projectID, Set.of("outdoor"));
+            }
+        }
+
+        projectDao.assignCategories(tags);
+    }
+
+    @Test
+    void aModifyChangesEveryMatchingProjectOnce() {
+        ProjectFilter filter = ProjectFilter.all().withDifficulty(2);
+        ProjectUpdate update = ProjectUpdate.create().withEstimatedHoursScaledBy(new BigDecimal("1.10"));
+
+        Map<Integer, Integer> versions = new HashMap<>();
+        projectDao.fetchAllProjects().forEach(project -> versions.put(project.getProjectId(), project.getVersion()));
+
+        assertEquals(25, projectDao.countProjects(filter));
+        assertEquals(25, projectDao.bulkModifyProjects(filter, update, progress::add));
+
+        for(Project project : projectDao.fetchAllProjects()) {
+            boolean matched = project.getDifficulty() == 2;
+            int before = versions.get(project.getProjectId());
+            assertEquals(matched ? before + 1 : before, project.getVersion(), project.getProjectName());
+            assertEquals(new BigDecimal(matched ? "11.00" : "10.00"), project.getEstimatedHours());
+        }
+
+        assertEquals(25, countEvents(ChangeEvent.PROJECT_MODIFIED));
+    }
+
+    @Test
+    void aDeleteRemovesOnlyMatchingProjects() {
+        ProjectFilter filter = ProjectFilter.all().withCategory("outdoor").withCompleted(true);
+
+        assertEquals(10, projectDao.countProjects(filter));
+        assertEquals(10, projectDao.bulkDeleteProjects(filter, progress::add));
+
+        assertEquals(0, projectDao.countProjects(filter));
+        assertEquals(PROJECTS - 10, projectDao.fetchAllProjects().size());
+        assertEquals(10, projectDao.countProjects(ProjectFilter.all().withCategory("outdoor")));
+        assertEquals(10, countEvents(ChangeEvent.PROJECT_DELETED));
+    }
+
+    @Test
+    void deletedProjectsAreNotModified() {
+        ProjectFilter difficultyOne = ProjectFilter.all().withDifficulty(1);
+
+        assertEquals(5, projectDao.bulkDeleteProjects(difficultyOne.withCategory("outdoor"), progress::add));
+        assertEquals(20, projectDao.bulkModifyProjects(difficultyOne,
+                ProjectUpdate.create().withDifficulty(5), progress::add));
+        assertEquals(0, projectDao.countProjects(difficultyOne));
+    }
+
+    @Test
+    void progressIsReportedForEveryChunkOfEveryShard() {
+        long changed = projectDao.bulkModifyProjects(ProjectFilter.all().withCompleted(false),
+                ProjectUpdate.create().withDifficulty(3), progress::add);
+
+        assertEquals(50, changed);
+        assertEquals(changed, progress.get(progress.size() - 1).getTotalRows());
+        assertEquals(changed, progress.stream().mapToLong(BulkProgress::getChunkRows).sum());
+
+        for(int shard = 0; shard < SHARDS; shard++) {
+            int lastThrough = 0;
+            BulkProgress last = null;
+
+            for(BulkProgress chunk : progress) {
+                if(chunk.getShard() == shard) {
+                    assertTrue(chunk.getThroughProjectId() > lastThrough, "chunks move forward");
+                    assertTrue(chunk.getChunkRows() <= CHUNK_SIZE);
+                    lastThrough = chunk.getThroughProjectId();
+                    last = chunk;
+                }
+            }
+
+            assertNotNull(last, "shard " + shard + " reported no progress");
+            assertEquals(last.getMaxProjectId(), last.getThroughProjectId());
+        }
+    }
+
+    @Test
+    void aFilterOrUpdateWithoutConditionsIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> projectDao.bulkDeleteProjects(ProjectFilter.all(), progress::add));
+        assertThrows(IllegalArgumentException.class, () -> projectDao.bulkModifyProjects(ProjectFilter.all(),
+                ProjectUpdate.create().withDifficulty(1), progress::add));
+        assertThrows(IllegalArgumentException.class, () -> projectDao.bulkModifyProjects(
+                ProjectFilter.all().withDifficulty(1), ProjectUpdate.create(), progress::add));
+
+        assertTrue(progress.isEmpty());
+        assertEquals(PROJECTS, projectDao.fetchAllProjects().size());
+    }
+
+    private static int countEvents(String eventType) {
+        int count = 0;
+
+        for(int shard = 0; shard < SHARDS; shard++) {
+            try(Connection conn = DbConnection.getConnection(shard);
+                    PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM project_outbox WHERE event_type = ?")) {
+                stmt.setString(1, eventType);
+
+                try(ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    count += rs.getInt(1);
+                }
+            }
+            catch(SQLException e) {
+                throw new DbException(e);
+            }
+        }
+
+        return count;
+    }
+}
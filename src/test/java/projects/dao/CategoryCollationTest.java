@@ -0,0 +1,104 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.*;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Category;
+import projects.entity.Project;
+import projects.harness.TestDatabase;
+
+/*
+ * Category names that the column's collation treats as equal resolve to the stored category. H2
+ * compares VARCHAR exactly, so each test switches category_name to a type that compares the way
+ * MySQL's default collation does: VARCHAR_IGNORECASE for case and CHAR for trailing spaces.
+ */
+class CategoryCollationTest {
+    private final ProjectDao projectDao = new ProjectDao();
+
+    @BeforeAll
+    static void startDatabase() {
+        TestDatabase.startH2();
+    }
+
+    @BeforeEach
+    void emptyTables() {
+        TestDatabase.applySchema();
+    }
+
+    @Test
+    void namesDifferingInCaseShareACategory() {
+        alterCategoryName("VARCHAR_IGNORECASE(64)");
+        Integer first = insertProject("Foo");
+        Integer second = insertProject("foo");
+
+        assertEquals(1, projectDao.assignCategories(Map.of(first, Set.of("FOO"), second, Set.of("Bar"))));
+        assertEquals(0, projectDao.assignCategories(Map.of(second, Set.of("bar", "BAR"))));
+
+        assertEquals(2, countRows("category"));
+        assertEquals(List.of("Foo"), categoryNames(first));
+        assertEquals(List.of("Bar", "Foo"), categoryNames(second));
+    }
+
+    @Test
+    void namesDifferingInTrailingSpacesShareACategory() {
+        alterCategoryName("CHAR(64)");
+        Integer first = insertProject("foo");
+        Integer second = insertProject("foo ");
+
+        assertEquals(1, projectDao.assignCategories(Map.of(first, Set.of("foo  ", "bar"))));
+
+        assertEquals(2, countRows("category"));
+        assertEquals(List.of("bar", "foo"), categoryNames(first));
+        assertEquals(List.of("foo"), categoryNames(second));
+    }
+
+    private Integer insertProject(String categoryName) {
+        Project project = new Project();
+        project.setProjectName("Collation test");
+        project.setDifficulty(2);
+
+        Category category = new Category();
+        category.setCategoryName(categoryName);
+        project.getCategories().add(category);
+
+        return projectDao.insertProjectWithDetails(project).getProjectId();
+    }
+
+    private List<String> categoryNames(Integer projectID) {
+        List<String> names = new ArrayList<>();
+        projectDao.fetchProjectByID(projectID).orElseThrow().getCategories()
+                .forEach(category -> names.add(category.getCategoryName()));
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void alterCategoryName(String type) {
+        execute("ALTER TABLE category ALTER COLUMN category_name " + type + " NOT NULL");
+    }
+
+    private static int countRows(String table) {
+        try(Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+        catch(SQLException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void execute(String sql) {
+        try(Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+        catch(SQLException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Connections come back from the pool in the state they were opened in, and a saturated pool
+ * times out with an error that does not look like a database outage
+ */
+class ConnectionPoolTest {
+    private final ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:pool_test;DB_CLOSE_DELAY=-1", "sa", "", 1,
+            1000, 30_000, 0);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void aReturnedConnectionGetsItsIsolationLevelBack() throws SQLException {
+        int original;
+
+        try(Connection conn = pool.borrow()) {
+            original = conn.getTransactionIsolation();
+            conn.setTransactionIsolation(original == Connection.TRANSACTION_SERIALIZABLE
+                    ? Connection.TRANSACTION_READ_COMMITTED : Connection.TRANSACTION_SERIALIZABLE);
+        }
+
+        try(Connection conn = pool.borrow()) {
+            assertEquals(1, pool.getActiveCount());
+            assertEquals(original, conn.getTransactionIsolation());
+        }
+    }
+
+    @Test
+    void aReturnedConnectionIsWritableAndAutoCommitted() throws SQLException {
+        try(Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+        }
+
+        try(Connection conn = pool.borrow()) {
+            assertTrue(conn.getAutoCommit());
+            assertFalse(conn.isReadOnly());
+        }
+
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    void waitingForABusyPoolIsNotADatabaseFailure() throws SQLException {
+        try(Connection held = pool.borrow()) {
+            PoolTimeoutException e = assertThrows(PoolTimeoutException.class, pool::borrow);
+            assertFalse(CircuitBreaker.isUnavailable(e));
+        }
+    }
+}
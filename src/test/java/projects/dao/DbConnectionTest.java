@@ -0,0 +1,41 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import projects.exception.DbUnavailableException;
+import projects.harness.TestDatabase;
+
+/*
+ * A pool that is only busy is reported as unavailable to the caller but leaves the circuit closed
+ */
+class DbConnectionTest {
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.pool.maxSize", "1");
+        System.setProperty("projects.pool.timeoutMillis", "50");
+        System.setProperty("projects.breaker.windowSize", "4");
+        System.setProperty("projects.breaker.minimumCalls", "2");
+        TestDatabase.startH2();
+    }
+
+    @Test
+    void poolTimeoutsDoNotOpenTheCircuit() throws SQLException {
+        try(Connection held = DbConnection.getConnection()) {
+            for(int i = 0; i < 5; i++) {
+                assertThrows(DbUnavailableException.class, DbConnection::getConnection);
+            }
+
+            assertEquals(CircuitBreaker.State.CLOSED, DbConnection.getCircuitBreaker().getState());
+        }
+
+        try(Connection conn = DbConnection.getConnection()) {
+            assertTrue(conn.isValid(1));
+        }
+    }
+}
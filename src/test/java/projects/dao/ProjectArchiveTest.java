@@ -0,0 +1,93 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.exception.ProjectArchivedException;
+import projects.harness.TestDatabase;
+
+/*
+ * An archived project can still be read, and writes to it are refused as archived rather than
+ * reported as missing
+ */
+class ProjectArchiveTest {
+    private final ProjectDao projectDao = new ProjectDao();
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.project.softDelete", "true");
+        TestDatabase.startH2();
+    }
+
+    @BeforeEach
+    void emptyTables() {
+        TestDatabase.applySchema();
+    }
+
+    @Test
+    void onlyACompletedProjectIsArchived() {
+        assertFalse(projectDao.archiveProject(insertProject(null)));
+        assertTrue(projectDao.archiveProject(insertProject(new BigDecimal("4.00"))));
+    }
+
+    @Test
+    void anArchivedProjectCanStillBeRead() {
+        Integer projectID = insertProject(new BigDecimal("4.00"));
+        int version = projectDao.fetchProjectVersion(projectID).orElseThrow();
+
+        assertTrue(projectDao.archiveProject(projectID));
+
+        Project archived = projectDao.fetchProjectByID(projectID).orElseThrow();
+        assertEquals("Archive test", archived.getProjectName());
+        assertEquals(1, archived.getMaterials().size());
+        assertEquals(version, projectDao.fetchProjectVersion(projectID).orElseThrow());
+        assertTrue(projectDao.fetchAllProjects().isEmpty());
+    }
+
+    @Test
+    void writesToAnArchivedProjectAreRefused() {
+        Integer projectID = insertProject(new BigDecimal("4.00"));
+        projectDao.archiveProject(projectID);
+        Project archived = projectDao.fetchProjectByID(projectID).orElseThrow();
+        archived.setNotes("changed");
+
+        assertThrows(ProjectArchivedException.class, () -> projectDao.modifyProjectDetails(archived));
+        assertThrows(ProjectArchivedException.class, () -> projectDao.deleteProject(projectID));
+        assertThrows(ProjectArchivedException.class, () -> projectDao.undeleteProject(projectID));
+        assertNull(projectDao.fetchProjectByID(projectID).orElseThrow().getNotes());
+    }
+
+    @Test
+    void aMissingProjectIsStillReportedAsMissing() {
+        Project missing = new Project();
+        missing.setProjectId(999);
+        missing.setProjectName("Missing");
+
+        assertFalse(projectDao.modifyProjectDetails(missing));
+        assertFalse(projectDao.deleteProject(999));
+        assertFalse(projectDao.undeleteProject(999));
+    }
+
+    private Integer insertProject(BigDecimal actualHours) {
+        Project project = new Project();
+        project.setProjectName("Archive test");
+        project.setDifficulty(3);
+        project.setEstimatedHours(new BigDecimal("5.00"));
+        project.setActualHours(actualHours);
+
+        Material material = new Material();
+        material.setMaterialName("board");
+        material.setNumRequired(2);
+        material.setCost(new BigDecimal("7.50"));
+        project.getMaterials().add(material);
+
+        return projectDao.insertProjectWithDetails(project).getProjectId();
+    }
+}
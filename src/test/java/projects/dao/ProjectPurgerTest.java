@@ -0,0 +1,145 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.sql.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+import projects.harness.TestDatabase;
+
+/*
+ * Soft delete, undelete within the grace period and purging once it has passed
+ */
+class ProjectPurgerTest {
+    private final ProjectDao projectDao = new ProjectDao();
+    private final ProjectPurger purger = new ProjectPurger();
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.project.softDelete", "true");
+        System.setProperty("projects.purge.pauseMillis", "0");
+        System.setProperty("projects.purge.batchSize", "2");
+        TestDatabase.startH2();
+    }
+
+    @BeforeEach
+    void emptyTables() {
+        TestDatabase.applySchema();
+    }
+
+    @AfterEach
+    void restoreGracePeriod() {
+        setGraceSeconds(3600);
+    }
+
+    @Test
+    void aDeletedProjectIsHiddenButItsRowsStay() {
+        Integer projectID = insertProjectWithDetails();
+
+        assertTrue(projectDao.deleteProject(projectID));
+
+        assertTrue(projectDao.fetchProjectVersion(projectID).isEmpty());
+        assertTrue(projectDao.fetchAllProjects().isEmpty());
+        assertFalse(projectDao.deleteProject(projectID), "a deleted project cannot be deleted again");
+        assertEquals(1, count("project"));
+        assertEquals(5, count("material"));
+    }
+
+    @Test
+    void aDeletedProjectCanBeRestoredWithinTheGracePeriod() {
+        Integer projectID = insertProjectWithDetails();
+        int version = projectDao.fetchProjectVersion(projectID).orElseThrow();
+
+        projectDao.deleteProject(projectID);
+
+        assertTrue(projectDao.undeleteProject(projectID));
+        assertEquals(version + 1, projectDao.fetchProjectVersion(projectID).orElseThrow());
+        assertEquals(5, projectDao.fetchProjectByID(projectID).orElseThrow().getMaterials().size());
+        assertFalse(projectDao.undeleteProject(projectID), "a live project cannot be undeleted");
+    }
+
+    @Test
+    void nothingIsPurgedWithinTheGracePeriod() {
+        Integer projectID = insertProjectWithDetails();
+        projectDao.deleteProject(projectID);
+
+        assertEquals(0, purger.purgeOnce());
+        assertEquals(1, count("project"));
+    }
+
+    @Test
+    void purgingRemovesTheProjectAndAllItsRowsInBatches() throws Exception {
+        Integer deleted = insertProjectWithDetails();
+        Integer kept = insertProjectWithDetails();
+        projectDao.deleteProject(deleted);
+
+        setGraceSeconds(0);
+        Thread.sleep(1100);
+
+        assertEquals(1, purger.purgeOnce());
+        assertEquals(1, count("project"));
+        assertEquals(5, count("material"));
+        assertEquals(5, count("step"));
+        assertTrue(projectDao.fetchProjectVersion(kept).isPresent());
+        assertFalse(projectDao.undeleteProject(deleted), "a purged project cannot be restored");
+        assertEquals(0, purger.purgeOnce());
+    }
+
+    @Test
+    void undeleteIsRefusedOnceTheGracePeriodHasPassed() throws Exception {
+        Integer projectID = insertProjectWithDetails();
+        projectDao.deleteProject(projectID);
+
+        setGraceSeconds(0);
+        Thread.sleep(1100);
+
+        assertFalse(projectDao.undeleteProject(projectID));
+    }
+
+    private Integer insertProjectWithDetails() {
+        Project project = new Project();
+        project.setProjectName("Purge test");
+        project.setDifficulty(2);
+        project.setEstimatedHours(new BigDecimal("3.00"));
+
+        for(int i = 1; i <= 5; i++) {
+            Material material = new Material();
+            material.setMaterialName("material " + i);
+            material.setNumRequired(i);
+            material.setCost(new BigDecimal("1.50"));
+            project.getMaterials().add(material);
+
+            Step step = new Step();
+            step.setStepText("step " + i);
+            step.setStepOrder(i);
+            project.getSteps().add(step);
+        }
+
+        return projectDao.insertProjectWithDetails(project).getProjectId();
+    }
+
+    private static void setGraceSeconds(int seconds) {
+        System.setProperty("projects.purge.graceSeconds", String.valueOf(seconds));
+        DbConnection.reloadConfig();
+    }
+
+    private static int count(String table) {
+        try(Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+        catch(SQLException e) {
+            throw new DbException(e);
+        }
+    }
+}
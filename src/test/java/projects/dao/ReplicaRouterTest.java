@@ -0,0 +1,182 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.*;
+import java.util.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Replica selection, read-your-writes and replica health, with in-memory H2 databases standing in
+ * for the replicas
+ */
+class ReplicaRouterTest {
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica_%s;DB_CLOSE_DELAY=-1";
+    private static final String MISSING_URL = "jdbc:h2:mem:missing_%s;IFEXISTS=TRUE";
+
+    private final List<ReplicaRouter> routers = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        routers.forEach(ReplicaRouter::shutdown);
+    }
+
+    @Test
+    void readsStayOnThePrimaryWithoutReplicas() {
+        ReplicaRouter router = router(List.of(), 0);
+
+        assertNull(router.openReplica());
+    }
+
+    @Test
+    void readsAreSpreadRoundRobinOverReplicas() throws SQLException {
+        ReplicaRouter router = router(List.of(replica("a"), replica("b")), 0);
+        List<String> urls = new ArrayList<>();
+
+        for(int i = 0; i < 4; i++) {
+            urls.add(openUrl(router));
+        }
+
+        assertEquals(urls.get(0), urls.get(2));
+        assertEquals(urls.get(1), urls.get(3));
+        assertNotEquals(urls.get(0), urls.get(1));
+    }
+
+    @Test
+    void readsStayOnThePrimaryWithinTheReadYourWritesWindow() throws SQLException {
+        ReplicaRouter router = router(List.of(replica("ryw")), 60_000);
+
+        assertNotNull(openUrl(router));
+
+        router.recordWrite();
+
+        assertTrue(router.inReadYourWritesWindow());
+        assertNull(router.openReplica());
+    }
+
+    @Test
+    void readsReturnToReplicasOnceTheWindowHasPassed() throws Exception {
+        ReplicaRouter router = router(List.of(replica("window")), 50);
+
+        router.recordWrite();
+        assertNull(router.openReplica());
+
+        Thread.sleep(100);
+
+        assertFalse(router.inReadYourWritesWindow());
+        assertNotNull(openUrl(router));
+    }
+
+    @Test
+    void anUnreachableReplicaIsMarkedDownAndSkipped() throws SQLException {
+        ConnectionPool missing = pool(String.format(MISSING_URL, "down"));
+        ReplicaRouter router = router(List.of(missing, replica("up")), 0);
+
+        for(int i = 0; i < 4; i++) {
+            assertTrue(openUrl(router).contains("replica_up"));
+        }
+
+        assertFalse(router.getReplicas().get(0).isHealthy());
+        assertTrue(router.getReplicas().get(1).isHealthy());
+    }
+
+    @Test
+    void readsStayOnThePrimaryWhenEveryReplicaIsDown() {
+        ReplicaRouter router = router(List.of(pool(String.format(MISSING_URL, "only"))), 0);
+
+        assertNull(router.openReplica());
+        assertFalse(router.getReplicas().get(0).isHealthy());
+    }
+
+    @Test
+    void aHealthCheckBringsARecoveredReplicaBack() throws SQLException {
+        ReplicaRouter router = router(List.of(replica("recovered")), 0);
+
+        router.getReplicas().get(0).markDown(60_000);
+        assertNull(router.openReplica());
+
+        router.checkHealth();
+
+        assertTrue(openUrl(router).contains("replica_recovered"));
+    }
+
+    @Test
+    void aReplicaWithABusyPoolIsSkippedButNotMarkedDown() throws SQLException {
+        ReplicaRouter router = router(List.of(new ConnectionPool(String.format(REPLICA_URL, "busy"), "sa", "", 1, 50,
+                30_000, 0)), 0);
+
+        try(Connection held = router.openReplica()) {
+            assertNotNull(held);
+            assertNull(router.openReplica());
+            router.checkHealth();
+        }
+
+        assertTrue(router.getReplicas().get(0).isHealthy());
+        assertTrue(openUrl(router).contains("replica_busy"));
+    }
+
+    @Test
+    void aStatementTimeoutOnAReplicaMarksItDown() throws SQLException {
+        ReplicaRouter router = router(List.of(replica("timeout")), 0);
+
+        try(Connection conn = router.openReplica()) {
+            assertTrue(router.recordFailure(conn, new SQLTimeoutException("Query timed out")));
+        }
+
+        assertFalse(router.getReplicas().get(0).isHealthy());
+        assertNull(router.openReplica());
+    }
+
+    @Test
+    void anOrdinarySqlErrorLeavesTheReplicaUp() throws SQLException {
+        ReplicaRouter router = router(List.of(replica("syntax")), 0);
+
+        try(Connection conn = router.openReplica()) {
+            SQLException e = assertThrows(SQLException.class, () -> conn.createStatement().executeQuery("SELEC 1"));
+            assertTrue(router.recordFailure(conn, e));
+        }
+
+        assertTrue(router.getReplicas().get(0).isHealthy());
+    }
+
+    @Test
+    void aFailureOnAnotherPoolsConnectionIsNotTheReplicas() throws SQLException {
+        ReplicaRouter router = router(List.of(replica("other")), 0);
+        ConnectionPool primary = replica("primary");
+
+        try(Connection conn = primary.borrow()) {
+            assertFalse(router.recordFailure(conn, new SQLTimeoutException("Query timed out")));
+        }
+        finally {
+            primary.shutdown();
+        }
+
+        assertTrue(router.getReplicas().get(0).isHealthy());
+    }
+
+    private ReplicaRouter router(List<ConnectionPool> replicas, long readYourWritesMillis) {
+        ReplicaRouter router = new ReplicaRouter(replicas, readYourWritesMillis, 60_000);
+        routers.add(router);
+        return router;
+    }
+
+    private static ConnectionPool replica(String name) {
+        return pool(String.format(REPLICA_URL, name));
+    }
+
+    private static ConnectionPool pool(String url) {
+        return new ConnectionPool(url, "sa", "", 2, 1000, 30_000, 0);
+    }
+
+    /*
+     * the URL of the replica the router picks, as reported by the connection itself
+     */
+    private static String openUrl(ReplicaRouter router) throws SQLException {
+        try(Connection conn = router.openReplica()) {
+            assertNotNull(conn, "expected a replica connection");
+            return conn.getMetaData().getURL();
+        }
+    }
+}
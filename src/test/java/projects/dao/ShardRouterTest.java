@@ -0,0 +1,87 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import projects.config.DbConfig;
+
+/*
+ * Which shard a project ID is routed to under each strategy
+ */
+class ShardRouterTest {
+
+    @Test
+    void everythingGoesToTheOnlyShard() {
+        ShardRouter router = new ShardRouter(DbConfig.of(Map.of()));
+
+        assertFalse(router.isSharded());
+        assertEquals(0, router.shardFor(1));
+        assertEquals(0, router.shardFor(123_456));
+        assertEquals(0, router.shardFor(null));
+    }
+
+    @Test
+    void hashingSpreadsConsecutiveIdsEvenly() {
+        ShardRouter router = new ShardRouter(config("hash", 3));
+        int[] counts = new int[3];
+
+        for(int id = 1; id <= 3000; id++) {
+            counts[router.shardFor(id)]++;
+        }
+
+        for(int count : counts) {
+            assertTrue(count > 900 && count < 1100, "uneven spread " + Arrays.toString(counts));
+        }
+    }
+
+    @Test
+    void aProjectAlwaysRoutesToTheSameShard() {
+        ShardRouter first = new ShardRouter(config("hash", 3));
+        ShardRouter second = new ShardRouter(config("hash", 3));
+
+        for(int id = 1; id <= 100; id++) {
+            assertEquals(first.shardFor(id), second.shardFor(id));
+        }
+    }
+
+    @Test
+    void aProjectWithoutAnIdGoesToShardZero() {
+        assertEquals(0, new ShardRouter(config("hash", 3)).shardFor(null));
+    }
+
+    @Test
+    void rangesFillShardsInOrderAndTheLastTakesTheRest() {
+        Map<String, String> values = new HashMap<>(Map.of("shard.strategy", "range", "shard.rangeSize", "100"));
+        values.put("shard.urls", "jdbc:h2:mem:a,jdbc:h2:mem:b");
+        ShardRouter router = new ShardRouter(DbConfig.of(values));
+
+        assertEquals(0, router.shardFor(1));
+        assertEquals(0, router.shardFor(100));
+        assertEquals(1, router.shardFor(101));
+        assertEquals(1, router.shardFor(200));
+        assertEquals(2, router.shardFor(201));
+        assertEquals(2, router.shardFor(1_000_000));
+    }
+
+    @Test
+    void theLayoutChangesWithTheShardCountOrStrategy() {
+        ShardRouter hash = new ShardRouter(config("hash", 3));
+
+        assertTrue(hash.sameLayout(new ShardRouter(config("hash", 3))));
+        assertFalse(hash.sameLayout(new ShardRouter(config("hash", 2))));
+        assertFalse(hash.sameLayout(new ShardRouter(config("range", 3))));
+    }
+
+    private static DbConfig config(String strategy, int shards) {
+        List<String> urls = new ArrayList<>();
+
+        for(int shard = 1; shard < shards; shard++) {
+            urls.add("jdbc:h2:mem:shard" + shard);
+        }
+
+        return DbConfig.of(Map.of("shard.strategy", strategy, "shard.urls", String.join(",", urls)));
+    }
+}
@@ -0,0 +1,155 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.exception.DbException;
+import projects.harness.TestDatabase;
+
+/*
+ * Projects spread over three in-memory shards: each project and its rows live only on the shard the
+ * router picks, and single-project calls and listings find them there. The schema is created once,
+ * because IdBlockAllocator keeps handing out IDs from the blocks it has reserved.
+ */
+class ShardedProjectDaoTest {
+    private static final int SHARDS = 3;
+
+    private final ProjectDao projectDao = new ProjectDao();
+
+    @BeforeAll
+    static void startDatabase() {
+        TestDatabase.startH2Shards(SHARDS);
+    }
+
+    @Test
+    void idsAreAssignedOnTheClientWhenSharded() {
+        assertTrue(IdBlockAllocator.isClientSide());
+    }
+
+    @Test
+    void eachProjectLivesOnlyOnItsShard() {
+        ShardRouter router = DbConnection.getShardRouter();
+        Set<Integer> shardsUsed = new HashSet<>();
+
+        for(Project project : insertProjects("placement", 30)) {
+            int shard = router.shardFor(project.getProjectId());
+            shardsUsed.add(shard);
+
+            for(int other = 0; other < SHARDS; other++) {
+                assertEquals(other == shard ? 1 : 0, count(other, "project", project.getProjectId()),
+                        "project " + project.getProjectId() + " on shard " + other);
+                assertEquals(other == shard ? 2 : 0, count(other, "material", project.getProjectId()));
+            }
+        }
+
+        assertEquals(SHARDS, shardsUsed.size(), "30 projects should reach every shard");
+    }
+
+    @Test
+    void singleProjectCallsGoToTheProjectsShard() {
+        for(Project project : insertProjects("routing", 12)) {
+            Integer projectID = project.getProjectId();
+            Project fetched = projectDao.fetchProjectByID(projectID).orElseThrow();
+
+            assertEquals(project.getProjectName(), fetched.getProjectName());
+            assertEquals(2, fetched.getMaterials().size());
+            assertEquals(List.of("routing"), categoryNames(fetched));
+
+            fetched.setNotes("changed");
+            assertTrue(projectDao.modifyProjectDetails(fetched));
+            assertEquals(2, projectDao.fetchProjectVersion(projectID).orElseThrow());
+
+            assertTrue(projectDao.deleteProject(projectID));
+            assertTrue(projectDao.fetchProjectVersion(projectID).isEmpty());
+        }
+    }
+
+    @Test
+    void theListingMergesEveryShardInNameOrder() {
+        List<Project> inserted = insertProjects("listing", 15);
+        List<String> listed = new ArrayList<>();
+
+        for(Project project : projectDao.fetchAllProjects()) {
+            if(project.getProjectName().startsWith("listing ")) {
+                listed.add(project.getProjectName());
+            }
+        }
+
+        List<String> expected = new ArrayList<>();
+        inserted.forEach(project -> expected.add(project.getProjectName()));
+        Collections.sort(expected);
+
+        assertEquals(expected, listed);
+    }
+
+    @Test
+    void categoriesAreAssignedOnEachProjectsShard() {
+        List<Project> projects = insertProjects("tagging", 9);
+        Map<Integer, Set<String>> tags = new HashMap<>();
+        projects.forEach(project -> tags.put(project.getProjectId(), Set.of("tagged")));
+
+        assertEquals(9, projectDao.assignCategories(tags));
+
+        for(Project project : projects) {
+            Project fetched = projectDao.fetchProjectByID(project.getProjectId()).orElseThrow();
+            assertEquals(List.of("tagged", "tagging"), categoryNames(fetched));
+        }
+    }
+
+    private List<Project> insertProjects(String prefix, int count) {
+        List<Project> projects = new ArrayList<>();
+
+        for(int i = 0; i < count; i++) {
+            Project project = new Project();
+            project.setProjectName(String.format("%s %02d", prefix, i));
+            project.setDifficulty(1 + i % 5);
+
+            for(int m = 1; m <= 2; m++) {
+                Material material = new Material();
+                material.setMaterialName("material " + m);
+                material.setNumRequired(m);
+                material.setCost(BigDecimal.ONE);
+                project.getMaterials().add(material);
+            }
+
+            Category category = new Category();
+            category.setCategoryName(prefix);
+            project.getCategories().add(category);
+
+            projects.add(projectDao.insertProjectWithDetails(project));
+        }
+
+        return projects;
+    }
+
+    private static List<String> categoryNames(Project project) {
+        List<String> names = new ArrayList<>();
+        project.getCategories().forEach(category -> names.add(category.getCategoryName()));
+        Collections.sort(names);
+        return names;
+    }
+
+    private static int count(int shard, String table, Integer projectID) {
+        try(Connection conn = DbConnection.getConnection(shard);
+                PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM " + table + " WHERE project_id = ?")) {
+            stmt.setInt(1, projectID);
+
+            try(ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+        catch(SQLException e) {
+            throw new DbException(e);
+        }
+    }
+}
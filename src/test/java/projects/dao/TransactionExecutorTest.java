@@ -0,0 +1,229 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.exception.DbException;
+import projects.harness.TestDatabase;
+
+/*
+ * Retry classification, retries with backoff, rollback and joined transactions
+ */
+class TransactionExecutorTest {
+    private final TransactionExecutor tx = new TransactionExecutor();
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.tx.maxRetries", "3");
+        System.setProperty("projects.tx.backoffMillis", "1");
+        TestDatabase.startH2();
+    }
+
+    @BeforeEach
+    void emptyTables() {
+        TestDatabase.applySchema();
+    }
+
+    @Test
+    void deadlocksLockWaitsAndSerializationFailuresAreTransient() {
+        assertTrue(TransactionExecutor.isTransient(new SQLException("deadlock", "40001", 1213)));
+        assertTrue(TransactionExecutor.isTransient(new SQLException("lock wait", "HY000", 1205)));
+        assertTrue(TransactionExecutor.isTransient(new SQLException("serialization", "40001")));
+        assertTrue(TransactionExecutor.isTransient(new SQLTransactionRollbackException("rolled back")));
+        assertTrue(TransactionExecutor.isTransient(new DbException(new SQLException("wrapped", "HY000", 1213))));
+    }
+
+    @Test
+    void otherFailuresAreNotTransient() {
+        assertFalse(TransactionExecutor.isTransient(new SQLException("duplicate", "23000", 1062)));
+        assertFalse(TransactionExecutor.isTransient(new SQLException("syntax", "42000", 1064)));
+        assertFalse(TransactionExecutor.isTransient(new DbException("no cause")));
+        assertFalse(TransactionExecutor.isTransient(new IllegalStateException("not SQL")));
+    }
+
+    @Test
+    void transientFailuresAreRetriedUntilTheWorkSucceeds() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = tx.execute(TransactionOptions.readWrite("retryTest"), conn -> {
+            insertProject(conn, "attempt " + attempts.incrementAndGet());
+
+            if(attempts.get() < 3) {
+                throw new SQLException("deadlock", "40001", 1213);
+            }
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+        assertEquals(List.of("attempt 3"), projectNames(), "failed attempts must be rolled back");
+    }
+
+    @Test
+    void retriesStopAtTheLimit() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DbException.class, () -> tx.execute(TransactionOptions.readWrite("retryLimitTest"), conn -> {
+            attempts.incrementAndGet();
+            throw new SQLException("lock wait", "HY000", 1205);
+        }));
+
+        assertEquals(4, attempts.get(), "one attempt and tx.maxRetries retries");
+    }
+
+    @Test
+    void otherFailuresAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DbException.class, () -> tx.execute(TransactionOptions.readWrite("noRetryTest"), conn -> {
+            attempts.incrementAndGet();
+            throw new SQLException("duplicate", "23000", 1062);
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void workWithoutRetryRunsOnce() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DbException.class,
+                () -> tx.execute(TransactionOptions.readWrite("withoutRetryTest").withoutRetry(), conn -> {
+                    attempts.incrementAndGet();
+                    throw new SQLException("deadlock", "40001", 1213);
+                }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void aFailureRollsBackEverythingTheWorkWrote() {
+        assertThrows(DbException.class, () -> tx.execute(TransactionOptions.readWrite("rollbackTest"), conn -> {
+            insertProject(conn, "rolled back");
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals(List.of(), projectNames());
+    }
+
+    @Test
+    void joinedCallsCommitTogether() {
+        tx.execute(TransactionOptions.readWrite("outer"), conn -> {
+            insertProject(conn, "outer");
+            tx.execute(TransactionOptions.readWrite("inner"), inner -> {
+                assertSame(conn, inner, "a joined call shares the connection");
+                insertProject(inner, "inner");
+                return null;
+            });
+            return null;
+        });
+
+        assertEquals(List.of("inner", "outer"), projectNames());
+    }
+
+    @Test
+    void aFailingJoinedCallRollsBackTheWholeTransaction() {
+        assertThrows(DbException.class, () -> tx.execute(TransactionOptions.readWrite("outer"), conn -> {
+            insertProject(conn, "outer");
+            return tx.execute(TransactionOptions.readWrite("inner"), inner -> {
+                throw new SQLException("duplicate", "23000", 1062);
+            });
+        }));
+
+        assertEquals(List.of(), projectNames());
+    }
+
+    @Test
+    void joiningATransactionOnAnotherShardIsRejected() {
+        DbException e = assertThrows(DbException.class, () -> tx.execute(TransactionOptions.readWrite("outer"),
+                conn -> tx.execute(TransactionOptions.readWrite("inner").onShard(1), inner -> null)));
+
+        assertTrue(e.getMessage().contains("cannot join"));
+    }
+
+    @Test
+    void aWriteCannotJoinAReadOnlyTransaction() {
+        DbException e = assertThrows(DbException.class, () -> tx.execute(TransactionOptions.readOnly("outer"),
+                conn -> tx.execute(TransactionOptions.readWrite("inner"), inner -> {
+                    insertProject(inner, "joined");
+                    return null;
+                })));
+
+        assertTrue(e.getMessage().contains("read-only"));
+        assertEquals(List.of(), projectNames());
+
+        tx.execute(TransactionOptions.readWrite("outer"),
+                conn -> tx.execute(TransactionOptions.readOnly("inner"), inner -> null));
+    }
+
+    @Test
+    void aFailingAfterCommitActionLeavesTheTransactionCommitted() {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> ran = new ArrayList<>();
+
+        tx.execute(TransactionOptions.readWrite("afterCommitFailureTest"), conn -> {
+            attempts.incrementAndGet();
+            insertProject(conn, "committed");
+            TransactionExecutor.afterCommit(() -> {
+                throw new DbException(new SQLException("deadlock", "40001", 1213));
+            });
+            TransactionExecutor.afterCommit(() -> ran.add("second"));
+            return null;
+        });
+
+        assertEquals(1, attempts.get(), "a committed transaction is not retried");
+        assertEquals(List.of("committed"), projectNames());
+        assertEquals(List.of("second"), ran);
+    }
+
+    @Test
+    void afterCommitActionsRunOnlyOnceCommitted() {
+        List<String> ran = new ArrayList<>();
+
+        tx.execute(TransactionOptions.readWrite("afterCommitTest"), conn -> {
+            TransactionExecutor.afterCommit(() -> ran.add("committed"));
+            assertTrue(ran.isEmpty(), "the action waits for the commit");
+            return null;
+        });
+
+        assertThrows(DbException.class, () -> tx.execute(TransactionOptions.readWrite("afterRollbackTest"), conn -> {
+            TransactionExecutor.afterCommit(() -> ran.add("rolled back"));
+            throw new SQLException("syntax", "42000", 1064);
+        }));
+
+        TransactionExecutor.afterCommit(() -> ran.add("no transaction"));
+
+        assertEquals(List.of("committed", "no transaction"), ran);
+        assertFalse(TransactionExecutor.inTransaction());
+    }
+
+    private static void insertProject(Connection conn, String name) throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement("INSERT INTO project (project_name, difficulty) VALUES (?, 1)")) {
+            stmt.setString(1, name);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static List<String> projectNames() {
+        List<String> names = new ArrayList<>();
+
+        try(Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT project_name FROM project ORDER BY project_name")) {
+            while(rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        catch(SQLException e) {
+            throw new DbException(e);
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,164 @@
+package projects.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.DbConnection;
+import projects.dao.OutboxDao;
+import projects.harness.TestDatabase;
+
+/*
+ * Delivery order, holes left by transactions that commit out of ID order, redelivery after a
+ * listener fails, and trimming with and without a relay
+ */
+class OutboxRelayTest {
+    private static final long GAP_TIMEOUT_MILLIS = 300;
+
+    private final OutboxDao outboxDao = new OutboxDao();
+    private final List<Long> delivered = new ArrayList<>();
+    private OutboxRelay relay;
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.outbox.gapTimeoutMillis", String.valueOf(GAP_TIMEOUT_MILLIS));
+        System.setProperty("projects.outbox.retentionSeconds", "0");
+        TestDatabase.startH2();
+    }
+
+    @BeforeEach
+    void newRelay() {
+        TestDatabase.applySchema();
+        relay = new OutboxRelay(false);
+        relay.subscribe(events -> events.forEach(event -> delivered.add(event.getEventId())));
+    }
+
+    @Test
+    void committedEventsAreDeliveredInOrder() throws SQLException {
+        appendCommitted(3);
+
+        assertEquals(3, relay.pollOnce());
+        assertEquals(List.of(1L, 2L, 3L), delivered);
+        assertEquals(0, relay.pollOnce());
+    }
+
+    @Test
+    void deliveryStopsAtAHoleUntilItIsFilled() throws SQLException {
+        appendCommitted(1);
+        relay.pollOnce();
+
+        try(Connection open = openTransaction()) {
+            append(open);
+            appendCommitted(1);
+
+            assertEquals(0, relay.pollOnce(), "event 3 must wait for event 2");
+
+            open.commit();
+        }
+
+        assertEquals(2, relay.pollOnce());
+        assertEquals(List.of(1L, 2L, 3L), delivered);
+    }
+
+    @Test
+    void aHoleLeftByARollbackIsSkippedAfterTheTimeout() throws Exception {
+        appendCommitted(1);
+        relay.pollOnce();
+
+        try(Connection open = openTransaction()) {
+            append(open);
+            appendCommitted(1);
+            open.rollback();
+        }
+
+        assertEquals(0, relay.pollOnce());
+
+        Thread.sleep(GAP_TIMEOUT_MILLIS + 100);
+
+        assertEquals(1, relay.pollOnce());
+        assertEquals(List.of(1L, 3L), delivered);
+        assertEquals(3, relay.getLastEventId(0));
+    }
+
+    @Test
+    void aBatchIsOfferedAgainWhenAListenerFails() throws SQLException {
+        AtomicBoolean failed = new AtomicBoolean();
+        relay.subscribe(events -> {
+            if(failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("listener down");
+            }
+        });
+        appendCommitted(2);
+
+        assertEquals(0, relay.pollOnce());
+        assertEquals(0, relay.getLastEventId(0));
+
+        assertEquals(2, relay.pollOnce());
+        assertEquals(2, relay.getLastEventId(0));
+    }
+
+    @Test
+    void aRelayStartedFromTheLatestEventSkipsEarlierOnes() throws SQLException {
+        appendCommitted(2);
+        OutboxRelay latest = new OutboxRelay(true);
+        List<ChangeEvent> seen = new ArrayList<>();
+        latest.subscribe(seen::addAll);
+
+        appendCommitted(1);
+
+        assertEquals(1, latest.pollOnce());
+        assertEquals(3L, seen.get(0).getEventId());
+    }
+
+    @Test
+    void theTrimmerKeepsEventsTheRelayHasNotDelivered() throws Exception {
+        appendCommitted(2);
+        relay.pollOnce();
+        appendCommitted(3);
+        Thread.sleep(1100);
+
+        assertEquals(2, new OutboxTrimmer(relay).trimOnce());
+        assertEquals(3, outboxRows());
+    }
+
+    @Test
+    void withoutARelayTheTrimmerRemovesEveryExpiredEvent() throws Exception {
+        appendCommitted(5);
+        Thread.sleep(1100);
+
+        assertEquals(5, new OutboxTrimmer(null).trimOnce());
+        assertEquals(0, outboxRows());
+    }
+
+    private void appendCommitted(int count) throws SQLException {
+        try(Connection conn = DbConnection.getConnection()) {
+            for(int i = 0; i < count; i++) {
+                append(conn);
+            }
+        }
+    }
+
+    private void append(Connection conn) throws SQLException {
+        outboxDao.append(conn, ChangeEvent.PROJECT_MODIFIED, 1, "{}");
+    }
+
+    private static int outboxRows() throws SQLException {
+        try(Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM project_outbox")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static Connection openTransaction() throws SQLException {
+        Connection conn = DbConnection.getConnection();
+        conn.setAutoCommit(false);
+        return conn;
+    }
+}
@@ -0,0 +1,122 @@
+package projects.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import projects.cache.InvalidationBus;
+import projects.cache.ProjectNearCache;
+import projects.dao.DbConnection;
+import projects.dao.ProjectDao;
+import projects.dao.ShardRouter;
+import projects.entity.Project;
+import projects.exception.DbException;
+import projects.harness.TestDatabase;
+
+/*
+ * Changes to projects on every shard are relayed, trimmed and invalidated, not only those on
+ * shard 0
+ */
+class ShardedOutboxTest {
+    private static final int SHARDS = 3;
+
+    private final ProjectDao projectDao = new ProjectDao();
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.outbox.retentionSeconds", "0");
+        System.setProperty("projects.cache.pollMillis", "60000");
+        System.setProperty("projects.cache.maxStalenessMillis", "120000");
+        TestDatabase.startH2Shards(SHARDS);
+    }
+
+    @Test
+    void theRelayDeliversAndTrimsEveryShardsEvents() throws Exception {
+        OutboxRelay relay = new OutboxRelay(true);
+        List<ChangeEvent> delivered = new ArrayList<>();
+        relay.subscribe(delivered::addAll);
+
+        List<Integer> projectIDs = insertProjects(30);
+
+        while(relay.pollOnce() > 0) {
+            /* drain every shard */
+        }
+
+        ShardRouter router = DbConnection.getShardRouter();
+        Set<Integer> shardsSeen = new HashSet<>();
+        Set<Integer> projectsSeen = new HashSet<>();
+
+        for(ChangeEvent event : delivered) {
+            assertEquals(router.shardFor(event.getProjectId()), event.getShard(), event.toString());
+            shardsSeen.add(event.getShard());
+            projectsSeen.add(event.getProjectId());
+        }
+
+        assertEquals(SHARDS, shardsSeen.size());
+        assertEquals(new HashSet<>(projectIDs), projectsSeen);
+
+        Thread.sleep(1100);
+        relay.trimDelivered();
+
+        for(int shard = 0; shard < SHARDS; shard++) {
+            assertEquals(0, outboxRows(shard), "outbox of shard " + shard);
+        }
+    }
+
+    @Test
+    void theBusInvalidatesChangesOnEveryShard() throws IOException {
+        ProjectNearCache cache = new ProjectNearCache(100, 60_000);
+        InvalidationBus bus = new InvalidationBus(cache);
+        bus.start();
+
+        try {
+            List<Integer> projectIDs = insertProjects(30);
+            long loadedAt = System.currentTimeMillis();
+            projectIDs.forEach(projectID -> cache.put(projectDao.fetchProjectByID(projectID).orElseThrow(), loadedAt));
+
+            for(Integer projectID : projectIDs) {
+                Project project = cache.get(projectID).orElseThrow();
+                project.setNotes("changed");
+                projectDao.modifyProjectDetails(project);
+            }
+
+            bus.pollOnce();
+
+            for(Integer projectID : projectIDs) {
+                assertTrue(cache.get(projectID).isEmpty(), "project " + projectID + " is still cached");
+            }
+        }
+        finally {
+            bus.stop();
+        }
+    }
+
+    private List<Integer> insertProjects(int count) {
+        List<Integer> projectIDs = new ArrayList<>();
+
+        for(int i = 0; i < count; i++) {
+            Project project = new Project();
+            project.setProjectName("outbox " + i);
+            project.setDifficulty(1);
+            projectIDs.add(projectDao.insertProjectWithDetails(project).getProjectId());
+        }
+
+        return projectIDs;
+    }
+
+    private static int outboxRows(int shard) {
+        try(Connection conn = DbConnection.getConnection(shard); Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM project_outbox")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+        catch(SQLException e) {
+            throw new DbException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package projects.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.*;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Objects;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+import projects.harness.TestDatabase;
+import projects.service.ProjectService;
+
+/*
+ * Status codes the server answers with
+ */
+class ProjectServerTest {
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+    private static ProjectServer server;
+
+    private final ProjectDao projectDao = new ProjectDao();
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        TestDatabase.startH2();
+        TestDatabase.applySchema();
+        server = new ProjectServer(new ProjectService());
+        server.start(0, 2);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void writesToAnArchivedProjectAreAConflict() throws Exception {
+        Project project = new Project();
+        project.setProjectName("Archived over HTTP");
+        project.setDifficulty(1);
+        project.setActualHours(BigDecimal.ONE);
+        Integer projectID = projectDao.insertProject(project).getProjectId();
+        projectDao.archiveProject(projectID);
+
+        String path = "/projects/" + projectID;
+
+        assertEquals(200, send("GET", path, null).statusCode());
+        assertEquals(409, send("PUT", path, "{\"notes\":\"changed\"}").statusCode());
+        assertEquals(409, send("DELETE", path, null).statusCode());
+        assertEquals(409, send("POST", path + "/undelete", null).statusCode());
+        assertEquals(404, send("DELETE", "/projects/999999", null).statusCode());
+    }
+
+    @Test
+    void theServerOnlyListensOnLoopbackByDefault() {
+        assertTrue(server.getAddress().getAddress().isLoopbackAddress(), server.getAddress().toString());
+    }
+
+    @Test
+    void profilingRoutesAreOffByDefault() throws Exception {
+        assertEquals(404, send("POST", "/profile/start", null).statusCode());
+        assertEquals(404, send("POST", "/profile/dump", null).statusCode());
+    }
+
+    private static HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + server.getAddress().getHostString() + ":" + server.getPort() + path))
+                .method(method, Objects.isNull(body) ? BodyPublishers.noBody() : BodyPublishers.ofString(body))
+                .build();
+        return CLIENT.send(request, BodyHandlers.ofString());
+    }
+}
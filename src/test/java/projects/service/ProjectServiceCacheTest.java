@@ -0,0 +1,110 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.DbConnection;
+import projects.entity.Project;
+import projects.harness.TestDatabase;
+
+/*
+ * Two service instances with their own near caches, as two JVMs would run them: a change made
+ * through one is seen by the other, by message or, when the message is lost, by polling
+ */
+class ProjectServiceCacheTest {
+    private static final long WAIT_MILLIS = 5000;
+
+    @BeforeAll
+    static void startDatabase() {
+        System.setProperty("projects.cache.enabled", "true");
+        System.setProperty("projects.cache.maxStalenessMillis", "120000");
+        TestDatabase.startH2();
+        TestDatabase.applySchema();
+    }
+
+    @Test
+    void aChangeReachesTheOtherInstanceByMessage() throws Exception {
+        int firstPort = freePort();
+        int secondPort = freePort();
+
+        /* polling is too slow to matter here, so only the message can invalidate */
+        ProjectService first = instance(firstPort, "localhost:" + secondPort, 60_000);
+        ProjectService second = instance(secondPort, "localhost:" + firstPort, 60_000);
+
+        assertChangeSeen(first, second);
+        assertTrue(second.getCacheMetrics().get("messagesReceived") > 0);
+    }
+
+    @Test
+    void aChangeReachesTheOtherInstanceByPollingWhenNoMessageArrives() throws Exception {
+        ProjectService first = instance(freePort(), "", 100);
+        ProjectService second = instance(freePort(), "", 100);
+
+        assertChangeSeen(first, second);
+        assertEquals(0, second.getCacheMetrics().get("messagesReceived"));
+        assertTrue(second.getCacheMetrics().get("polledInvalidations") > 0);
+    }
+
+    @Test
+    void changingAFetchedProjectDoesNotChangeTheCachedOne() throws Exception {
+        ProjectService service = instance(freePort(), "", 60_000);
+        Integer projectID = insertProject(service);
+
+        service.fetchProjectByID(projectID).setNotes("changed locally");
+        long hits = service.getCacheMetrics().get("hits");
+
+        assertEquals("original", service.fetchProjectByID(projectID).getNotes());
+        assertEquals(hits + 1, service.getCacheMetrics().get("hits"));
+    }
+
+    private static void assertChangeSeen(ProjectService first, ProjectService second) throws InterruptedException {
+        Integer projectID = insertProject(first);
+
+        assertEquals("original", first.fetchProjectByID(projectID).getNotes());
+        assertEquals("original", second.fetchProjectByID(projectID).getNotes());
+
+        Project changed = first.fetchProjectByID(projectID);
+        changed.setNotes("changed");
+        first.modifyProjectDetails(changed);
+
+        assertEquals("changed", first.fetchProjectByID(projectID).getNotes());
+        await(() -> "changed".equals(second.fetchProjectByID(projectID).getNotes()));
+    }
+
+    private static Integer insertProject(ProjectService service) {
+        Project project = new Project();
+        project.setProjectName("Cached project");
+        project.setDifficulty(1);
+        project.setNotes("original");
+        return service.addProjectWithDetails(project).getProjectId();
+    }
+
+    private static ProjectService instance(int port, String peers, long pollMillis) {
+        System.setProperty("projects.cache.port", String.valueOf(port));
+        System.setProperty("projects.cache.peers", peers);
+        System.setProperty("projects.cache.pollMillis", String.valueOf(pollMillis));
+        DbConnection.reloadConfig();
+        return new ProjectService();
+    }
+
+    private static int freePort() throws IOException {
+        try(DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+
+        while(!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "the other instance still has the old project");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.*;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Generated keys are read from the driver and never made up
+ */
+class DaoBaseTest extends DaoBase {
+    private Connection conn;
+
+    @BeforeEach
+    void createTable() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:h2:mem:dao_base_test", "sa", "");
+
+        try(Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE item (item_id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(20))");
+        }
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void theKeysOfEveryRowAreReturnedInInsertOrder() throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement("INSERT INTO item (name) VALUES (?), (?), (?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, "a");
+            stmt.setString(2, "b");
+            stmt.setString(3, "c");
+            stmt.executeUpdate();
+
+            assertEquals(List.of(1, 2, 3), getGeneratedIds(stmt, 3));
+        }
+    }
+
+    @Test
+    void missingKeysAreAnError() throws SQLException {
+        try(PreparedStatement stmt = conn.prepareStatement("INSERT INTO item (name) VALUES (?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, "a");
+            stmt.executeUpdate();
+
+            SQLException e = assertThrows(SQLException.class, () -> getGeneratedIds(stmt, 2));
+            assertTrue(e.getMessage().contains("Expected 2 generated keys"));
+        }
+    }
+}